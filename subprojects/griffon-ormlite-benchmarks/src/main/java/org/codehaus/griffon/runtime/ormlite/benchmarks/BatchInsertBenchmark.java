@@ -0,0 +1,98 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite.benchmarks;
+
+import griffon.plugins.ormlite.ConnectionSourceHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserting {@link #ENTITIES} rows with {@code withBatch} versus one {@code Dao.create} per row. Scores are per row.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchInsertBenchmark {
+    private static final int ENTITIES = 1000;
+    private static final int BATCH_SIZE = 100;
+
+    private BenchmarkDatabase database;
+    private ConnectionSourceHandler handler;
+
+    @Setup
+    public void setup() throws SQLException {
+        database = new BenchmarkDatabase(BenchmarkDatabase.Decorators.JMX, 0, false);
+        handler = database.createHandler();
+    }
+
+    @TearDown
+    public void tearDown() {
+        database.close();
+    }
+
+    @TearDown(Level.Invocation)
+    public void truncate() throws SQLException {
+        database.truncate();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTITIES)
+    public int perRow() throws SQLException {
+        int count = 0;
+        for (BenchmarkItem item : items()) {
+            count += database.getDao().create(item);
+        }
+        return count;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTITIES)
+    public int withBatch() {
+        return handler.withBatch(BenchmarkDatabase.NAME, BenchmarkItem.class, items(), BATCH_SIZE);
+    }
+
+    private static List<BenchmarkItem> items() {
+        List<BenchmarkItem> items = new ArrayList<>(ENTITIES);
+        for (int i = 0; i < ENTITIES; i++) {
+            items.add(new BenchmarkItem("batch-" + i, i));
+        }
+        return items;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite.benchmarks;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.jdbc.DataSourceConnectionSource;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.table.TableUtils;
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.ormlite.ConnectionSourceFactory;
+import griffon.plugins.ormlite.ConnectionSourceHandler;
+import org.codehaus.griffon.runtime.ormlite.DefaultConnectionSourceHandler;
+import org.codehaus.griffon.runtime.ormlite.DefaultConnectionSourceStorage;
+import org.codehaus.griffon.runtime.ormlite.JMXAwareConnectionSource;
+import org.codehaus.griffon.runtime.ormlite.RecordingConnectionSource;
+import org.codehaus.griffon.runtime.ormlite.StatementStatistics;
+import org.h2.jdbcx.JdbcConnectionPool;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-memory H2 database seeded with {@link #ROWS} items, wrapped by the same decorators the plugin applies.
+ * No Griffon application is started; the handler is given a storage that already holds the connection source.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class BenchmarkDatabase {
+    static final int ROWS = 100;
+    static final String NAME = "benchmark";
+
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    private final JdbcConnectionPool pool;
+    private final ConnectionSource connectionSource;
+    private final Dao<BenchmarkItem, Integer> dao;
+
+    enum Decorators {
+        /** ORMLite's DataSourceConnectionSource as is */
+        RAW,
+        /** RecordingConnectionSource, as configured with jmx = false */
+        RECORDING,
+        /** RecordingConnectionSource and JMXAwareConnectionSource, as configured with jmx = true */
+        JMX
+    }
+
+    BenchmarkDatabase(@Nonnull Decorators decorators, int statementCacheSize, boolean statementStats) throws SQLException {
+        String url = "jdbc:h2:mem:" + NAME + COUNTER.incrementAndGet();
+        pool = JdbcConnectionPool.create(url, "sa", "");
+        pool.setMaxConnections(64);
+
+        ConnectionSource cs = new DataSourceConnectionSource(pool, url);
+        if (decorators != Decorators.RAW) {
+            cs = RecordingConnectionSource.builder(cs)
+                .statementCacheSize(statementCacheSize)
+                .statementStatistics(statementStats ? new StatementStatistics() : null)
+                .build();
+        }
+        if (decorators == Decorators.JMX) {
+            cs = new JMXAwareConnectionSource(cs);
+        }
+        connectionSource = cs;
+
+        TableUtils.createTable(connectionSource, BenchmarkItem.class);
+        dao = DaoManager.createDao(connectionSource, BenchmarkItem.class);
+        for (int i = 0; i < ROWS; i++) {
+            dao.create(new BenchmarkItem("item-" + i, i));
+        }
+    }
+
+    @Nonnull
+    ConnectionSource getConnectionSource() {
+        return connectionSource;
+    }
+
+    @Nonnull
+    Dao<BenchmarkItem, Integer> getDao() {
+        return dao;
+    }
+
+    @Nonnull
+    ConnectionSourceHandler createHandler() {
+        DefaultConnectionSourceStorage storage = new DefaultConnectionSourceStorage();
+        storage.set(NAME, connectionSource);
+        ConnectionSourceFactory factory = (ConnectionSourceFactory) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{ConnectionSourceFactory.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    throw new UnsupportedOperationException("Benchmarks use a pre-populated storage");
+                }
+            });
+        return new DefaultConnectionSourceHandler(factory, storage);
+    }
+
+    void truncate() throws SQLException {
+        TableUtils.clearTable(connectionSource, BenchmarkItem.class);
+    }
+
+    void close() {
+        DaoManager.clearCache();
+        connectionSource.closeQuietly();
+        pool.dispose();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite.benchmarks;
+
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@DatabaseTable(tableName = "items")
+public class BenchmarkItem {
+    @DatabaseField(generatedId = true)
+    private int id;
+    @DatabaseField
+    private String name;
+    @DatabaseField
+    private long amount;
+
+    public BenchmarkItem() {
+    }
+
+    public BenchmarkItem(String name, long amount) {
+        this.name = name;
+        this.amount = amount;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite.benchmarks;
+
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the decorators wrapped around ORMLite's connection source, for connection handling and DAO calls, on a
+ * single thread and with several threads contending for connections.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConnectionSourceBenchmark {
+    @Param({"RAW", "RECORDING", "JMX"})
+    private BenchmarkDatabase.Decorators decorators;
+
+    private BenchmarkDatabase database;
+
+    @Setup
+    public void setup() throws SQLException {
+        database = new BenchmarkDatabase(decorators, 0, false);
+    }
+
+    @TearDown
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public DatabaseConnection acquireRelease() throws SQLException {
+        ConnectionSource connectionSource = database.getConnectionSource();
+        DatabaseConnection connection = connectionSource.getReadWriteConnection(null);
+        connectionSource.releaseConnection(connection);
+        return connection;
+    }
+
+    @Benchmark
+    @Threads(8)
+    public DatabaseConnection acquireReleaseContended() throws SQLException {
+        return acquireRelease();
+    }
+
+    @Benchmark
+    public BenchmarkItem queryForId() throws SQLException {
+        return database.getDao().queryForId(nextId());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public BenchmarkItem queryForIdContended() throws SQLException {
+        return queryForId();
+    }
+
+    @Benchmark
+    public List<BenchmarkItem> queryForAll() throws SQLException {
+        return database.getDao().queryForAll();
+    }
+
+    @Benchmark
+    public int createAndDelete() throws SQLException {
+        BenchmarkItem item = new BenchmarkItem("created", 1L);
+        database.getDao().create(item);
+        return database.getDao().delete(item);
+    }
+
+    private static int nextId() {
+        return 1 + ThreadLocalRandom.current().nextInt(BenchmarkDatabase.ROWS);
+    }
+}
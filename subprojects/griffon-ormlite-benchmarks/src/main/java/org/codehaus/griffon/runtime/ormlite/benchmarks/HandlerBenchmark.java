@@ -0,0 +1,108 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite.benchmarks;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.support.ConnectionSource;
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.ormlite.ConnectionSourceCallback;
+import griffon.plugins.ormlite.ConnectionSourceHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of dispatching a callback through {@code ConnectionSourceHandler}, compared to invoking it directly.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandlerBenchmark {
+    private static final ConnectionSourceCallback<String> NOOP = new ConnectionSourceCallback<String>() {
+        @Override
+        public String handle(@Nonnull String databaseName, @Nonnull ConnectionSource connectionSource) {
+            return databaseName;
+        }
+    };
+
+    private BenchmarkDatabase database;
+    private ConnectionSourceHandler handler;
+    private ConnectionSourceCallback<BenchmarkItem> query;
+
+    @Setup
+    public void setup() throws SQLException {
+        database = new BenchmarkDatabase(BenchmarkDatabase.Decorators.JMX, 0, false);
+        handler = database.createHandler();
+        final Dao<BenchmarkItem, Integer> dao = database.getDao();
+        query = new ConnectionSourceCallback<BenchmarkItem>() {
+            @Override
+            public BenchmarkItem handle(@Nonnull String databaseName, @Nonnull ConnectionSource connectionSource) throws SQLException {
+                return dao.queryForId(1);
+            }
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public String directCallback() throws SQLException {
+        return NOOP.handle(BenchmarkDatabase.NAME, database.getConnectionSource());
+    }
+
+    @Benchmark
+    public String withConnectionSource() {
+        return handler.withConnectionSource(BenchmarkDatabase.NAME, NOOP);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String withConnectionSourceContended() {
+        return handler.withConnectionSource(BenchmarkDatabase.NAME, NOOP);
+    }
+
+    @Benchmark
+    public BenchmarkItem withConnectionSourceQuery() {
+        return handler.withConnectionSource(BenchmarkDatabase.NAME, query);
+    }
+
+    @Benchmark
+    public BenchmarkItem withTransactionQuery() {
+        return handler.withTransaction(BenchmarkDatabase.NAME, query);
+    }
+}
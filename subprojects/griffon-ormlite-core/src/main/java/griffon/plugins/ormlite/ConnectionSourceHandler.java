@@ -20,6 +20,11 @@ package griffon.plugins.ormlite;
 import griffon.annotations.core.Nonnull;
 import griffon.annotations.core.Nullable;
 import griffon.plugins.ormlite.exceptions.RuntimeSQLException;
+import org.reactivestreams.Publisher;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 /**
  * @author Andres Almiray
@@ -33,6 +38,53 @@ public interface ConnectionSourceHandler {
     <R> R withConnectionSource(@Nonnull String databaseName, @Nonnull ConnectionSourceCallback<R> callback)
         throws RuntimeSQLException;
 
+    @Nullable
+    <R> R withTransaction(@Nonnull ConnectionSourceCallback<R> callback) throws RuntimeSQLException;
+
+    @Nullable
+    <R> R withTransaction(@Nonnull String databaseName, @Nonnull ConnectionSourceCallback<R> callback)
+        throws RuntimeSQLException;
+
+    @Nullable
+    <R> R withDaos(@Nonnull DaoCallback<R> callback) throws RuntimeSQLException;
+
+    @Nullable
+    <R> R withDaos(@Nonnull String databaseName, @Nonnull DaoCallback<R> callback) throws RuntimeSQLException;
+
+    @Nullable
+    <R> R withShard(@Nonnull Object shardKey, @Nonnull ConnectionSourceCallback<R> callback) throws RuntimeSQLException;
+
+    @Nonnull
+    <R> Map<String, R> withEachShard(@Nonnull ConnectionSourceCallback<R> callback) throws RuntimeSQLException;
+
+    <T> int withBatch(@Nonnull Class<T> entityClass, @Nonnull Iterable<T> entities, int batchSize)
+        throws RuntimeSQLException;
+
+    <T> int withBatch(@Nonnull String databaseName, @Nonnull Class<T> entityClass, @Nonnull Iterable<T> entities, int batchSize)
+        throws RuntimeSQLException;
+
+    @Nonnull
+    <T> Stream<T> streamQuery(@Nonnull Class<T> entityClass, @Nonnull QueryBuilderCallback<T> callback)
+        throws RuntimeSQLException;
+
+    @Nonnull
+    <T> Stream<T> streamQuery(@Nonnull String databaseName, @Nonnull Class<T> entityClass, @Nonnull QueryBuilderCallback<T> callback)
+        throws RuntimeSQLException;
+
+    @Nonnull
+    <T> Publisher<T> publishQuery(@Nonnull Class<T> entityClass, @Nonnull QueryBuilderCallback<T> callback)
+        throws RuntimeSQLException;
+
+    @Nonnull
+    <T> Publisher<T> publishQuery(@Nonnull String databaseName, @Nonnull Class<T> entityClass, @Nonnull QueryBuilderCallback<T> callback)
+        throws RuntimeSQLException;
+
+    @Nonnull
+    <R> CompletableFuture<R> withConnectionSourceAsync(@Nonnull ConnectionSourceCallback<R> callback);
+
+    @Nonnull
+    <R> CompletableFuture<R> withConnectionSourceAsync(@Nonnull String databaseName, @Nonnull ConnectionSourceCallback<R> callback);
+
     void closeConnectionSource();
 
     void closeConnectionSource(@Nonnull String databaseName);
@@ -0,0 +1,58 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.ormlite;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.support.ConnectionSource;
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.ormlite.exceptions.RuntimeSQLException;
+
+import java.util.Collection;
+
+/**
+ * Holds the DAOs of every connected database. Lookups read an immutable snapshot and never lock,
+ * unlike {@code DaoManager.createDao}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public interface DaoRegistry {
+    /**
+     * Returns the DAO for the given entity, creating it on first access.
+     *
+     * @param databaseName the name of a connected database.
+     * @param entityClass  the entity type.
+     *
+     * @return a DAO bound to the database's {@code ConnectionSource}.
+     *
+     * @throws IllegalStateException if the database is not connected.
+     * @throws RuntimeSQLException   if the DAO could not be created.
+     */
+    @Nonnull
+    <T, ID> Dao<T, ID> getDao(@Nonnull String databaseName, @Nonnull Class<T> entityClass) throws RuntimeSQLException;
+
+    /**
+     * Creates DAOs for all given entities and publishes them in one step.
+     */
+    void register(@Nonnull String databaseName, @Nonnull ConnectionSource connectionSource, @Nonnull Collection<Class<?>> entityClasses) throws RuntimeSQLException;
+
+    /**
+     * Drops every DAO registered for the given database.
+     */
+    void clear(@Nonnull String databaseName);
+}
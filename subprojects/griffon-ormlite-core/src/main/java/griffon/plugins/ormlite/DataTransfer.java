@@ -0,0 +1,86 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.ormlite;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.ormlite.exceptions.RuntimeSQLException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Copies rows between database tables and files without materializing entities. Exports stream a table or a query
+ * to a file, imports feed the rows of such a file into JDBC batches. Memory use is bounded by the transfer buffer,
+ * whatever the size of the table. Progress is reported with {@code OrmliteTransferStartEvent},
+ * {@code OrmliteTransferProgressEvent} and {@code OrmliteTransferEndEvent}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public interface DataTransfer {
+    enum Format {
+        /**
+         * RFC 4180 text with a header row. Empty unquoted fields are {@code NULL}, binary values are Base64 encoded.
+         */
+        CSV,
+        /**
+         * Column names and SQL types followed by length-prefixed values. Compact and lossless, meant to be read back
+         * by {@link #importTable}.
+         */
+        BINARY
+    }
+
+    enum Operation {
+        EXPORT,
+        IMPORT
+    }
+
+    /**
+     * @return the number of rows written.
+     */
+    long exportTable(@Nonnull String tableName, @Nonnull Path file, @Nonnull Format format) throws RuntimeSQLException, IOException;
+
+    /**
+     * @return the number of rows written.
+     */
+    long exportTable(@Nonnull String databaseName, @Nonnull String tableName, @Nonnull Path file, @Nonnull Format format) throws RuntimeSQLException, IOException;
+
+    /**
+     * @return the number of rows written.
+     */
+    long exportQuery(@Nonnull String sql, @Nonnull Path file, @Nonnull Format format) throws RuntimeSQLException, IOException;
+
+    /**
+     * @return the number of rows written.
+     */
+    long exportQuery(@Nonnull String databaseName, @Nonnull String sql, @Nonnull Path file, @Nonnull Format format) throws RuntimeSQLException, IOException;
+
+    /**
+     * Inserts every row of the file. Columns are matched by name, the table must already exist.
+     *
+     * @return the number of rows inserted.
+     */
+    long importTable(@Nonnull String tableName, @Nonnull Path file, @Nonnull Format format) throws RuntimeSQLException, IOException;
+
+    /**
+     * Inserts every row of the file. Columns are matched by name, the table must already exist.
+     *
+     * @return the number of rows inserted.
+     */
+    long importTable(@Nonnull String databaseName, @Nonnull String tableName, @Nonnull Path file, @Nonnull Format format) throws RuntimeSQLException, IOException;
+}
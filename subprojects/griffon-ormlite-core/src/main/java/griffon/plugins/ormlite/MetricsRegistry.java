@@ -0,0 +1,70 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.ormlite;
+
+import griffon.annotations.core.Nonnull;
+
+/**
+ * Receives the metrics published by the plugin's connection and statement instrumentation. The default
+ * implementation keeps them in memory; bind a different implementation in a module of your own to forward them
+ * to the metrics library of your choice. Every metric is scoped to a database.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public interface MetricsRegistry {
+    /**
+     * Returns the counter with the given name, creating it on first access.
+     */
+    @Nonnull
+    Counter counter(@Nonnull String name, @Nonnull String databaseName);
+
+    /**
+     * Returns the timer with the given name, creating it on first access.
+     */
+    @Nonnull
+    Timer timer(@Nonnull String name, @Nonnull String databaseName);
+
+    /**
+     * Registers a value that is read whenever the metrics are collected, replacing any previous gauge of the same
+     * name.
+     */
+    void gauge(@Nonnull String name, @Nonnull String databaseName, @Nonnull Gauge gauge);
+
+    /**
+     * Drops every metric of the given database.
+     */
+    void remove(@Nonnull String databaseName);
+
+    interface Counter {
+        void increment();
+
+        void add(long amount);
+    }
+
+    interface Timer {
+        /**
+         * @param nanos duration of one event, in nanoseconds.
+         */
+        void record(long nanos);
+    }
+
+    interface Gauge {
+        double getValue();
+    }
+}
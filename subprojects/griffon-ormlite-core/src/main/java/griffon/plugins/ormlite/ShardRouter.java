@@ -0,0 +1,53 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.ormlite;
+
+import griffon.annotations.core.Nonnull;
+
+import java.util.Set;
+
+/**
+ * Maps shard keys to the name of the database that owns them.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public interface ShardRouter {
+    /**
+     * Resolves the database that owns the given key.
+     *
+     * @param shardKey the key to route, typically a customer or tenant id.
+     *
+     * @return the name of a configured database.
+     *
+     * @throws IllegalStateException if no database is configured as a shard.
+     */
+    @Nonnull
+    String resolve(@Nonnull Object shardKey);
+
+    /**
+     * @return the names of all databases configured as shards.
+     */
+    @Nonnull
+    Set<String> getShardNames();
+
+    /**
+     * Rebuilds the routing table from the current configuration.
+     */
+    void rebuild();
+}
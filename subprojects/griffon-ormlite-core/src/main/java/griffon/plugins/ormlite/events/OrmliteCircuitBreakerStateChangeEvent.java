@@ -0,0 +1,61 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.ormlite.events;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.event.Event;
+import griffon.plugins.ormlite.CircuitBreakerState;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class OrmliteCircuitBreakerStateChangeEvent extends Event {
+    private final String name;
+    private final CircuitBreakerState previousState;
+    private final CircuitBreakerState state;
+
+    public OrmliteCircuitBreakerStateChangeEvent(@Nonnull String name, @Nonnull CircuitBreakerState previousState, @Nonnull CircuitBreakerState state) {
+        this.name = requireNonBlank(name, "Argument 'name' must not be blank");
+        this.previousState = requireNonNull(previousState, "Argument 'previousState' must not be null");
+        this.state = requireNonNull(state, "Argument 'state' must not be null");
+    }
+
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    @Nonnull
+    public CircuitBreakerState getPreviousState() {
+        return previousState;
+    }
+
+    @Nonnull
+    public CircuitBreakerState getState() {
+        return state;
+    }
+
+    @Nonnull
+    public static OrmliteCircuitBreakerStateChangeEvent of(@Nonnull String name, @Nonnull CircuitBreakerState previousState, @Nonnull CircuitBreakerState state) {
+        return new OrmliteCircuitBreakerStateChangeEvent(name, previousState, state);
+    }
+}
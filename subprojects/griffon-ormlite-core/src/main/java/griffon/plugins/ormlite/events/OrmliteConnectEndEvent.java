@@ -34,11 +34,17 @@ public class OrmliteConnectEndEvent extends Event {
     private final String name;
     private final Map<String, Object> config;
     private final ConnectionSource connectionSource;
+    private final long duration;
 
     public OrmliteConnectEndEvent(@Nonnull String name, @Nonnull Map<String, Object> config, @Nonnull ConnectionSource connectionSource) {
+        this(name, config, connectionSource, 0L);
+    }
+
+    public OrmliteConnectEndEvent(@Nonnull String name, @Nonnull Map<String, Object> config, @Nonnull ConnectionSource connectionSource, long duration) {
         this.name = requireNonBlank(name, "Argument 'name' must not be blank");
         this.config = requireNonNull(config, "Argument 'config' must not be null");
         this.connectionSource = requireNonNull(connectionSource, "Argument 'connectionSource' must not be null");
+        this.duration = duration;
     }
 
     @Nonnull
@@ -56,8 +62,20 @@ public class OrmliteConnectEndEvent extends Event {
         return connectionSource;
     }
 
+    /**
+     * @return time spent connecting, in milliseconds.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
     @Nonnull
     public static OrmliteConnectEndEvent of(@Nonnull String name, @Nonnull Map<String, Object> config, @Nonnull ConnectionSource connectionSource) {
         return new OrmliteConnectEndEvent(name, config, connectionSource);
     }
+
+    @Nonnull
+    public static OrmliteConnectEndEvent of(@Nonnull String name, @Nonnull Map<String, Object> config, @Nonnull ConnectionSource connectionSource, long duration) {
+        return new OrmliteConnectEndEvent(name, config, connectionSource, duration);
+    }
 }
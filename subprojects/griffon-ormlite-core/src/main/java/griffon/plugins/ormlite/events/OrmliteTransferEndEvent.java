@@ -0,0 +1,94 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.ormlite.events;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.event.Event;
+import griffon.plugins.ormlite.DataTransfer;
+
+import java.nio.file.Path;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class OrmliteTransferEndEvent extends Event {
+    private final String name;
+    private final DataTransfer.Operation operation;
+    private final String source;
+    private final Path file;
+    private final long rows;
+    private final long bytes;
+    private final long duration;
+
+    public OrmliteTransferEndEvent(@Nonnull String name, @Nonnull DataTransfer.Operation operation, @Nonnull String source, @Nonnull Path file, long rows, long bytes, long duration) {
+        this.name = requireNonBlank(name, "Argument 'name' must not be blank");
+        this.operation = requireNonNull(operation, "Argument 'operation' must not be null");
+        this.source = requireNonBlank(source, "Argument 'source' must not be blank");
+        this.file = requireNonNull(file, "Argument 'file' must not be null");
+        this.rows = rows;
+        this.bytes = bytes;
+        this.duration = duration;
+    }
+
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    @Nonnull
+    public DataTransfer.Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return the table being exported or imported, or the SQL of an exported query.
+     */
+    @Nonnull
+    public String getSource() {
+        return source;
+    }
+
+    @Nonnull
+    public Path getFile() {
+        return file;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return time spent transferring, in milliseconds.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    @Nonnull
+    public static OrmliteTransferEndEvent of(@Nonnull String name, @Nonnull DataTransfer.Operation operation, @Nonnull String source, @Nonnull Path file, long rows, long bytes, long duration) {
+        return new OrmliteTransferEndEvent(name, operation, source, file, rows, bytes, duration);
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.ormlite.exceptions;
+
+import griffon.annotations.core.Nonnull;
+
+import java.sql.SQLTransientConnectionException;
+
+/**
+ * Thrown instead of running a callback while the circuit breaker of its database is open.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class CircuitBreakerOpenException extends RuntimeSQLException {
+    private static final String SQL_STATE_CONNECTION_EXCEPTION = "08000";
+
+    public CircuitBreakerOpenException(@Nonnull String databaseName) {
+        super(databaseName, new SQLTransientConnectionException("Circuit breaker of database '" + databaseName + "' is open", SQL_STATE_CONNECTION_EXCEPTION));
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import com.j256.ormlite.dao.ObjectCache;
+import com.j256.ormlite.support.DatabaseResults;
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Read-only cursor over rows copied from another {@code DatabaseResults}. Values are kept as returned by
+ * {@code getObject} and converted on access, following JDBC's rules for {@code null} and numeric columns.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class CachedDatabaseResults implements DatabaseResults {
+    private final Rows rows;
+    private final ObjectCache objectCacheForRetrieve;
+    private final ObjectCache objectCacheForStore;
+    private int position = -1;
+
+    CachedDatabaseResults(@Nonnull Rows rows, @Nullable ObjectCache objectCacheForRetrieve, @Nullable ObjectCache objectCacheForStore) {
+        this.rows = rows;
+        this.objectCacheForRetrieve = objectCacheForRetrieve;
+        this.objectCacheForStore = objectCacheForStore;
+    }
+
+    /**
+     * Copies the values of the current row, LOBs are read into memory.
+     */
+    @Nonnull
+    static Object[] copyRow(@Nonnull DatabaseResults results, int columnCount) throws SQLException {
+        Object[] row = new Object[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            Object value = results.getObject(i);
+            if (value instanceof Blob) {
+                Blob blob = (Blob) value;
+                value = blob.getBytes(1, (int) blob.length());
+            } else if (value instanceof Clob) {
+                Clob clob = (Clob) value;
+                value = clob.getSubString(1, (int) clob.length());
+            }
+            row[i] = value;
+        }
+        return row;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return rows.columns.length;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return rows.columns.clone();
+    }
+
+    @Override
+    public boolean first() {
+        return moveAbsolute(0);
+    }
+
+    @Override
+    public boolean previous() {
+        return moveAbsolute(position - 1);
+    }
+
+    @Override
+    public boolean next() {
+        return moveAbsolute(position + 1);
+    }
+
+    @Override
+    public boolean last() {
+        return moveAbsolute(rows.values.size() - 1);
+    }
+
+    @Override
+    public boolean moveRelative(int offset) {
+        return moveAbsolute(position + offset);
+    }
+
+    @Override
+    public boolean moveAbsolute(int position) {
+        int size = rows.values.size();
+        this.position = Math.max(-1, Math.min(position, size));
+        return this.position >= 0 && this.position < size;
+    }
+
+    @Override
+    public int findColumn(String columnName) throws SQLException {
+        for (int i = 0; i < rows.columns.length; i++) {
+            if (rows.columns[i].equalsIgnoreCase(columnName)) {
+                return i;
+            }
+        }
+        throw new SQLException("Unknown field '" + columnName + "' from the list: " + Arrays.toString(rows.columns));
+    }
+
+    @Override
+    public String getString(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        return value == null ? null : String.valueOf(value);
+    }
+
+    @Override
+    public boolean getBoolean(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).intValue() != 0;
+        }
+        return value != null && ("true".equalsIgnoreCase(value.toString()) || "1".equals(value.toString()));
+    }
+
+    @Override
+    public char getChar(int columnIndex) throws SQLException {
+        String string = getString(columnIndex);
+        if (string == null || string.isEmpty()) {
+            return 0;
+        }
+        if (string.length() == 1) {
+            return string.charAt(0);
+        }
+        throw new SQLException("More than 1 character stored in database column: " + columnIndex);
+    }
+
+    @Override
+    public byte getByte(int columnIndex) throws SQLException {
+        return (byte) getLong(columnIndex);
+    }
+
+    @Override
+    public byte[] getBytes(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        if (value == null || value instanceof byte[]) {
+            return (byte[]) value;
+        }
+        throw conversionFailed(value, "byte[]");
+    }
+
+    @Override
+    public short getShort(int columnIndex) throws SQLException {
+        return (short) getLong(columnIndex);
+    }
+
+    @Override
+    public int getInt(int columnIndex) throws SQLException {
+        return (int) getLong(columnIndex);
+    }
+
+    @Override
+    public long getLong(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        if (value == null) {
+            return 0L;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1L : 0L;
+        }
+        try {
+            return Long.parseLong(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw conversionFailed(value, "long");
+        }
+    }
+
+    @Override
+    public float getFloat(int columnIndex) throws SQLException {
+        return (float) getDouble(columnIndex);
+    }
+
+    @Override
+    public double getDouble(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        if (value == null) {
+            return 0d;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        try {
+            return Double.parseDouble(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw conversionFailed(value, "double");
+        }
+    }
+
+    @Override
+    public Timestamp getTimestamp(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Timestamp) {
+            // Timestamps are mutable, hand out a copy
+            return (Timestamp) ((Timestamp) value).clone();
+        }
+        if (value instanceof Date) {
+            return new Timestamp(((Date) value).getTime());
+        }
+        if (value instanceof LocalDateTime) {
+            return Timestamp.valueOf((LocalDateTime) value);
+        }
+        if (value instanceof LocalDate) {
+            return Timestamp.valueOf(((LocalDate) value).atStartOfDay());
+        }
+        throw conversionFailed(value, "Timestamp");
+    }
+
+    @Override
+    public InputStream getBlobStream(int columnIndex) throws SQLException {
+        byte[] bytes = getBytes(columnIndex);
+        return bytes == null ? null : new ByteArrayInputStream(bytes);
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        if (value == null || value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        }
+        if (value instanceof BigInteger) {
+            return new BigDecimal((BigInteger) value);
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return BigDecimal.valueOf(((Number) value).longValue());
+        }
+        try {
+            return new BigDecimal(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw conversionFailed(value, "BigDecimal");
+        }
+    }
+
+    @Override
+    public Object getObject(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        if (value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        }
+        return value instanceof Timestamp ? ((Timestamp) value).clone() : value;
+    }
+
+    @Override
+    public boolean wasNull(int columnIndex) throws SQLException {
+        return value(columnIndex) == null;
+    }
+
+    @Override
+    public ObjectCache getObjectCacheForRetrieve() {
+        return objectCacheForRetrieve;
+    }
+
+    @Override
+    public ObjectCache getObjectCacheForStore() {
+        return objectCacheForStore;
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+
+    @Override
+    public void closeQuietly() {
+        // nothing to release
+    }
+
+    private Object value(int columnIndex) throws SQLException {
+        if (position < 0 || position >= rows.values.size()) {
+            throw new SQLException("No current row");
+        }
+        if (columnIndex < 0 || columnIndex >= rows.columns.length) {
+            throw new SQLException("Invalid column index " + columnIndex);
+        }
+        return rows.values.get(position)[columnIndex];
+    }
+
+    @Nonnull
+    private static SQLException conversionFailed(@Nonnull Object value, @Nonnull String type) {
+        return new SQLException("Cannot convert " + value.getClass().getName() + " value to " + type);
+    }
+
+    /**
+     * Column names and rows of a cached result.
+     */
+    static final class Rows {
+        private final String[] columns;
+        private final List<Object[]> values;
+        private final long estimatedSize;
+
+        Rows(@Nonnull String[] columns, @Nonnull List<Object[]> values) {
+            this.columns = columns;
+            this.values = values;
+            this.estimatedSize = estimateSize(columns, values);
+        }
+
+        int getRowCount() {
+            return values.size();
+        }
+
+        long getEstimatedSize() {
+            return estimatedSize;
+        }
+
+        private static long estimateSize(@Nonnull String[] columns, @Nonnull List<Object[]> values) {
+            long size = 64L + 16L * columns.length;
+            for (String column : columns) {
+                size += 2L * column.length();
+            }
+            for (Object[] row : values) {
+                size += 16L + 8L * row.length;
+                for (Object value : row) {
+                    size += estimateSize(value);
+                }
+            }
+            return size;
+        }
+
+        static long estimateSize(@Nullable Object value) {
+            if (value == null) {
+                return 0L;
+            }
+            if (value instanceof String) {
+                return 40L + 2L * ((String) value).length();
+            }
+            if (value instanceof byte[]) {
+                return 16L + ((byte[]) value).length;
+            }
+            if (value instanceof BigDecimal || value instanceof BigInteger) {
+                return 64L;
+            }
+            if (value instanceof Date) {
+                return 32L;
+            }
+            return 24L;
+        }
+    }
+}
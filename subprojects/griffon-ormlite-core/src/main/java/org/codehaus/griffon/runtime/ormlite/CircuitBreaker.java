@@ -0,0 +1,298 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.ormlite.CircuitBreakerState;
+import griffon.plugins.ormlite.MetricsRegistry;
+import griffon.plugins.ormlite.exceptions.CircuitBreakerOpenException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Guards a database against piling up callers while it is unreachable. The outcome of the last {@code windowSize}
+ * calls is kept; once at least {@code minimumCalls} have been recorded and the share of connection failures or slow
+ * calls reaches its threshold, the breaker opens and calls fail fast. After {@code openDuration} the next caller
+ * validates a connection: the breaker closes if the probe succeeds and stays open for another period otherwise.
+ * Errors that do not point at the connection, such as constraint violations, count as successful calls.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class CircuitBreaker {
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public interface StateListener {
+        void stateChanged(@Nonnull String databaseName, @Nonnull CircuitBreakerState previousState, @Nonnull CircuitBreakerState state);
+    }
+
+    private final String databaseName;
+    private final ConnectionSource probeTarget;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long slowCallThreshold;
+    private final double slowCallRateThreshold;
+    private final long openDuration;
+    private final String validationQuery;
+    private final int validationTimeout;
+    private final int[] vendorCodes;
+    private final StateListener listener;
+    private final MetricsRegistry.Counter rejected;
+
+    // the state and the time it was entered change together, so that nobody sees a new state with a stale timestamp
+    private final AtomicReference<Phase> phase = new AtomicReference<>(new Phase(CircuitBreakerState.CLOSED, 0L));
+    private final LongAdder rejectedCalls = new LongAdder();
+    private final LongAdder failedProbes = new LongAdder();
+
+    // guarded by this
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int index;
+    private int calls;
+    private int failures;
+    private int slowCalls;
+
+    /**
+     * @param probeTarget       supplies the connection validated in half-open state.
+     * @param slowCallThreshold calls running longer than this many milliseconds are slow, {@code 0} disables it.
+     * @param openDuration      milliseconds to fail fast before probing.
+     * @param validationQuery   statement run by the probe, {@code null} relies on {@code Connection.isValid}.
+     * @param validationTimeout seconds the probe may take.
+     * @param rejected          also counts every call rejected while the breaker is open, may be {@code null}.
+     */
+    public CircuitBreaker(@Nonnull String databaseName, @Nonnull ConnectionSource probeTarget, int windowSize, int minimumCalls,
+                          double failureRateThreshold, long slowCallThreshold, double slowCallRateThreshold, long openDuration,
+                          @Nullable String validationQuery, int validationTimeout, @Nullable StateListener listener,
+                          @Nullable MetricsRegistry.Counter rejected) {
+        this.databaseName = requireNonBlank(databaseName, "Argument 'databaseName' must not be blank");
+        this.probeTarget = requireNonNull(probeTarget, "Argument 'probeTarget' must not be null");
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Circuit breaker window of database '" + databaseName + "' must be greater than zero");
+        }
+        this.failed = new boolean[windowSize];
+        this.slow = new boolean[windowSize];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, windowSize));
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallThreshold = TimeUnit.MILLISECONDS.toNanos(slowCallThreshold);
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openDuration = TimeUnit.MILLISECONDS.toNanos(openDuration);
+        this.validationQuery = validationQuery;
+        this.validationTimeout = validationTimeout;
+        this.vendorCodes = SqlStates.transientVendorCodes(probeTarget.getDatabaseType() != null ? probeTarget.getDatabaseType().getDatabaseName() : null);
+        this.listener = listener;
+        this.rejected = rejected;
+    }
+
+    @Nonnull
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    @Nonnull
+    public CircuitBreakerState getState() {
+        return phase.get().state;
+    }
+
+    public long getRejectedCalls() {
+        return rejectedCalls.sum();
+    }
+
+    public long getFailedProbes() {
+        return failedProbes.sum();
+    }
+
+    public synchronized double getFailureRate() {
+        return calls == 0 ? 0d : (double) failures / calls;
+    }
+
+    public synchronized double getSlowCallRate() {
+        return calls == 0 ? 0d : (double) slowCalls / calls;
+    }
+
+    /**
+     * Returns if the call may proceed. In open state the first caller after {@code openDuration} runs the probe.
+     *
+     * @throws CircuitBreakerOpenException if the call must not reach the database.
+     */
+    public void acquirePermission() throws CircuitBreakerOpenException {
+        Phase current = phase.get();
+        if (current.state == CircuitBreakerState.CLOSED) {
+            return;
+        }
+        if (current.state == CircuitBreakerState.OPEN && System.nanoTime() - current.since >= openDuration &&
+            transition(CircuitBreakerState.OPEN, CircuitBreakerState.HALF_OPEN)) {
+            if (probe()) {
+                clearWindow();
+                transition(CircuitBreakerState.HALF_OPEN, CircuitBreakerState.CLOSED);
+                return;
+            }
+            failedProbes.increment();
+            transition(CircuitBreakerState.HALF_OPEN, CircuitBreakerState.OPEN);
+        }
+        rejectedCalls.increment();
+        if (rejected != null) {
+            rejected.increment();
+        }
+        throw new CircuitBreakerOpenException(databaseName);
+    }
+
+    public void onSuccess(long duration) {
+        record(false, isSlow(duration));
+    }
+
+    public void onError(long duration, @Nullable Throwable error) {
+        record(SqlStates.isConnectionFailure(error, vendorCodes), isSlow(duration));
+    }
+
+    /**
+     * Closes the breaker and forgets every recorded call.
+     */
+    public void reset() {
+        clearWindow();
+        CircuitBreakerState previous = phase.getAndSet(new Phase(CircuitBreakerState.CLOSED, System.nanoTime())).state;
+        if (previous != CircuitBreakerState.CLOSED) {
+            notifyListener(previous, CircuitBreakerState.CLOSED);
+        }
+    }
+
+    private boolean isSlow(long duration) {
+        return slowCallThreshold > 0 && duration > slowCallThreshold;
+    }
+
+    private void record(boolean failure, boolean slowCall) {
+        if (phase.get().state != CircuitBreakerState.CLOSED) {
+            // started before the breaker opened
+            return;
+        }
+
+        boolean trip;
+        synchronized (this) {
+            if (calls == failed.length) {
+                if (failed[index]) {
+                    failures--;
+                }
+                if (slow[index]) {
+                    slowCalls--;
+                }
+            } else {
+                calls++;
+            }
+            failed[index] = failure;
+            slow[index] = slowCall;
+            if (failure) {
+                failures++;
+            }
+            if (slowCall) {
+                slowCalls++;
+            }
+            index = (index + 1) % failed.length;
+
+            trip = calls >= minimumCalls &&
+                ((double) failures / calls >= failureRateThreshold || (slowCallThreshold > 0 && (double) slowCalls / calls >= slowCallRateThreshold));
+        }
+
+        if (trip && transition(CircuitBreakerState.CLOSED, CircuitBreakerState.OPEN)) {
+            LOG.warn("Circuit breaker of database '{}' opened, calls fail fast for the next {} ms", databaseName, TimeUnit.NANOSECONDS.toMillis(openDuration));
+        }
+    }
+
+    private synchronized void clearWindow() {
+        Arrays.fill(failed, false);
+        Arrays.fill(slow, false);
+        index = 0;
+        calls = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+
+    private boolean transition(@Nonnull CircuitBreakerState expected, @Nonnull CircuitBreakerState next) {
+        Phase current = phase.get();
+        if (current.state != expected || !phase.compareAndSet(current, new Phase(next, System.nanoTime()))) {
+            return false;
+        }
+        notifyListener(expected, next);
+        return true;
+    }
+
+    private void notifyListener(@Nonnull CircuitBreakerState previous, @Nonnull CircuitBreakerState next) {
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.stateChanged(databaseName, previous, next);
+        } catch (RuntimeException e) {
+            LOG.warn("Circuit breaker listener failed for database '{}'", databaseName, e);
+        }
+    }
+
+    private boolean probe() {
+        DatabaseConnection connection = null;
+        try {
+            connection = probeTarget.getReadWriteConnection(null);
+            Connection jdbcConnection = JdbcSupport.unwrap(connection);
+            if (validationQuery == null) {
+                return jdbcConnection == null || jdbcConnection.isValid(validationTimeout);
+            }
+            if (jdbcConnection == null) {
+                // no way to bound the query without a JDBC connection
+                connection.queryForLong(validationQuery);
+                return true;
+            }
+            try (Statement statement = jdbcConnection.createStatement()) {
+                statement.setQueryTimeout(validationTimeout);
+                statement.execute(validationQuery);
+                return true;
+            }
+        } catch (SQLException | RuntimeException e) {
+            LOG.debug("Circuit breaker probe failed on database '{}'", databaseName, e);
+            return false;
+        } finally {
+            if (connection != null) {
+                try {
+                    probeTarget.releaseConnection(connection);
+                } catch (SQLException e) {
+                    LOG.debug("Could not release probe connection of database '{}'", databaseName, e);
+                }
+            }
+        }
+    }
+
+    private static final class Phase {
+        private final CircuitBreakerState state;
+        private final long since;
+
+        private Phase(@Nonnull CircuitBreakerState state, long since) {
+            this.state = state;
+            this.since = since;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.ormlite.MetricsRegistry;
+import org.codehaus.griffon.runtime.ormlite.monitor.LeakSuspect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+
+/**
+ * Tracks the connections handed out by a {@code RecordingConnectionSource} and flags those held longer than a
+ * threshold as leak suspects. The acquisition stack trace is captured for a sampled fraction of connections only.
+ * Suspects held longer than the reclaim limit, if set, are released forcibly.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class ConnectionLeakDetector {
+    private static final Logger LOG = LoggerFactory.getLogger(ConnectionLeakDetector.class);
+    private static final long MIN_SWEEP_INTERVAL = 100L;
+
+    private final String databaseName;
+    private final long thresholdNanos;
+    private final long reclaimNanos;
+    private final double sampleRate;
+    private final Set<LinkedDatabaseConnection> connections = ConcurrentHashMap.newKeySet();
+    private final LongAdder suspectCount = new LongAdder();
+    private final MetricsRegistry.Counter suspects;
+    private final LongAdder reclaimedCount = new LongAdder();
+    private ScheduledExecutorService sweeper;
+
+    /**
+     * @param threshold  milliseconds a connection may be held before it is flagged.
+     * @param reclaimAfter milliseconds after which a suspect is released forcibly, {@code 0} never reclaims.
+     * @param sampleRate fraction of acquisitions whose stack trace is captured.
+     */
+    public ConnectionLeakDetector(@Nonnull String databaseName, long threshold, long reclaimAfter, double sampleRate) {
+        this(databaseName, threshold, reclaimAfter, sampleRate, null);
+    }
+
+    /**
+     * @param suspects also counts every connection flagged as a suspect, may be {@code null}.
+     */
+    public ConnectionLeakDetector(@Nonnull String databaseName, long threshold, long reclaimAfter, double sampleRate, @Nullable MetricsRegistry.Counter suspects) {
+        this.databaseName = requireNonBlank(databaseName, "Argument 'databaseName' must not be blank");
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Argument 'threshold' must be greater than 0");
+        }
+        if (reclaimAfter != 0 && reclaimAfter < threshold) {
+            throw new IllegalArgumentException("Argument 'reclaimAfter' must be 0 or not less than 'threshold'");
+        }
+        if (sampleRate < 0d || sampleRate > 1d) {
+            throw new IllegalArgumentException("Argument 'sampleRate' must be between 0 and 1");
+        }
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(threshold);
+        this.reclaimNanos = TimeUnit.MILLISECONDS.toNanos(reclaimAfter);
+        this.sampleRate = sampleRate;
+        this.suspects = suspects;
+    }
+
+    @Nonnull
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    public long getThreshold() {
+        return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    public long getReclaimAfter() {
+        return TimeUnit.NANOSECONDS.toMillis(reclaimNanos);
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getTrackedConnectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * @return number of connections flagged since startup, including those released afterwards.
+     */
+    public long getSuspectCount() {
+        return suspectCount.sum();
+    }
+
+    public long getReclaimedCount() {
+        return reclaimedCount.sum();
+    }
+
+    public synchronized void start() {
+        if (sweeper != null) {
+            return;
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@Nonnull Runnable r) {
+                Thread thread = new Thread(r, "ormlite-leak-detector-" + databaseName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long interval = Math.max(MIN_SWEEP_INTERVAL, TimeUnit.NANOSECONDS.toMillis(thresholdNanos) / 2);
+        sweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sweep();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+        connections.clear();
+    }
+
+    boolean shouldCaptureStackTrace() {
+        return sampleRate >= 1d || (sampleRate > 0d && ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+    void track(@Nonnull LinkedDatabaseConnection connection) {
+        connections.add(connection);
+    }
+
+    void untrack(@Nonnull LinkedDatabaseConnection connection) {
+        connections.remove(connection);
+    }
+
+    /**
+     * @return connections currently held longer than the threshold, oldest first.
+     */
+    @Nonnull
+    public List<LeakSuspect> getLeakSuspects() {
+        long now = System.nanoTime();
+        List<LinkedDatabaseConnection> suspects = new ArrayList<>();
+        for (LinkedDatabaseConnection connection : connections) {
+            if (now - connection.getAcquiredAt() >= thresholdNanos) {
+                suspects.add(connection);
+            }
+        }
+        Collections.sort(suspects, new Comparator<LinkedDatabaseConnection>() {
+            @Override
+            public int compare(LinkedDatabaseConnection a, LinkedDatabaseConnection b) {
+                return Long.compare(a.getAcquiredAt(), b.getAcquiredAt());
+            }
+        });
+
+        List<LeakSuspect> list = new ArrayList<>(suspects.size());
+        for (LinkedDatabaseConnection connection : suspects) {
+            list.add(new LeakSuspect(connection.getAcquiredTimestamp(),
+                TimeUnit.NANOSECONDS.toMillis(now - connection.getAcquiredAt()),
+                connection.getAcquiringThread(),
+                formatStackTrace(connection.getAcquisitionTrace())));
+        }
+        return list;
+    }
+
+    void sweep() {
+        long now = System.nanoTime();
+        for (LinkedDatabaseConnection connection : connections) {
+            long age = now - connection.getAcquiredAt();
+            if (age < thresholdNanos) {
+                continue;
+            }
+            if (connection.markSuspect()) {
+                suspectCount.increment();
+                if (suspects != null) {
+                    suspects.increment();
+                }
+                if (connection.getAcquisitionTrace() != null) {
+                    LOG.warn("Connection to database '{}' acquired by thread '{}' has been held for {} ms, it may have leaked",
+                        databaseName, connection.getAcquiringThread(), TimeUnit.NANOSECONDS.toMillis(age), connection.getAcquisitionTrace());
+                } else {
+                    LOG.warn("Connection to database '{}' acquired by thread '{}' has been held for {} ms, it may have leaked",
+                        databaseName, connection.getAcquiringThread(), TimeUnit.NANOSECONDS.toMillis(age));
+                }
+            }
+            if (reclaimNanos > 0 && age >= reclaimNanos) {
+                reclaim(connection, age);
+            }
+        }
+    }
+
+    private void reclaim(@Nonnull LinkedDatabaseConnection connection, long age) {
+        LOG.warn("Reclaiming connection to database '{}' acquired by thread '{}' after {} ms",
+            databaseName, connection.getAcquiringThread(), TimeUnit.NANOSECONDS.toMillis(age));
+        try {
+            connection.getConnectionSource().releaseConnection(connection);
+            reclaimedCount.increment();
+        } catch (SQLException | RuntimeException e) {
+            LOG.warn("Could not reclaim connection to database '{}'", databaseName, e);
+        } finally {
+            untrack(connection);
+        }
+    }
+
+    @Nonnull
+    private static String formatStackTrace(Throwable trace) {
+        if (trace == null) {
+            return "";
+        }
+        StringWriter writer = new StringWriter();
+        trace.printStackTrace(new PrintWriter(writer));
+        return writer.toString();
+    }
+}
@@ -21,6 +21,7 @@ import com.j256.ormlite.db.DatabaseType;
 import com.j256.ormlite.support.ConnectionSource;
 import com.j256.ormlite.support.DatabaseConnection;
 import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
 
 import java.io.IOException;
 import java.sql.SQLException;
@@ -42,6 +43,20 @@ public class ConnectionSourceDecorator implements ConnectionSource {
         return delegate;
     }
 
+    /**
+     * Walks down a chain of decorators looking for the first one of the given type.
+     *
+     * @return the matching decorator, or {@code null} if the chain does not contain one.
+     */
+    @Nullable
+    public static <T extends ConnectionSource> T find(@Nonnull ConnectionSource connectionSource, @Nonnull Class<T> type) {
+        ConnectionSource c = connectionSource;
+        while (!type.isInstance(c) && c instanceof ConnectionSourceDecorator) {
+            c = ((ConnectionSourceDecorator) c).getDelegate();
+        }
+        return type.isInstance(c) ? type.cast(c) : null;
+    }
+
     @Override
     public DatabaseConnection getReadOnlyConnection(String tableName) throws SQLException {
         return getDelegate().getReadOnlyConnection(tableName);
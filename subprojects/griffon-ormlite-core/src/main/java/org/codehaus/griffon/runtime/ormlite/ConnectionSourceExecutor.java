@@ -0,0 +1,120 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import griffon.annotations.core.Nonnull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Bounded executor dedicated to a single database. Keeps track of how long tasks wait before they start.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public abstract class ConnectionSourceExecutor implements Executor {
+    private final String databaseName;
+    private final LongAdder submittedTasks = new LongAdder();
+    private final LongAdder rejectedTasks = new LongAdder();
+    private final LongAdder startedTasks = new LongAdder();
+    private final LongAdder totalWaitTime = new LongAdder();
+    private final LongAccumulator maxWaitTime = new LongAccumulator(Math::max, 0L);
+
+    protected ConnectionSourceExecutor(@Nonnull String databaseName, int poolSize, int queueSize) {
+        this.databaseName = requireNonBlank(databaseName, "Argument 'databaseName' must not be blank");
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("Executor pool size for database '" + databaseName + "' must be greater than zero");
+        }
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("Executor queue size for database '" + databaseName + "' must be greater than zero");
+        }
+    }
+
+    @Nonnull
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    @Override
+    public void execute(@Nonnull Runnable command) {
+        requireNonNull(command, "Argument 'command' must not be null");
+        try {
+            doExecute(command, System.nanoTime());
+            submittedTasks.increment();
+        } catch (RuntimeException e) {
+            rejectedTasks.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * Schedules the command. Implementations must call {@link #taskStarted(long)} right before the command runs.
+     */
+    protected abstract void doExecute(@Nonnull Runnable command, long submittedAt);
+
+    protected void taskStarted(long submittedAt) {
+        long waitTime = System.nanoTime() - submittedAt;
+        startedTasks.increment();
+        totalWaitTime.add(waitTime);
+        maxWaitTime.accumulate(waitTime);
+    }
+
+    public abstract void shutdown(long timeout, @Nonnull TimeUnit unit);
+
+    public abstract boolean isShutdown();
+
+    public abstract int getPoolSize();
+
+    public abstract int getActiveCount();
+
+    public abstract int getQueueDepth();
+
+    public abstract int getQueueCapacity();
+
+    public abstract long getCompletedTaskCount();
+
+    public long getSubmittedTaskCount() {
+        return submittedTasks.sum();
+    }
+
+    public long getRejectedTaskCount() {
+        return rejectedTasks.sum();
+    }
+
+    public double getAverageWaitTime() {
+        long started = startedTasks.sum();
+        return started == 0 ? 0d : TimeUnit.NANOSECONDS.toMicros(totalWaitTime.sum()) / 1000d / started;
+    }
+
+    public long getMaxWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitTime.get());
+    }
+
+    /**
+     * @return number of times a callback was seen pinning its carrier thread. Always {@code 0} for platform threads.
+     */
+    public long getPinnedThreadCount() {
+        return 0L;
+    }
+}
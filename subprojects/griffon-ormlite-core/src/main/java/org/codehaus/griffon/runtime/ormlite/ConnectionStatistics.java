@@ -0,0 +1,186 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.ormlite.MetricsRegistry;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connection counters of a {@code RecordingConnectionSource}. Counters that are only ever summed up are striped
+ * so that threads acquiring and releasing connections do not contend on a single value. The in-flight count is a
+ * single atomic value, each acquisition compares it with the peak and only writes the peak when it grows.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class ConnectionStatistics {
+    private static final double NANOS_PER_MILLI = 1000000d;
+
+    private final LongAdder readOnlyAcquisitions = new LongAdder();
+    private final LongAdder readWriteAcquisitions = new LongAdder();
+    private final LongAdder specialAcquisitions = new LongAdder();
+    private final LongAdder failedAcquisitions = new LongAdder();
+    private final LongAdder releases = new LongAdder();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong peak = new AtomicLong();
+    private final LongAccumulator maxWait = new LongAccumulator(Math::max, 0L);
+    private final LatencyHistogram waitHistogram = new LatencyHistogram();
+    private volatile long since = System.nanoTime();
+    private volatile MetricsRegistry.Counter acquisitionCounter;
+    private volatile MetricsRegistry.Counter failureCounter;
+
+    /**
+     * Mirrors acquisitions and failed acquisitions to the given counters from now on. The counters start with the
+     * totals recorded so far.
+     */
+    void publishTo(@Nonnull MetricsRegistry.Counter acquisitions, @Nonnull MetricsRegistry.Counter failures) {
+        acquisitions.add(getTotalAcquisitions());
+        failures.add(failedAcquisitions.sum());
+        this.acquisitionCounter = acquisitions;
+        this.failureCounter = failures;
+    }
+
+    void readOnlyAcquired() {
+        readOnlyAcquisitions.increment();
+        publishAcquisition();
+        acquired();
+    }
+
+    void readWriteAcquired(long waitNanos) {
+        readWriteAcquisitions.increment();
+        publishAcquisition();
+        waitHistogram.record(waitNanos);
+        maxWait.accumulate(waitNanos);
+        acquired();
+    }
+
+    void specialAcquired() {
+        specialAcquisitions.increment();
+        publishAcquisition();
+        acquired();
+    }
+
+    void acquisitionFailed() {
+        failedAcquisitions.increment();
+        MetricsRegistry.Counter counter = failureCounter;
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    void acquired() {
+        long current = inFlight.incrementAndGet();
+        for (long max = peak.get(); current > max; max = peak.get()) {
+            if (peak.compareAndSet(max, current)) {
+                break;
+            }
+        }
+    }
+
+    private void publishAcquisition() {
+        MetricsRegistry.Counter counter = acquisitionCounter;
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    void released() {
+        releases.increment();
+        inFlight.decrementAndGet();
+    }
+
+    public int getConnectionCount() {
+        return (int) inFlight.get();
+    }
+
+    public long getPeakConnectionCount() {
+        return peak.get();
+    }
+
+    public long getReadOnlyAcquisitions() {
+        return readOnlyAcquisitions.sum();
+    }
+
+    public long getReadWriteAcquisitions() {
+        return readWriteAcquisitions.sum();
+    }
+
+    public long getSpecialAcquisitions() {
+        return specialAcquisitions.sum();
+    }
+
+    public long getTotalAcquisitions() {
+        return readOnlyAcquisitions.sum() + readWriteAcquisitions.sum() + specialAcquisitions.sum();
+    }
+
+    public long getFailedAcquisitions() {
+        return failedAcquisitions.sum();
+    }
+
+    public long getReleases() {
+        return releases.sum();
+    }
+
+    /**
+     * @return acquisitions per second since creation or the last reset.
+     */
+    public double getAcquisitionRate() {
+        return getTotalAcquisitions() / elapsedSeconds();
+    }
+
+    /**
+     * @return releases per second since creation or the last reset.
+     */
+    public double getReleaseRate() {
+        return releases.sum() / elapsedSeconds();
+    }
+
+    /**
+     * @return time spent in {@code getReadWriteConnection} at the given percentile, in milliseconds.
+     */
+    public double getAcquireWaitTime(double percentile) {
+        return waitHistogram.getValueAtPercentile(percentile) / NANOS_PER_MILLI;
+    }
+
+    public double getMaxAcquireWaitTime() {
+        return maxWait.get() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Clears every counter except the in-flight count, which still reflects the connections being held.
+     */
+    public void reset() {
+        readOnlyAcquisitions.reset();
+        readWriteAcquisitions.reset();
+        specialAcquisitions.reset();
+        failedAcquisitions.reset();
+        releases.reset();
+        peak.set(inFlight.get());
+        maxWait.reset();
+        waitHistogram.reset();
+        since = System.nanoTime();
+    }
+
+    private double elapsedSeconds() {
+        return Math.max(1d, (System.nanoTime() - since) / (NANOS_PER_MILLI * 1000d));
+    }
+}
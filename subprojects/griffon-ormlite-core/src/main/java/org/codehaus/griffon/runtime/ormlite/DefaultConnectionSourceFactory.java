@@ -17,9 +17,13 @@
  */
 package org.codehaus.griffon.runtime.ormlite;
 
+import com.j256.ormlite.dao.BaseDaoImpl;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.field.FieldType;
 import com.j256.ormlite.jdbc.DataSourceConnectionSource;
 import com.j256.ormlite.support.ConnectionSource;
 import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
 import griffon.core.Configuration;
 import griffon.core.GriffonApplication;
 import griffon.core.env.Metadata;
@@ -27,8 +31,12 @@ import griffon.core.injection.Injector;
 import griffon.plugins.datasource.DataSourceFactory;
 import griffon.plugins.datasource.DataSourceStorage;
 import griffon.plugins.monitor.MBeanManager;
+import griffon.plugins.ormlite.CircuitBreakerState;
 import griffon.plugins.ormlite.ConnectionSourceFactory;
+import griffon.plugins.ormlite.DaoRegistry;
+import griffon.plugins.ormlite.MetricsRegistry;
 import griffon.plugins.ormlite.OrmliteBootstrap;
+import griffon.plugins.ormlite.events.OrmliteCircuitBreakerStateChangeEvent;
 import griffon.plugins.ormlite.events.OrmliteConnectEndEvent;
 import griffon.plugins.ormlite.events.OrmliteConnectStartEvent;
 import griffon.plugins.ormlite.events.OrmliteDisconnectEndEvent;
@@ -36,20 +44,40 @@ import griffon.plugins.ormlite.events.OrmliteDisconnectStartEvent;
 import griffon.plugins.ormlite.exceptions.RuntimeSQLException;
 import griffon.util.GriffonClassUtils;
 import org.codehaus.griffon.runtime.core.storage.AbstractObjectFactory;
+import org.codehaus.griffon.runtime.ormlite.monitor.ConnectionLeakMonitor;
 import org.codehaus.griffon.runtime.ormlite.monitor.ConnectionSourceMonitor;
+import org.codehaus.griffon.runtime.ormlite.monitor.ConnectionSourceRouteMonitor;
+import org.codehaus.griffon.runtime.ormlite.monitor.EntityCacheMonitor;
+import org.codehaus.griffon.runtime.ormlite.monitor.ResultCacheMonitor;
+import org.codehaus.griffon.runtime.ormlite.monitor.SlowQueryLogMonitor;
+import org.codehaus.griffon.runtime.ormlite.monitor.StatementCacheMonitor;
+import org.codehaus.griffon.runtime.ormlite.monitor.StatementStatsMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.sql.DataSource;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static griffon.util.ConfigUtils.getConfigValue;
 import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static griffon.util.ConfigUtils.getConfigValueAsDouble;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsLong;
 import static griffon.util.ConfigUtils.getConfigValueAsString;
 import static griffon.util.GriffonNameUtils.requireNonBlank;
 import static java.util.Objects.requireNonNull;
@@ -58,15 +86,75 @@ import static java.util.Objects.requireNonNull;
  * @author Andres Almiray
  */
 public class DefaultConnectionSourceFactory extends AbstractObjectFactory<ConnectionSource> implements ConnectionSourceFactory {
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultConnectionSourceFactory.class);
     private static final String ERROR_DATASOURCE_BLANK = "Argument 'databaseName' must not be blank";
-
+    private static final int DEFAULT_STATEMENT_STATS_TOP = 10;
+    private static final String METRIC_STATEMENTS = "ormlite.statements";
+    private static final int DEFAULT_SLOW_QUERY_BUFFER_SIZE = 100;
+    private static final double DEFAULT_LEAK_DETECTION_SAMPLE_RATE = 0.05d;
+    private static final long DEFAULT_RESULT_CACHE_MAX_MEMORY = 16L * 1024 * 1024;
+    private static final int DEFAULT_RESULT_CACHE_MAX_ROWS = 1000;
+    private static final int DEFAULT_CIRCUIT_BREAKER_WINDOW = 50;
+    private static final int DEFAULT_CIRCUIT_BREAKER_MINIMUM_CALLS = 10;
+    private static final double DEFAULT_CIRCUIT_BREAKER_FAILURE_RATE = 0.5d;
+    private static final long DEFAULT_CIRCUIT_BREAKER_OPEN_DURATION = 30000L;
+    private static final int DEFAULT_CIRCUIT_BREAKER_VALIDATION_TIMEOUT = 5;
+    private static final long DEFAULT_RETRY_BACKOFF = 50L;
+    private static final long DEFAULT_RETRY_MAX_BACKOFF = 1000L;
+
+    // must be kept sorted, lookups use binary search
     private static final String[] CUSTOM_PROPERTIES = {
+        "cache_eviction",
+        "cache_size",
+        "cache_ttl",
+        "caches",
+        "circuit_breaker",
+        "circuit_breaker_failure_rate",
+        "circuit_breaker_minimum_calls",
+        "circuit_breaker_open_duration",
+        "circuit_breaker_slow_call_rate",
+        "circuit_breaker_slow_call_threshold",
+        "circuit_breaker_validation_query",
+        "circuit_breaker_validation_timeout",
+        "circuit_breaker_window",
         "connect_on_startup",
-        "jmx"
+        "entities",
+        "executor",
+        "executor_pinning_threshold",
+        "executor_pool_size",
+        "executor_queue_size",
+        "jmx",
+        "leak_detection_reclaim_after",
+        "leak_detection_sample_rate",
+        "leak_detection_threshold",
+        "replicas",
+        "result_cache",
+        "result_cache_max_memory",
+        "result_cache_max_rows",
+        "result_cache_ttl",
+        "retry_attempts",
+        "retry_backoff",
+        "retry_max_backoff",
+        "shard",
+        "shard_weight",
+        "slow_query_buffer_size",
+        "slow_query_sample_rate",
+        "slow_query_threshold",
+        "statement_cache_size",
+        "statement_stats",
+        "statement_stats_top",
+        "stream_fetch_size",
+        "transfer_batch_size",
+        "transfer_buffer_size",
+        "transfer_commit_per_batch",
+        "transfer_progress_interval"
     };
 
-    private final Set<String> databaseNames = new LinkedHashSet<>();
     private final Configuration dataSourceConfiguration;
+    // DataSources are shared by name between databases and replica routes, guarded by itself
+    private final Map<String, Integer> dataSourceUsers = new HashMap<>();
+    private final Set<String> createdDataSources = new HashSet<>();
+    private boolean tableConfigsLoaded;
     @Inject
     private DataSourceFactory dataSourceFactory;
     @Inject
@@ -77,6 +165,10 @@ public class DefaultConnectionSourceFactory extends AbstractObjectFactory<Connec
     private Metadata metadata;
     @Inject
     private Injector injector;
+    @Inject
+    private DaoRegistry daoRegistry;
+    @Inject
+    private MetricsRegistry metricsRegistry;
 
     @Inject
     public DefaultConnectionSourceFactory(@Nonnull @Named("ormlite") Configuration configuration,
@@ -84,18 +176,19 @@ public class DefaultConnectionSourceFactory extends AbstractObjectFactory<Connec
                                           @Nonnull GriffonApplication application) {
         super(configuration, application);
         this.dataSourceConfiguration = dataSourceConfiguration;
-        databaseNames.add(KEY_DEFAULT);
-
-        if (configuration.containsKey(getPluralKey())) {
-            Map<String, Object> ormlites = configuration.get(getPluralKey());
-            databaseNames.addAll(ormlites.keySet());
-        }
     }
 
     @Nonnull
     @Override
     public Set<String> getConnectionSourceNames() {
-        return databaseNames;
+        // read on every call, databases may be added to the configuration after startup
+        Set<String> databaseNames = new LinkedHashSet<>();
+        databaseNames.add(KEY_DEFAULT);
+        if (getConfiguration().containsKey(getPluralKey())) {
+            Map<String, Object> ormlites = getConfiguration().get(getPluralKey());
+            databaseNames.addAll(ormlites.keySet());
+        }
+        return Collections.unmodifiableSet(databaseNames);
     }
 
     @Nonnull
@@ -120,20 +213,33 @@ public class DefaultConnectionSourceFactory extends AbstractObjectFactory<Connec
     @Nonnull
     @Override
     public ConnectionSource create(@Nonnull String name) {
+        long start = System.nanoTime();
         Map<String, Object> config = narrowConfig(name);
         event(OrmliteConnectStartEvent.of(name, config));
         ConnectionSource connectionSource = createConnectionSource(config, name);
+        try {
+            registerMetrics(name, connectionSource);
 
-        if (getConfigValueAsBoolean(config, "jmx", true)) {
-            connectionSource = new JMXAwareConnectionSource(connectionSource);
-            registerMBeans(name, (JMXAwareConnectionSource) connectionSource);
-        }
+            if (getConfigValueAsBoolean(config, "jmx", true)) {
+                connectionSource = new JMXAwareConnectionSource(connectionSource);
+                registerMBeans(name, (JMXAwareConnectionSource) connectionSource);
+            }
 
-        for (Object o : injector.getInstances(OrmliteBootstrap.class)) {
-            ((OrmliteBootstrap) o).init(name, connectionSource);
+            loadTableConfigs();
+            List<Class<?>> entityClasses = getEntityClasses(config, name);
+            daoRegistry.register(name, connectionSource, entityClasses);
+            configureObjectCaches(config, name, connectionSource, entityClasses);
+
+            for (Object o : injector.getInstances(OrmliteBootstrap.class)) {
+                ((OrmliteBootstrap) o).init(name, connectionSource);
+            }
+        } catch (RuntimeException e) {
+            // nothing keeps a reference to a database that failed to connect, give back what it holds
+            release(name, config, connectionSource);
+            throw e;
         }
 
-        event(OrmliteConnectEndEvent.of(name, config, connectionSource));
+        event(OrmliteConnectEndEvent.of(name, config, connectionSource, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
         return connectionSource;
     }
 
@@ -147,18 +253,143 @@ public class DefaultConnectionSourceFactory extends AbstractObjectFactory<Connec
             ((OrmliteBootstrap) o).destroy(name, instance);
         }
 
-        closeDataSource(name);
+        release(name, config, instance);
+
+        event(OrmliteDisconnectEndEvent.of(name, config));
+    }
 
-        if (getConfigValueAsBoolean(config, "jmx", true)) {
-            unregisterMBeans((JMXAwareConnectionSource) instance);
+    private void release(@Nonnull String name, @Nonnull Map<String, Object> config, @Nonnull ConnectionSource connectionSource) {
+        daoRegistry.clear(name);
+        metricsRegistry.remove(name);
+
+        RecordingConnectionSource recordingConnectionSource = ConnectionSourceDecorator.find(connectionSource, RecordingConnectionSource.class);
+        if (recordingConnectionSource != null && recordingConnectionSource.getLeakDetector() != null) {
+            recordingConnectionSource.getLeakDetector().stop();
         }
 
-        event(OrmliteDisconnectEndEvent.of(name, config));
+        releaseDataSource(name, false);
+        for (String replica : getReplicaNames(config)) {
+            releaseDataSource(replica, true);
+        }
+
+        if (connectionSource instanceof JMXAwareConnectionSource) {
+            unregisterMBeans((JMXAwareConnectionSource) connectionSource);
+        }
     }
 
     private void registerMBeans(@Nonnull String name, @Nonnull JMXAwareConnectionSource connectionSource) {
-        ConnectionSourceMonitor monitor = new ConnectionSourceMonitor(metadata, (RecordingConnectionSource) connectionSource.getDelegate(), name);
+        RecordingConnectionSource recordingConnectionSource = (RecordingConnectionSource) connectionSource.getDelegate();
+        GuardedConnectionSource guardedConnectionSource = ConnectionSourceDecorator.find(recordingConnectionSource, GuardedConnectionSource.class);
+        ConnectionSourceMonitor monitor = new ConnectionSourceMonitor(metadata, recordingConnectionSource,
+            guardedConnectionSource != null ? guardedConnectionSource.getCircuitBreaker() : null, name);
         connectionSource.addObjectName(mBeanManager.registerMBean(monitor, false).getCanonicalName());
+
+        if (recordingConnectionSource.getStatementCacheStatistics() != null) {
+            StatementCacheMonitor statementCacheMonitor = new StatementCacheMonitor(metadata, recordingConnectionSource.getStatementCacheStatistics(), name);
+            connectionSource.addObjectName(mBeanManager.registerMBean(statementCacheMonitor, false).getCanonicalName());
+        }
+
+        if (recordingConnectionSource.getStatementStatistics() != null) {
+            int topCount = getConfigValueAsInt(narrowConfig(name), "statement_stats_top", DEFAULT_STATEMENT_STATS_TOP);
+            StatementStatsMonitor statementStatsMonitor = new StatementStatsMonitor(metadata, recordingConnectionSource.getStatementStatistics(), name, topCount);
+            connectionSource.addObjectName(mBeanManager.registerMBean(statementStatsMonitor, false).getCanonicalName());
+        }
+
+        if (recordingConnectionSource.getSlowQueryLog() != null) {
+            SlowQueryLogMonitor slowQueryLogMonitor = new SlowQueryLogMonitor(metadata, recordingConnectionSource.getSlowQueryLog());
+            connectionSource.addObjectName(mBeanManager.registerMBean(slowQueryLogMonitor, false).getCanonicalName());
+        }
+
+        if (recordingConnectionSource.getLeakDetector() != null) {
+            ConnectionLeakMonitor connectionLeakMonitor = new ConnectionLeakMonitor(metadata, recordingConnectionSource.getLeakDetector());
+            connectionSource.addObjectName(mBeanManager.registerMBean(connectionLeakMonitor, false).getCanonicalName());
+        }
+
+        if (recordingConnectionSource.getResultCache() != null) {
+            ResultCacheMonitor resultCacheMonitor = new ResultCacheMonitor(metadata, recordingConnectionSource.getResultCache());
+            connectionSource.addObjectName(mBeanManager.registerMBean(resultCacheMonitor, false).getCanonicalName());
+        }
+
+        ReplicaRoutingConnectionSource replicaRoutingConnectionSource = ConnectionSourceDecorator.find(recordingConnectionSource, ReplicaRoutingConnectionSource.class);
+        if (replicaRoutingConnectionSource != null) {
+            for (ReplicaRoutingConnectionSource.Route route : replicaRoutingConnectionSource.getRoutes()) {
+                ConnectionSourceRouteMonitor routeMonitor = new ConnectionSourceRouteMonitor(metadata, route, name);
+                connectionSource.addObjectName(mBeanManager.registerMBean(routeMonitor, false).getCanonicalName());
+            }
+        }
+    }
+
+    private void registerMetrics(@Nonnull String name, @Nonnull ConnectionSource connectionSource) {
+        GuardedConnectionSource guardedConnectionSource = ConnectionSourceDecorator.find(connectionSource, GuardedConnectionSource.class);
+        final CircuitBreaker circuitBreaker = guardedConnectionSource != null ? guardedConnectionSource.getCircuitBreaker() : null;
+        if (circuitBreaker != null) {
+            metricsRegistry.gauge("ormlite.circuit_breaker.open", name, new MetricsRegistry.Gauge() {
+                @Override
+                public double getValue() {
+                    return circuitBreaker.getState() == CircuitBreakerState.CLOSED ? 0d : 1d;
+                }
+            });
+        }
+
+        RecordingConnectionSource recordingConnectionSource = ConnectionSourceDecorator.find(connectionSource, RecordingConnectionSource.class);
+        if (recordingConnectionSource == null) {
+            return;
+        }
+
+        final ConnectionStatistics connections = recordingConnectionSource.getConnectionStatistics();
+        // monotonic figures are counters, pushed as they happen
+        connections.publishTo(metricsRegistry.counter("ormlite.connections.acquisitions", name),
+            metricsRegistry.counter("ormlite.connections.failures", name));
+        metricsRegistry.gauge("ormlite.connections.active", name, new MetricsRegistry.Gauge() {
+            @Override
+            public double getValue() {
+                return connections.getConnectionCount();
+            }
+        });
+        metricsRegistry.gauge("ormlite.connections.peak", name, new MetricsRegistry.Gauge() {
+            @Override
+            public double getValue() {
+                return connections.getPeakConnectionCount();
+            }
+        });
+        metricsRegistry.gauge("ormlite.connections.wait.p99", name, new MetricsRegistry.Gauge() {
+            @Override
+            public double getValue() {
+                return connections.getAcquireWaitTime(99d);
+            }
+        });
+
+        final StatementCacheStatistics statementCache = recordingConnectionSource.getStatementCacheStatistics();
+        if (statementCache != null) {
+            metricsRegistry.gauge("ormlite.statement_cache.hit_ratio", name, new MetricsRegistry.Gauge() {
+                @Override
+                public double getValue() {
+                    return statementCache.getHitRatio();
+                }
+            });
+        }
+
+        final QueryResultCache resultCache = recordingConnectionSource.getResultCache();
+        if (resultCache != null) {
+            metricsRegistry.gauge("ormlite.result_cache.hit_ratio", name, new MetricsRegistry.Gauge() {
+                @Override
+                public double getValue() {
+                    return resultCache.getHitRatio();
+                }
+            });
+            metricsRegistry.gauge("ormlite.result_cache.invalidations", name, new MetricsRegistry.Gauge() {
+                @Override
+                public double getValue() {
+                    return resultCache.getInvalidations();
+                }
+            });
+            metricsRegistry.gauge("ormlite.result_cache.memory", name, new MetricsRegistry.Gauge() {
+                @Override
+                public double getValue() {
+                    return resultCache.getMemoryUsed();
+                }
+            });
+        }
     }
 
     private void unregisterMBeans(@Nonnull JMXAwareConnectionSource connectionSource) {
@@ -169,48 +400,274 @@ public class DefaultConnectionSourceFactory extends AbstractObjectFactory<Connec
     }
 
     @Nonnull
-    @SuppressWarnings("ConstantConditions")
     private ConnectionSource createConnectionSource(@Nonnull Map<String, Object> config, @Nonnull String name) {
-        DataSource dataSource = getDataSource(name);
-        Map<String, Object> dsConfig = narrowDataSourceConfig(name);
-        String url = getConfigValueAsString(dsConfig, "url", "");
-        requireNonBlank(url, "Configuration for " + name + ".url must not be blank");
+        ConnectionSource connectionSource = createDataSourceConnectionSource(config, name, name);
+        List<String> acquiredReplicas = new ArrayList<>();
+        ConnectionLeakDetector leakDetector = null;
+        try {
+            Collection<String> replicaNames = getReplicaNames(config);
+            if (!replicaNames.isEmpty()) {
+                Map<String, ConnectionSource> replicas = new LinkedHashMap<>();
+                for (String replica : replicaNames) {
+                    replicas.put(replica, createDataSourceConnectionSource(config, name, replica));
+                    acquiredReplicas.add(replica);
+                }
+                connectionSource = new ReplicaRoutingConnectionSource(name, connectionSource, replicas);
+            }
+
+            int statementCacheSize = getConfigValueAsInt(config, "statement_cache_size", 0);
+            StatementStatistics statementStatistics = getConfigValueAsBoolean(config, "statement_stats", false) ? new StatementStatistics(metricsRegistry.timer(METRIC_STATEMENTS, name)) : null;
+            SlowQueryLog slowQueryLog = createSlowQueryLog(config, name);
+            leakDetector = createLeakDetector(config, name);
+            QueryResultCache resultCache = getConfigValueAsBoolean(config, "result_cache", false) ? new QueryResultCache(name,
+                getConfigValueAsLong(config, "result_cache_max_memory", DEFAULT_RESULT_CACHE_MAX_MEMORY),
+                getConfigValueAsInt(config, "result_cache_max_rows", DEFAULT_RESULT_CACHE_MAX_ROWS),
+                getConfigValueAsLong(config, "result_cache_ttl", 0L)) : null;
+
+            CircuitBreaker circuitBreaker = createCircuitBreaker(config, name, connectionSource);
+            RetryPolicy retryPolicy = createRetryPolicy(config, name, connectionSource);
+            if (circuitBreaker != null || retryPolicy != null) {
+                connectionSource = new GuardedConnectionSource(connectionSource, circuitBreaker, retryPolicy);
+            }
 
+            // connection accounting is only read through JMX, skip wrapping connections when nothing needs it
+            if (!getConfigValueAsBoolean(config, "jmx", true) && statementCacheSize <= 0 && statementStatistics == null &&
+                slowQueryLog == null && leakDetector == null && resultCache == null) {
+                return connectionSource;
+            }
+            return RecordingConnectionSource.builder(connectionSource)
+                .statementCacheSize(statementCacheSize)
+                .statementStatistics(statementStatistics)
+                .slowQueryLog(slowQueryLog)
+                .leakDetector(leakDetector)
+                .resultCache(resultCache)
+                .build();
+        } catch (RuntimeException e) {
+            if (leakDetector != null) {
+                leakDetector.stop();
+            }
+            metricsRegistry.remove(name);
+            releaseDataSource(name, false);
+            for (String replica : acquiredReplicas) {
+                releaseDataSource(replica, true);
+            }
+            throw e;
+        }
+    }
+
+    @Nullable
+    private RetryPolicy createRetryPolicy(@Nonnull Map<String, Object> config, @Nonnull String name, @Nonnull ConnectionSource connectionSource) {
+        int attempts = getConfigValueAsInt(config, "retry_attempts", 0);
+        // a single attempt leaves nothing to retry
+        if (attempts <= 1) {
+            return null;
+        }
+        return new RetryPolicy(name, connectionSource.getDatabaseType().getDatabaseName(), attempts,
+            getConfigValueAsLong(config, "retry_backoff", DEFAULT_RETRY_BACKOFF),
+            getConfigValueAsLong(config, "retry_max_backoff", DEFAULT_RETRY_MAX_BACKOFF),
+            metricsRegistry.counter("ormlite.retries", name),
+            metricsRegistry.counter("ormlite.retries.exhausted", name));
+    }
+
+    @Nullable
+    private CircuitBreaker createCircuitBreaker(@Nonnull Map<String, Object> config, @Nonnull String name, @Nonnull ConnectionSource probeTarget) {
+        if (!getConfigValueAsBoolean(config, "circuit_breaker", false)) {
+            return null;
+        }
+        return new CircuitBreaker(name, probeTarget,
+            getConfigValueAsInt(config, "circuit_breaker_window", DEFAULT_CIRCUIT_BREAKER_WINDOW),
+            getConfigValueAsInt(config, "circuit_breaker_minimum_calls", DEFAULT_CIRCUIT_BREAKER_MINIMUM_CALLS),
+            getConfigValueAsDouble(config, "circuit_breaker_failure_rate", DEFAULT_CIRCUIT_BREAKER_FAILURE_RATE),
+            getConfigValueAsLong(config, "circuit_breaker_slow_call_threshold", 0L),
+            getConfigValueAsDouble(config, "circuit_breaker_slow_call_rate", 1d),
+            getConfigValueAsLong(config, "circuit_breaker_open_duration", DEFAULT_CIRCUIT_BREAKER_OPEN_DURATION),
+            getConfigValueAsString(config, "circuit_breaker_validation_query", null),
+            getConfigValueAsInt(config, "circuit_breaker_validation_timeout", DEFAULT_CIRCUIT_BREAKER_VALIDATION_TIMEOUT),
+            new CircuitBreaker.StateListener() {
+                @Override
+                public void stateChanged(@Nonnull String databaseName, @Nonnull CircuitBreakerState previousState, @Nonnull CircuitBreakerState state) {
+                    event(OrmliteCircuitBreakerStateChangeEvent.of(databaseName, previousState, state));
+                }
+            },
+            metricsRegistry.counter("ormlite.circuit_breaker.rejected", name));
+    }
+
+    @Nullable
+    private ConnectionLeakDetector createLeakDetector(@Nonnull Map<String, Object> config, @Nonnull String name) {
+        long threshold = getConfigValueAsLong(config, "leak_detection_threshold", 0L);
+        if (threshold <= 0) {
+            return null;
+        }
+        ConnectionLeakDetector leakDetector = new ConnectionLeakDetector(name, threshold,
+            getConfigValueAsLong(config, "leak_detection_reclaim_after", 0L),
+            getConfigValueAsDouble(config, "leak_detection_sample_rate", DEFAULT_LEAK_DETECTION_SAMPLE_RATE),
+            metricsRegistry.counter("ormlite.connections.leak_suspects", name));
+        leakDetector.start();
+        return leakDetector;
+    }
+
+    @Nullable
+    private SlowQueryLog createSlowQueryLog(@Nonnull Map<String, Object> config, @Nonnull String name) {
+        long threshold = getConfigValueAsLong(config, "slow_query_threshold", 0L);
+        if (threshold <= 0) {
+            return null;
+        }
+        return new SlowQueryLog(name, threshold,
+            getConfigValueAsDouble(config, "slow_query_sample_rate", 1d),
+            getConfigValueAsInt(config, "slow_query_buffer_size", DEFAULT_SLOW_QUERY_BUFFER_SIZE),
+            metricsRegistry.counter("ormlite.statements.slow", name));
+    }
+
+    @Nonnull
+    @SuppressWarnings("ConstantConditions")
+    private ConnectionSource createDataSourceConnectionSource(@Nonnull Map<String, Object> config, @Nonnull String name, @Nonnull String dataSourceName) {
+        DataSource dataSource = getDataSource(dataSourceName);
         try {
+            Map<String, Object> dsConfig = narrowDataSourceConfig(dataSourceName);
+            String url = getConfigValueAsString(dsConfig, "url", "");
+            requireNonBlank(url, "Configuration for " + dataSourceName + ".url must not be blank");
+
             DataSourceConnectionSource connectionSource = new DataSourceConnectionSource();
             connectionSource.setDataSource(dataSource);
             connectionSource.setDatabaseUrl(url);
 
             for (Map.Entry<String, Object> e : config.entrySet()) {
-                if (Arrays.binarySearch(CUSTOM_PROPERTIES, e.getKey()) != -1) {
+                if (Arrays.binarySearch(CUSTOM_PROPERTIES, e.getKey()) >= 0) {
                     continue;
                 }
                 GriffonClassUtils.setPropertyValue(connectionSource, e.getKey(), e.getValue());
             }
 
             connectionSource.initialize();
-            return new RecordingConnectionSource(connectionSource);
+            return connectionSource;
         } catch (SQLException e) {
+            releaseDataSource(dataSourceName, !name.equals(dataSourceName));
             throw new RuntimeSQLException(name, e);
+        } catch (RuntimeException e) {
+            releaseDataSource(dataSourceName, !name.equals(dataSourceName));
+            throw e;
         }
     }
 
-    private void closeDataSource(@Nonnull String dataSourceName) {
-        DataSource dataSource = dataSourceStorage.get(dataSourceName);
-        if (dataSource != null) {
-            dataSourceFactory.destroy(dataSourceName, dataSource);
-            dataSourceStorage.remove(dataSourceName);
+    private synchronized void loadTableConfigs() {
+        // databases connecting in parallel wait here so that none of them falls back to annotation scanning
+        if (!tableConfigsLoaded) {
+            TableConfigLoader.load(Thread.currentThread().getContextClassLoader());
+            tableConfigsLoaded = true;
+        }
+    }
+
+    @Nonnull
+    private List<Class<?>> getEntityClasses(@Nonnull Map<String, Object> config, @Nonnull String name) {
+        List<Class<?>> entityClasses = new ArrayList<>();
+        for (Object entity : getConfigValue(config, "entities", Collections.emptyList())) {
+            if (entity instanceof Class) {
+                entityClasses.add((Class<?>) entity);
+                continue;
+            }
+            try {
+                entityClasses.add(Class.forName(String.valueOf(entity), true, Thread.currentThread().getContextClassLoader()));
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException("Invalid entity " + entity + " for database '" + name + "'", e);
+            }
+        }
+        return entityClasses;
+    }
+
+    private void configureObjectCaches(@Nonnull Map<String, Object> config, @Nonnull String name, @Nonnull ConnectionSource connectionSource, @Nonnull List<Class<?>> entityClasses) {
+        int defaultSize = getConfigValueAsInt(config, "cache_size", 0);
+        long defaultTtl = getConfigValueAsLong(config, "cache_ttl", 0L);
+        String defaultEviction = getConfigValueAsString(config, "cache_eviction", EntityObjectCache.Eviction.LRU.name());
+        Map<Object, Object> overrides = getConfigValue(config, "caches", Collections.emptyMap());
+
+        for (Class<?> entityClass : entityClasses) {
+            Map<String, Object> cacheConfig = getCacheConfig(overrides, entityClass);
+            int size = getConfigValueAsInt(cacheConfig, "size", defaultSize);
+            if (size <= 0) {
+                continue;
+            }
+
+            Dao<?, ?> dao = daoRegistry.getDao(name, entityClass);
+            FieldType idField = dao instanceof BaseDaoImpl ? ((BaseDaoImpl<?, ?>) dao).getTableInfo().getIdField() : null;
+            if (idField == null || !EntityObjectCache.supportsIdType(idField.getType())) {
+                LOG.warn("Entity {} of database '{}' does not have an integral id, its object cache is disabled", entityClass.getName(), name);
+                continue;
+            }
+
+            EntityObjectCache.Eviction eviction;
+            String evictionName = getConfigValueAsString(cacheConfig, "eviction", defaultEviction);
+            try {
+                eviction = EntityObjectCache.Eviction.valueOf(evictionName.toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid cache eviction '" + evictionName + "' for " + entityClass.getName() + " in database '" + name + "'", e);
+            }
+
+            EntityObjectCache cache = new EntityObjectCache(name, entityClass, size, getConfigValueAsLong(cacheConfig, "ttl", defaultTtl), eviction);
+            try {
+                dao.setObjectCache(cache);
+            } catch (SQLException e) {
+                throw new RuntimeSQLException(name, e);
+            }
+
+            if (connectionSource instanceof JMXAwareConnectionSource) {
+                EntityCacheMonitor entityCacheMonitor = new EntityCacheMonitor(metadata, cache);
+                ((JMXAwareConnectionSource) connectionSource).addObjectName(mBeanManager.registerMBean(entityCacheMonitor, false).getCanonicalName());
+            }
+        }
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getCacheConfig(@Nonnull Map<Object, Object> overrides, @Nonnull Class<?> entityClass) {
+        // overrides are keyed by entity class or class name
+        Object cacheConfig = overrides.get(entityClass);
+        if (cacheConfig == null) {
+            cacheConfig = overrides.get(entityClass.getName());
+        }
+        return cacheConfig instanceof Map ? (Map<String, Object>) cacheConfig : Collections.<String, Object>emptyMap();
+    }
+
+    @Nonnull
+    private Collection<String> getReplicaNames(@Nonnull Map<String, Object> config) {
+        return getConfigValue(config, "replicas", Collections.<String>emptyList());
+    }
+
+    /**
+     * Closes the DataSource once no database or replica route uses it anymore. A replica is only closed when this
+     * factory created it, otherwise it belongs to whoever put it into the storage.
+     */
+    private void releaseDataSource(@Nonnull String dataSourceName, boolean replica) {
+        synchronized (dataSourceUsers) {
+            Integer users = dataSourceUsers.remove(dataSourceName);
+            if (users != null && users > 1) {
+                dataSourceUsers.put(dataSourceName, users - 1);
+                return;
+            }
+            boolean created = createdDataSources.remove(dataSourceName);
+            if (replica && !created) {
+                return;
+            }
+            DataSource dataSource = dataSourceStorage.get(dataSourceName);
+            if (dataSource != null) {
+                dataSourceFactory.destroy(dataSourceName, dataSource);
+                dataSourceStorage.remove(dataSourceName);
+            }
         }
     }
 
     @Nonnull
     private DataSource getDataSource(@Nonnull String dataSourceName) {
-        DataSource dataSource = dataSourceStorage.get(dataSourceName);
-        if (dataSource == null) {
-            dataSource = dataSourceFactory.create(dataSourceName);
-            dataSourceStorage.set(dataSourceName, dataSource);
+        synchronized (dataSourceUsers) {
+            DataSource dataSource = dataSourceStorage.get(dataSourceName);
+            if (dataSource == null) {
+                dataSource = dataSourceFactory.create(dataSourceName);
+                dataSourceStorage.set(dataSourceName, dataSource);
+                createdDataSources.add(dataSourceName);
+            }
+            Integer users = dataSourceUsers.get(dataSourceName);
+            dataSourceUsers.put(dataSourceName, users == null ? 1 : users + 1);
+            return dataSource;
         }
-        return dataSource;
     }
 
     @Nonnull
@@ -17,21 +17,52 @@
  */
 package org.codehaus.griffon.runtime.ormlite;
 
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.stmt.QueryBuilder;
 import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
 import griffon.annotations.core.Nonnull;
 import griffon.annotations.core.Nullable;
+import griffon.core.env.Metadata;
+import griffon.plugins.datasource.DataSourceFactory;
+import griffon.plugins.monitor.MBeanManager;
 import griffon.plugins.ormlite.ConnectionSourceCallback;
 import griffon.plugins.ormlite.ConnectionSourceFactory;
 import griffon.plugins.ormlite.ConnectionSourceHandler;
 import griffon.plugins.ormlite.ConnectionSourceStorage;
+import griffon.plugins.ormlite.DaoCallback;
+import griffon.plugins.ormlite.DaoRegistry;
+import griffon.plugins.ormlite.IdempotentConnectionSourceCallback;
+import griffon.plugins.ormlite.QueryBuilderCallback;
+import griffon.plugins.ormlite.ShardRouter;
 import griffon.plugins.ormlite.exceptions.RuntimeSQLException;
+import org.codehaus.griffon.runtime.ormlite.monitor.ConnectionSourceExecutorMonitor;
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsLong;
+import static griffon.util.ConfigUtils.getConfigValueAsString;
 import static griffon.util.GriffonNameUtils.requireNonBlank;
 import static java.util.Objects.requireNonNull;
 
@@ -43,14 +74,41 @@ public class DefaultConnectionSourceHandler implements ConnectionSourceHandler {
     private static final String ERROR_DATASBASE_BLANK = "Argument 'databaseName' must not be blank";
     private static final String ERROR_CONNECTION_SOURCE_NULL = "Argument 'connectionSource' must not be null";
     private static final String ERROR_CALLBACK_NULL = "Argument 'callback' must not be null";
+    private static final int LOCK_STRIPES = 16;
+    private static final int DEFAULT_EXECUTOR_QUEUE_SIZE = 1000;
+    private static final int DEFAULT_POOL_SIZE = 10;
+    private static final long DEFAULT_PINNING_THRESHOLD = 20L;
+    private static final String EXECUTOR_VIRTUAL = "virtual";
+    private static final String EXECUTOR_PLATFORM = "platform";
+    private static final String SAVE_POINT_PREFIX = "GRIFFON_ORMLITE_";
+    private static final AtomicInteger SAVE_POINT_COUNTER = new AtomicInteger();
+    private static final long EXECUTOR_SHUTDOWN_TIMEOUT = 10L;
+    private static final int DEFAULT_STREAM_FETCH_SIZE = 100;
 
     private final ConnectionSourceFactory connectionSourceFactory;
     private final ConnectionSourceStorage connectionSourceStorage;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final ConcurrentMap<String, ConnectionSourceExecutor> executors = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> executorObjectNames = new ConcurrentHashMap<>();
+
+    @Inject
+    private DataSourceFactory dataSourceFactory;
+    @Inject
+    private MBeanManager mBeanManager;
+    @Inject
+    private Metadata metadata;
+    @Inject
+    private ShardRouter shardRouter;
+    @Inject
+    private DaoRegistry daoRegistry;
 
     @Inject
     public DefaultConnectionSourceHandler(@Nonnull ConnectionSourceFactory connectionSourceFactory, @Nonnull ConnectionSourceStorage connectionSourceStorage) {
         this.connectionSourceFactory = requireNonNull(connectionSourceFactory, "Argument 'connectionSourceFactory' must not be null");
         this.connectionSourceStorage = requireNonNull(connectionSourceStorage, "Argument 'connectionSourceStorage' must not be null");
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
     }
 
     @Nullable
@@ -66,9 +124,298 @@ public class DefaultConnectionSourceHandler implements ConnectionSourceHandler {
         requireNonNull(callback, ERROR_CALLBACK_NULL);
 
         ConnectionSource connectionSource = getConnectionSource(databaseName);
+        GuardedConnectionSource guardedConnectionSource = ConnectionSourceDecorator.find(connectionSource, GuardedConnectionSource.class);
+        if (guardedConnectionSource != null) {
+            return doGuarded(databaseName, connectionSource, guardedConnectionSource, false, callback);
+        }
         return doWithConnection(databaseName, connectionSource, callback);
     }
 
+    @Nullable
+    @Override
+    public <R> R withTransaction(@Nonnull ConnectionSourceCallback<R> callback) throws RuntimeSQLException {
+        return withTransaction(DefaultConnectionSourceFactory.KEY_DEFAULT, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withTransaction(@Nonnull String databaseName, @Nonnull ConnectionSourceCallback<R> callback) throws RuntimeSQLException {
+        requireNonBlank(databaseName, ERROR_DATASBASE_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+
+        ConnectionSource connectionSource = getConnectionSource(databaseName);
+        GuardedConnectionSource guardedConnectionSource = ConnectionSourceDecorator.find(connectionSource, GuardedConnectionSource.class);
+        if (guardedConnectionSource != null) {
+            return doGuarded(databaseName, connectionSource, guardedConnectionSource, true, callback);
+        }
+        return doWithTransaction(databaseName, connectionSource, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withDaos(@Nonnull DaoCallback<R> callback) throws RuntimeSQLException {
+        return withDaos(DefaultConnectionSourceFactory.KEY_DEFAULT, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withDaos(@Nonnull String databaseName, @Nonnull final DaoCallback<R> callback) throws RuntimeSQLException {
+        requireNonBlank(databaseName, ERROR_DATASBASE_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+        if (daoRegistry == null) {
+            throw new IllegalStateException("No DaoRegistry is available to database '" + databaseName + "'");
+        }
+
+        return withConnectionSource(databaseName, new ConnectionSourceCallback<R>() {
+            @Override
+            public R handle(@Nonnull String databaseName, @Nonnull ConnectionSource connectionSource) throws SQLException {
+                return callback.handle(databaseName, connectionSource, daoRegistry);
+            }
+        });
+    }
+
+    @Nullable
+    @Override
+    public <R> R withShard(@Nonnull Object shardKey, @Nonnull ConnectionSourceCallback<R> callback) throws RuntimeSQLException {
+        requireNonNull(shardKey, "Argument 'shardKey' must not be null");
+        return withConnectionSource(shardRouter.resolve(shardKey), callback);
+    }
+
+    @Nonnull
+    @Override
+    public <R> Map<String, R> withEachShard(@Nonnull ConnectionSourceCallback<R> callback) throws RuntimeSQLException {
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+
+        // fan out first so that every shard runs in parallel, then gather in shard order
+        Map<String, CompletableFuture<R>> futures = new LinkedHashMap<>();
+        for (String databaseName : shardRouter.getShardNames()) {
+            futures.put(databaseName, withConnectionSourceAsync(databaseName, callback));
+        }
+
+        Map<String, R> results = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<R>> e : futures.entrySet()) {
+            try {
+                results.put(e.getKey(), e.getValue().join());
+            } catch (CompletionException ce) {
+                if (ce.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ce.getCause();
+                }
+                throw ce;
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public <T> int withBatch(@Nonnull Class<T> entityClass, @Nonnull Iterable<T> entities, int batchSize) throws RuntimeSQLException {
+        return withBatch(DefaultConnectionSourceFactory.KEY_DEFAULT, entityClass, entities, batchSize);
+    }
+
+    @Override
+    public <T> int withBatch(@Nonnull String databaseName, @Nonnull Class<T> entityClass, @Nonnull Iterable<T> entities, int batchSize) throws RuntimeSQLException {
+        requireNonBlank(databaseName, ERROR_DATASBASE_BLANK);
+        requireNonNull(entityClass, "Argument 'entityClass' must not be null");
+        requireNonNull(entities, "Argument 'entities' must not be null");
+
+        ConnectionSource connectionSource = getConnectionSource(databaseName);
+        CircuitBreaker circuitBreaker = getCircuitBreaker(connectionSource);
+        if (circuitBreaker != null) {
+            circuitBreaker.acquirePermission();
+        }
+        long start = System.nanoTime();
+        try {
+            LOG.debug("Executing batch insert on database '{}'", databaseName);
+            int count = JdbcBatchWriter.create(databaseName, connectionSource, entityClass).insert(entities, batchSize);
+            recordOutcome(circuitBreaker, start, null);
+            return count;
+        } catch (SQLException e) {
+            recordOutcome(circuitBreaker, start, e);
+            throw new RuntimeSQLException(databaseName, e);
+        } catch (RuntimeException e) {
+            recordOutcome(circuitBreaker, start, e);
+            throw e;
+        }
+    }
+
+    @Nonnull
+    @Override
+    public <T> Stream<T> streamQuery(@Nonnull Class<T> entityClass, @Nonnull QueryBuilderCallback<T> callback) throws RuntimeSQLException {
+        return streamQuery(DefaultConnectionSourceFactory.KEY_DEFAULT, entityClass, callback);
+    }
+
+    @Nonnull
+    @Override
+    public <T> Stream<T> streamQuery(@Nonnull String databaseName, @Nonnull Class<T> entityClass, @Nonnull QueryBuilderCallback<T> callback) throws RuntimeSQLException {
+        requireNonBlank(databaseName, ERROR_DATASBASE_BLANK);
+        requireNonNull(entityClass, "Argument 'entityClass' must not be null");
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+
+        ConnectionSource connectionSource = getConnectionSource(databaseName);
+        CircuitBreaker circuitBreaker = getCircuitBreaker(connectionSource);
+        if (circuitBreaker != null) {
+            circuitBreaker.acquirePermission();
+        }
+        long start = System.nanoTime();
+        try {
+            Dao<T, ?> dao = getDao(databaseName, connectionSource, entityClass);
+            QueryBuilder<T, ?> queryBuilder = dao.queryBuilder();
+            callback.configure(queryBuilder);
+            LOG.debug("Streaming {} from database '{}'", entityClass.getName(), databaseName);
+            // the breaker sees the cursor being opened, reading the rows is up to the caller
+            Stream<T> stream = QueryStream.open(databaseName, connectionSource, dao.getTableName(), queryBuilder.prepare(), getStreamFetchSize(databaseName));
+            recordOutcome(circuitBreaker, start, null);
+            return stream;
+        } catch (SQLException e) {
+            recordOutcome(circuitBreaker, start, e);
+            throw new RuntimeSQLException(databaseName, e);
+        } catch (RuntimeException e) {
+            recordOutcome(circuitBreaker, start, e);
+            throw e;
+        }
+    }
+
+    @Nonnull
+    @Override
+    public <T> Publisher<T> publishQuery(@Nonnull Class<T> entityClass, @Nonnull QueryBuilderCallback<T> callback) throws RuntimeSQLException {
+        return publishQuery(DefaultConnectionSourceFactory.KEY_DEFAULT, entityClass, callback);
+    }
+
+    @Nonnull
+    @Override
+    public <T> Publisher<T> publishQuery(@Nonnull String databaseName, @Nonnull Class<T> entityClass, @Nonnull QueryBuilderCallback<T> callback) throws RuntimeSQLException {
+        requireNonBlank(databaseName, ERROR_DATASBASE_BLANK);
+        requireNonNull(entityClass, "Argument 'entityClass' must not be null");
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+
+        ConnectionSource connectionSource = getConnectionSource(databaseName);
+        CircuitBreaker circuitBreaker = getCircuitBreaker(connectionSource);
+        if (circuitBreaker != null) {
+            // fail fast here, every subscription asks again before it opens its cursor
+            circuitBreaker.acquirePermission();
+        }
+        try {
+            Dao<T, ?> dao = getDao(databaseName, connectionSource, entityClass);
+            QueryBuilder<T, ?> queryBuilder = dao.queryBuilder();
+            callback.configure(queryBuilder);
+            LOG.debug("Publishing {} from database '{}'", entityClass.getName(), databaseName);
+            return new QueryPublisher<>(databaseName, connectionSource, dao.getTableName(), queryBuilder.prepare(), getStreamFetchSize(databaseName), getExecutor(databaseName), circuitBreaker);
+        } catch (SQLException e) {
+            throw new RuntimeSQLException(databaseName, e);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public <R> CompletableFuture<R> withConnectionSourceAsync(@Nonnull ConnectionSourceCallback<R> callback) {
+        return withConnectionSourceAsync(DefaultConnectionSourceFactory.KEY_DEFAULT, callback);
+    }
+
+    @Nonnull
+    @Override
+    public <R> CompletableFuture<R> withConnectionSourceAsync(@Nonnull final String databaseName, @Nonnull final ConnectionSourceCallback<R> callback) {
+        requireNonBlank(databaseName, ERROR_DATASBASE_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+
+        final CompletableFuture<R> future = new CompletableFuture<>();
+        try {
+            getExecutor(databaseName).execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (future.isDone()) {
+                        return;
+                    }
+                    try {
+                        future.complete(withConnectionSource(databaseName, callback));
+                    } catch (Throwable t) {
+                        future.completeExceptionally(t);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Fails fast while the breaker is open, otherwise records the outcome and duration of the call. Retries happen
+     * within a single call, so that the breaker sees every unit of work once however many attempts it took.
+     */
+    @Nullable
+    private static <R> R doGuarded(@Nonnull String databaseName, @Nonnull ConnectionSource connectionSource, @Nonnull GuardedConnectionSource guardedConnectionSource, boolean transactional, @Nonnull ConnectionSourceCallback<R> callback) throws RuntimeSQLException {
+        CircuitBreaker circuitBreaker = guardedConnectionSource.getCircuitBreaker();
+        if (circuitBreaker == null) {
+            return doRetrying(databaseName, connectionSource, guardedConnectionSource, transactional, callback);
+        }
+        circuitBreaker.acquirePermission();
+        long start = System.nanoTime();
+        try {
+            R result = doRetrying(databaseName, connectionSource, guardedConnectionSource, transactional, callback);
+            circuitBreaker.onSuccess(System.nanoTime() - start);
+            return result;
+        } catch (RuntimeException e) {
+            // not only RuntimeSQLException, drivers and pools report timeouts with their own runtime exceptions
+            circuitBreaker.onError(System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+
+    @Nullable
+    private static CircuitBreaker getCircuitBreaker(@Nonnull ConnectionSource connectionSource) {
+        GuardedConnectionSource guardedConnectionSource = ConnectionSourceDecorator.find(connectionSource, GuardedConnectionSource.class);
+        return guardedConnectionSource != null ? guardedConnectionSource.getCircuitBreaker() : null;
+    }
+
+    private static void recordOutcome(@Nullable CircuitBreaker circuitBreaker, long start, @Nullable Throwable error) {
+        if (circuitBreaker == null) {
+            return;
+        }
+        if (error == null) {
+            circuitBreaker.onSuccess(System.nanoTime() - start);
+        } else {
+            circuitBreaker.onError(System.nanoTime() - start, error);
+        }
+    }
+
+    /**
+     * Runs the callback again after transient errors, as allowed by the retry policy. Only whole transactions and
+     * idempotent callbacks are retried, and never inside an enclosing transaction, which the error has already doomed.
+     */
+    @Nullable
+    private static <R> R doRetrying(@Nonnull String databaseName, @Nonnull ConnectionSource connectionSource, @Nonnull GuardedConnectionSource guardedConnectionSource, boolean transactional, @Nonnull ConnectionSourceCallback<R> callback) throws RuntimeSQLException {
+        RetryPolicy retryPolicy = guardedConnectionSource.getRetryPolicy();
+        if (retryPolicy == null || !(transactional || callback instanceof IdempotentConnectionSourceCallback) || guardedConnectionSource.isInTransaction()) {
+            return doOnce(databaseName, connectionSource, transactional, callback);
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return doOnce(databaseName, connectionSource, transactional, callback);
+            } catch (RuntimeSQLException e) {
+                if (!retryPolicy.isTransient(e.getCause())) {
+                    throw e;
+                }
+                long backoff = retryPolicy.nextBackoff(attempt);
+                if (backoff < 0) {
+                    LOG.warn("Giving up on database '{}' after {} attempts", databaseName, attempt, e.getCause());
+                    throw e;
+                }
+                LOG.debug("Retrying on database '{}' in {}ms after attempt {} failed", databaseName, backoff, attempt, e.getCause());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @Nullable
+    private static <R> R doOnce(@Nonnull String databaseName, @Nonnull ConnectionSource connectionSource, boolean transactional, @Nonnull ConnectionSourceCallback<R> callback) throws RuntimeSQLException {
+        return transactional ? doWithTransaction(databaseName, connectionSource, callback) : doWithConnection(databaseName, connectionSource, callback);
+    }
+
     @Nullable
     @SuppressWarnings("ThrowFromFinallyBlock")
     static <R> R doWithConnection(@Nonnull String databaseName, @Nonnull ConnectionSource connectionSource, @Nonnull ConnectionSourceCallback<R> callback) throws RuntimeSQLException {
@@ -84,6 +431,83 @@ public class DefaultConnectionSourceHandler implements ConnectionSourceHandler {
         }
     }
 
+    /**
+     * Runs the callback with a single read-write connection pinned to the current thread as ORMLite's special
+     * connection, so that every DAO call made by the callback reuses it. The outermost call disables auto-commit
+     * and commits once; nested calls on the same thread are mapped to save points.
+     */
+    @Nullable
+    static <R> R doWithTransaction(@Nonnull String databaseName, @Nonnull ConnectionSource connectionSource, @Nonnull ConnectionSourceCallback<R> callback) throws RuntimeSQLException {
+        requireNonBlank(databaseName, ERROR_DATASBASE_BLANK);
+        requireNonNull(connectionSource, ERROR_CONNECTION_SOURCE_NULL);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+
+        try {
+            DatabaseConnection connection = connectionSource.getReadWriteConnection(null);
+            try {
+                boolean outermost = connectionSource.saveSpecialConnection(connection);
+                if (outermost) {
+                    return doInTransaction(databaseName, connectionSource, connection, callback);
+                }
+                return doInSavePoint(databaseName, connectionSource, connection, callback);
+            } finally {
+                connectionSource.clearSpecialConnection(connection);
+                connectionSource.releaseConnection(connection);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeSQLException(databaseName, e);
+        }
+    }
+
+    private static <R> R doInTransaction(@Nonnull String databaseName, @Nonnull ConnectionSource connectionSource, @Nonnull DatabaseConnection connection, @Nonnull ConnectionSourceCallback<R> callback) throws SQLException {
+        boolean restoreAutoCommit = false;
+        if (connection.isAutoCommitSupported() && connection.isAutoCommit()) {
+            connection.setAutoCommit(false);
+            restoreAutoCommit = true;
+        }
+
+        try {
+            LOG.debug("Executing transaction on database '{}'", databaseName);
+            R result = callback.handle(databaseName, connectionSource);
+            connection.commit(null);
+            return result;
+        } catch (Throwable t) {
+            rollbackQuietly(databaseName, connection, null, t);
+            throw t;
+        } finally {
+            if (restoreAutoCommit) {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static <R> R doInSavePoint(@Nonnull String databaseName, @Nonnull ConnectionSource connectionSource, @Nonnull DatabaseConnection connection, @Nonnull ConnectionSourceCallback<R> callback) throws SQLException {
+        if (!connectionSource.getDatabaseType().isNestedSavePointsSupported()) {
+            // joins the outer transaction
+            return callback.handle(databaseName, connectionSource);
+        }
+
+        Savepoint savePoint = connection.setSavePoint(SAVE_POINT_PREFIX + SAVE_POINT_COUNTER.incrementAndGet());
+        try {
+            LOG.debug("Executing nested transaction on database '{}'", databaseName);
+            R result = callback.handle(databaseName, connectionSource);
+            connection.releaseSavePoint(savePoint);
+            return result;
+        } catch (Throwable t) {
+            rollbackQuietly(databaseName, connection, savePoint, t);
+            throw t;
+        }
+    }
+
+    private static void rollbackQuietly(@Nonnull String databaseName, @Nonnull DatabaseConnection connection, @Nullable Savepoint savePoint, @Nonnull Throwable cause) {
+        try {
+            connection.rollback(savePoint);
+        } catch (SQLException e) {
+            LOG.warn("Could not rollback transaction on database '{}'", databaseName, e);
+            cause.addSuppressed(e);
+        }
+    }
+
     @Override
     public void closeConnectionSource() {
         closeConnectionSource(DefaultConnectionSourceFactory.KEY_DEFAULT);
@@ -91,20 +515,125 @@ public class DefaultConnectionSourceHandler implements ConnectionSourceHandler {
 
     @Override
     public void closeConnectionSource(@Nonnull String databaseName) {
-        ConnectionSource connectionSource = connectionSourceStorage.get(databaseName);
-        if (connectionSource != null) {
-            connectionSourceFactory.destroy(databaseName, connectionSource);
-            connectionSourceStorage.remove(databaseName);
+        shutdownExecutor(databaseName);
+
+        synchronized (lockFor(databaseName)) {
+            ConnectionSource connectionSource = connectionSourceStorage.get(databaseName);
+            if (connectionSource != null) {
+                connectionSourceFactory.destroy(databaseName, connectionSource);
+                connectionSourceStorage.remove(databaseName);
+            }
         }
     }
 
+    /**
+     * Resolves the {@code ConnectionSource} for the given name. Lookups of an existing instance do not lock;
+     * the first access to a given name is serialized on a lock stripe so that the factory is invoked only once
+     * even if several threads race for the same database.
+     */
     @Nonnull
     private ConnectionSource getConnectionSource(@Nonnull String databaseName) {
         ConnectionSource connectionSource = connectionSourceStorage.get(databaseName);
         if (connectionSource == null) {
-            connectionSource = connectionSourceFactory.create(databaseName);
-            connectionSourceStorage.set(databaseName, connectionSource);
+            synchronized (lockFor(databaseName)) {
+                connectionSource = connectionSourceStorage.get(databaseName);
+                if (connectionSource == null) {
+                    connectionSource = connectionSourceFactory.create(databaseName);
+                    connectionSourceStorage.set(databaseName, connectionSource);
+                }
+            }
         }
         return connectionSource;
     }
+
+    @Nonnull
+    private <T> Dao<T, ?> getDao(@Nonnull String databaseName, @Nonnull ConnectionSource connectionSource, @Nonnull Class<T> entityClass) throws SQLException {
+        if (daoRegistry != null) {
+            return daoRegistry.<T, Object>getDao(databaseName, entityClass);
+        }
+        return DaoManager.<Dao<T, ?>, T>createDao(connectionSource, entityClass);
+    }
+
+    private int getStreamFetchSize(@Nonnull String databaseName) {
+        return getConfigValueAsInt(connectionSourceFactory.getConfigurationFor(databaseName), "stream_fetch_size", DEFAULT_STREAM_FETCH_SIZE);
+    }
+
+    @Nonnull
+    private ConnectionSourceExecutor getExecutor(@Nonnull String databaseName) {
+        ConnectionSourceExecutor executor = executors.get(databaseName);
+        if (executor == null) {
+            synchronized (lockFor(databaseName)) {
+                executor = executors.get(databaseName);
+                if (executor == null) {
+                    executor = createExecutor(databaseName);
+                    executors.put(databaseName, executor);
+                }
+            }
+        }
+        return executor;
+    }
+
+    @Nonnull
+    private ConnectionSourceExecutor createExecutor(@Nonnull String databaseName) {
+        if (!connectionSourceFactory.getConnectionSourceNames().contains(databaseName)) {
+            throw new IllegalArgumentException("Database '" + databaseName + "' is not configured");
+        }
+
+        Map<String, Object> config = connectionSourceFactory.getConfigurationFor(databaseName);
+        String mode = getConfigValueAsString(config, "executor", EXECUTOR_PLATFORM);
+        int queueSize = getConfigValueAsInt(config, "executor_queue_size", DEFAULT_EXECUTOR_QUEUE_SIZE);
+
+        ConnectionSourceExecutor executor;
+        if (EXECUTOR_VIRTUAL.equals(mode) && VirtualThreads.isSupported()) {
+            // concurrency is capped by the connection pool rather than by the number of threads
+            int poolSize = getConfigValueAsInt(config, "executor_pool_size", resolveConnectionPoolSize(databaseName));
+            long pinningThreshold = getConfigValueAsLong(config, "executor_pinning_threshold", DEFAULT_PINNING_THRESHOLD);
+            executor = new VirtualConnectionSourceExecutor(databaseName, poolSize, queueSize, pinningThreshold);
+        } else {
+            if (EXECUTOR_VIRTUAL.equals(mode)) {
+                LOG.warn("Virtual threads are not supported by this JVM. Database '{}' falls back to platform threads", databaseName);
+            } else if (!EXECUTOR_PLATFORM.equals(mode)) {
+                throw new IllegalArgumentException("Unsupported executor '" + mode + "' for database '" + databaseName + "'");
+            }
+            int poolSize = getConfigValueAsInt(config, "executor_pool_size", Runtime.getRuntime().availableProcessors());
+            executor = new PlatformConnectionSourceExecutor(databaseName, poolSize, queueSize);
+        }
+
+        if (mBeanManager != null && getConfigValueAsBoolean(config, "jmx", true)) {
+            ConnectionSourceExecutorMonitor monitor = new ConnectionSourceExecutorMonitor(metadata, executor);
+            executorObjectNames.put(databaseName, mBeanManager.registerMBean(monitor, false).getCanonicalName());
+        }
+        return executor;
+    }
+
+    private int resolveConnectionPoolSize(@Nonnull String databaseName) {
+        if (dataSourceFactory == null || !dataSourceFactory.getDataSourceNames().contains(databaseName)) {
+            return DEFAULT_POOL_SIZE;
+        }
+        Map<String, Object> dataSourceConfig = dataSourceFactory.getConfigurationFor(databaseName);
+        Map<String, Object> pool = getConfigValue(dataSourceConfig, "pool", Collections.<String, Object>emptyMap());
+        return getConfigValueAsInt(pool, "maximumPoolSize", DEFAULT_POOL_SIZE);
+    }
+
+    private void shutdownExecutor(@Nonnull String databaseName) {
+        ConnectionSourceExecutor executor;
+        synchronized (lockFor(databaseName)) {
+            executor = executors.remove(databaseName);
+        }
+
+        if (executor != null) {
+            // let queued callbacks finish while the ConnectionSource is still open
+            executor.shutdown(EXECUTOR_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+            String objectName = executorObjectNames.remove(databaseName);
+            if (objectName != null) {
+                mBeanManager.unregisterMBean(objectName);
+            }
+        }
+    }
+
+    @Nonnull
+    private Object lockFor(@Nonnull String databaseName) {
+        int h = databaseName.hashCode();
+        return locks[(h ^ (h >>> 16)) & (LOCK_STRIPES - 1)];
+    }
 }
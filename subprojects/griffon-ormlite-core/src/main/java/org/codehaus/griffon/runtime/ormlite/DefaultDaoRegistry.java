@@ -0,0 +1,140 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.support.ConnectionSource;
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.ormlite.ConnectionSourceStorage;
+import griffon.plugins.ormlite.DaoRegistry;
+import griffon.plugins.ormlite.exceptions.RuntimeSQLException;
+
+import javax.inject.Inject;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps one immutable map of DAOs per database. Readers never lock; writers copy the current map under the
+ * registry's monitor and publish the copy.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class DefaultDaoRegistry implements DaoRegistry {
+    private static final String ERROR_DATABASE_NAME_BLANK = "Argument 'databaseName' must not be blank";
+    private static final String ERROR_ENTITY_CLASS_NULL = "Argument 'entityClass' must not be null";
+
+    private final ConnectionSourceStorage connectionSourceStorage;
+    private final ConcurrentMap<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    @Inject
+    public DefaultDaoRegistry(@Nonnull ConnectionSourceStorage connectionSourceStorage) {
+        this.connectionSourceStorage = requireNonNull(connectionSourceStorage, "Argument 'connectionSourceStorage' must not be null");
+    }
+
+    @Nonnull
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T, ID> Dao<T, ID> getDao(@Nonnull String databaseName, @Nonnull Class<T> entityClass) throws RuntimeSQLException {
+        requireNonBlank(databaseName, ERROR_DATABASE_NAME_BLANK);
+        requireNonNull(entityClass, ERROR_ENTITY_CLASS_NULL);
+
+        Snapshot snapshot = snapshots.get(databaseName);
+        if (snapshot != null) {
+            Dao<?, ?> dao = snapshot.daos.get(entityClass);
+            if (dao != null) {
+                return (Dao<T, ID>) dao;
+            }
+        }
+
+        synchronized (this) {
+            snapshot = snapshots.get(databaseName);
+            ConnectionSource connectionSource = snapshot != null ? snapshot.connectionSource : connectionSourceStorage.get(databaseName);
+            if (connectionSource == null) {
+                throw new IllegalStateException("Database '" + databaseName + "' is not connected");
+            }
+            publish(databaseName, connectionSource, Collections.<Class<?>>singletonList(entityClass));
+            return (Dao<T, ID>) snapshots.get(databaseName).daos.get(entityClass);
+        }
+    }
+
+    @Override
+    public void register(@Nonnull String databaseName, @Nonnull ConnectionSource connectionSource, @Nonnull Collection<Class<?>> entityClasses) throws RuntimeSQLException {
+        requireNonBlank(databaseName, ERROR_DATABASE_NAME_BLANK);
+        requireNonNull(connectionSource, "Argument 'connectionSource' must not be null");
+        requireNonNull(entityClasses, "Argument 'entityClasses' must not be null");
+
+        synchronized (this) {
+            publish(databaseName, connectionSource, entityClasses);
+        }
+    }
+
+    @Override
+    public void clear(@Nonnull String databaseName) {
+        requireNonBlank(databaseName, ERROR_DATABASE_NAME_BLANK);
+
+        Snapshot snapshot;
+        synchronized (this) {
+            snapshot = snapshots.remove(databaseName);
+        }
+        if (snapshot != null) {
+            // DaoManager would otherwise keep the DAOs of a closed ConnectionSource alive
+            for (Dao<?, ?> dao : snapshot.daos.values()) {
+                DaoManager.unregisterDao(snapshot.connectionSource, dao);
+            }
+        }
+    }
+
+    private void publish(@Nonnull String databaseName, @Nonnull ConnectionSource connectionSource, @Nonnull Collection<Class<?>> entityClasses) {
+        Snapshot current = snapshots.get(databaseName);
+        Map<Class<?>, Dao<?, ?>> daos = current != null && current.connectionSource == connectionSource ?
+            new HashMap<>(current.daos) : new HashMap<Class<?>, Dao<?, ?>>();
+
+        try {
+            for (Class<?> entityClass : entityClasses) {
+                requireNonNull(entityClass, ERROR_ENTITY_CLASS_NULL);
+                if (!daos.containsKey(entityClass)) {
+                    daos.put(entityClass, DaoManager.createDao(connectionSource, entityClass));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeSQLException(databaseName, e);
+        }
+
+        snapshots.put(databaseName, new Snapshot(connectionSource, Collections.unmodifiableMap(daos)));
+    }
+
+    private static final class Snapshot {
+        private final ConnectionSource connectionSource;
+        private final Map<Class<?>, Dao<?, ?>> daos;
+
+        private Snapshot(@Nonnull ConnectionSource connectionSource, @Nonnull Map<Class<?>, Dao<?, ?>> daos) {
+            this.connectionSource = connectionSource;
+            this.daos = daos;
+        }
+    }
+}
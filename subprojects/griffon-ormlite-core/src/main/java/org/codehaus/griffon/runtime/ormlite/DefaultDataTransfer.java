@@ -0,0 +1,398 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.core.GriffonApplication;
+import griffon.core.event.Event;
+import griffon.plugins.ormlite.ConnectionSourceCallback;
+import griffon.plugins.ormlite.ConnectionSourceFactory;
+import griffon.plugins.ormlite.ConnectionSourceHandler;
+import griffon.plugins.ormlite.DataTransfer;
+import griffon.plugins.ormlite.events.OrmliteTransferEndEvent;
+import griffon.plugins.ormlite.events.OrmliteTransferProgressEvent;
+import griffon.plugins.ormlite.events.OrmliteTransferStartEvent;
+import griffon.plugins.ormlite.exceptions.RuntimeSQLException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Exports read the result set with a forward-only cursor into a {@link TransferWriter}; imports read a
+ * {@link TransferReader} into JDBC batches of {@code transfer_batch_size} rows. An import is a single transaction, so a
+ * failure leaves the table untouched, unless {@code transfer_commit_per_batch} commits every batch on its own. Inside
+ * {@code withTransaction} committing is left to the enclosing transaction either way.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class DefaultDataTransfer implements DataTransfer {
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultDataTransfer.class);
+    private static final String ERROR_DATASBASE_BLANK = "Argument 'databaseName' must not be blank";
+    private static final String ERROR_TABLE_NAME_BLANK = "Argument 'tableName' must not be blank";
+    private static final String ERROR_FILE_NULL = "Argument 'file' must not be null";
+    private static final String ERROR_FORMAT_NULL = "Argument 'format' must not be null";
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final int MIN_BUFFER_SIZE = 1024;
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int DEFAULT_PROGRESS_INTERVAL = 10000;
+    private static final int DEFAULT_FETCH_SIZE = 100;
+
+    private final ConnectionSourceHandler connectionSourceHandler;
+    private final ConnectionSourceFactory connectionSourceFactory;
+    private final GriffonApplication application;
+
+    @Inject
+    public DefaultDataTransfer(@Nonnull ConnectionSourceHandler connectionSourceHandler, @Nonnull ConnectionSourceFactory connectionSourceFactory, @Nonnull GriffonApplication application) {
+        this.connectionSourceHandler = requireNonNull(connectionSourceHandler, "Argument 'connectionSourceHandler' must not be null");
+        this.connectionSourceFactory = requireNonNull(connectionSourceFactory, "Argument 'connectionSourceFactory' must not be null");
+        this.application = requireNonNull(application, "Argument 'application' must not be null");
+    }
+
+    @Override
+    public long exportTable(@Nonnull String tableName, @Nonnull Path file, @Nonnull Format format) throws RuntimeSQLException, IOException {
+        return exportTable(DefaultConnectionSourceFactory.KEY_DEFAULT, tableName, file, format);
+    }
+
+    @Override
+    public long exportTable(@Nonnull String databaseName, @Nonnull String tableName, @Nonnull Path file, @Nonnull Format format) throws RuntimeSQLException, IOException {
+        requireNonBlank(databaseName, ERROR_DATASBASE_BLANK);
+        requireNonBlank(tableName, ERROR_TABLE_NAME_BLANK);
+        requireNonNull(file, ERROR_FILE_NULL);
+        requireNonNull(format, ERROR_FORMAT_NULL);
+        return export(databaseName, tableName, null, file, format);
+    }
+
+    @Override
+    public long exportQuery(@Nonnull String sql, @Nonnull Path file, @Nonnull Format format) throws RuntimeSQLException, IOException {
+        return exportQuery(DefaultConnectionSourceFactory.KEY_DEFAULT, sql, file, format);
+    }
+
+    @Override
+    public long exportQuery(@Nonnull String databaseName, @Nonnull String sql, @Nonnull Path file, @Nonnull Format format) throws RuntimeSQLException, IOException {
+        requireNonBlank(databaseName, ERROR_DATASBASE_BLANK);
+        requireNonBlank(sql, "Argument 'sql' must not be blank");
+        requireNonNull(file, ERROR_FILE_NULL);
+        requireNonNull(format, ERROR_FORMAT_NULL);
+        return export(databaseName, null, sql, file, format);
+    }
+
+    @Override
+    public long importTable(@Nonnull String tableName, @Nonnull Path file, @Nonnull Format format) throws RuntimeSQLException, IOException {
+        return importTable(DefaultConnectionSourceFactory.KEY_DEFAULT, tableName, file, format);
+    }
+
+    @Override
+    public long importTable(@Nonnull String databaseName, @Nonnull final String tableName, @Nonnull final Path file, @Nonnull final Format format) throws RuntimeSQLException, IOException {
+        requireNonBlank(databaseName, ERROR_DATASBASE_BLANK);
+        requireNonBlank(tableName, ERROR_TABLE_NAME_BLANK);
+        requireNonNull(file, ERROR_FILE_NULL);
+        requireNonNull(format, ERROR_FORMAT_NULL);
+
+        return transfer(databaseName, new ConnectionSourceCallback<Long>() {
+            @Override
+            public Long handle(@Nonnull String databaseName, @Nonnull ConnectionSource connectionSource) throws SQLException {
+                try {
+                    return doImport(new Progress(databaseName, Operation.IMPORT, tableName, file), connectionSource, format);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+
+    private long export(@Nonnull String databaseName, @Nullable final String tableName, @Nullable final String sql, @Nonnull final Path file, @Nonnull final Format format) throws IOException {
+        return transfer(databaseName, new ConnectionSourceCallback<Long>() {
+            @Override
+            public Long handle(@Nonnull String databaseName, @Nonnull ConnectionSource connectionSource) throws SQLException {
+                try {
+                    Progress progress = new Progress(databaseName, Operation.EXPORT, tableName != null ? tableName : sql, file);
+                    return doExport(progress, connectionSource, tableName, sql, format);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+
+    private long transfer(@Nonnull String databaseName, @Nonnull ConnectionSourceCallback<Long> callback) throws IOException {
+        try {
+            Long rows = connectionSourceHandler.withConnectionSource(databaseName, callback);
+            return rows != null ? rows : 0L;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private long doExport(@Nonnull Progress progress, @Nonnull ConnectionSource connectionSource, @Nullable String tableName, @Nullable String sql, @Nonnull Format format) throws SQLException, IOException {
+        Map<String, Object> config = connectionSourceFactory.getConfigurationFor(progress.databaseName);
+        int bufferSize = Math.max(MIN_BUFFER_SIZE, getConfigValueAsInt(config, "transfer_buffer_size", DEFAULT_BUFFER_SIZE));
+        int fetchSize = getConfigValueAsInt(config, "stream_fetch_size", DEFAULT_FETCH_SIZE);
+        int interval = getConfigValueAsInt(config, "transfer_progress_interval", DEFAULT_PROGRESS_INTERVAL);
+
+        String query = sql;
+        if (query == null) {
+            StringBuilder sb = new StringBuilder("SELECT * FROM ");
+            connectionSource.getDatabaseType().appendEscapedEntityName(sb, tableName);
+            query = sb.toString();
+        }
+
+        DatabaseConnection connection = connectionSource.getReadOnlyConnection(tableName);
+        try {
+            Connection jdbcConnection = requireJdbc(progress.databaseName, connection);
+            // PostgreSQL only honours the fetch size outside of auto-commit mode
+            boolean restoreAutoCommit = fetchSize != 0 && jdbcConnection.getAutoCommit() && connectionSource.getSpecialConnection(tableName) == null;
+            if (restoreAutoCommit) {
+                jdbcConnection.setAutoCommit(false);
+            }
+            try (PreparedStatement ps = jdbcConnection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                if (fetchSize != 0) {
+                    ps.setFetchSize(fetchSize);
+                }
+                try (ResultSet rs = ps.executeQuery();
+                     FileChannel channel = FileChannel.open(progress.file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                     TransferWriter writer = TransferWriter.create(format, channel, bufferSize)) {
+                    ResultSetMetaData metaData = rs.getMetaData();
+                    String[] names = new String[metaData.getColumnCount()];
+                    int[] sqlTypes = new int[names.length];
+                    for (int i = 0; i < names.length; i++) {
+                        names[i] = metaData.getColumnLabel(i + 1);
+                        sqlTypes[i] = metaData.getColumnType(i + 1);
+                    }
+
+                    progress.started();
+                    writer.writeHeader(names, sqlTypes);
+                    while (rs.next()) {
+                        writer.writeRow(rs);
+                        progress.row(interval, writer.getBytesWritten());
+                    }
+                    writer.flush();
+                    progress.ended(writer.getBytesWritten());
+                    return progress.rows;
+                }
+            } finally {
+                if (restoreAutoCommit) {
+                    jdbcConnection.setAutoCommit(true);
+                }
+            }
+        } finally {
+            connectionSource.releaseConnection(connection);
+        }
+    }
+
+    private long doImport(@Nonnull Progress progress, @Nonnull ConnectionSource connectionSource, @Nonnull Format format) throws SQLException, IOException {
+        Map<String, Object> config = connectionSourceFactory.getConfigurationFor(progress.databaseName);
+        int bufferSize = Math.max(MIN_BUFFER_SIZE, getConfigValueAsInt(config, "transfer_buffer_size", DEFAULT_BUFFER_SIZE));
+        int batchSize = Math.max(1, getConfigValueAsInt(config, "transfer_batch_size", DEFAULT_BATCH_SIZE));
+        int interval = getConfigValueAsInt(config, "transfer_progress_interval", DEFAULT_PROGRESS_INTERVAL);
+        boolean commitPerBatch = getConfigValueAsBoolean(config, "transfer_commit_per_batch", false);
+        String tableName = progress.source;
+
+        DatabaseConnection connection = connectionSource.getReadWriteConnection(tableName);
+        try (FileChannel channel = FileChannel.open(progress.file, StandardOpenOption.READ);
+             TransferReader reader = TransferReader.create(format, channel, bufferSize)) {
+            Connection jdbcConnection = requireJdbc(progress.databaseName, connection);
+            String[] names = reader.readHeader();
+            int[] sqlTypes = columnTypes(jdbcConnection, connectionSource, tableName, names);
+            TransferCodec.Kind[] kinds = TransferCodec.kindsOf(sqlTypes);
+
+            // a connection that is not in auto-commit mode belongs to an enclosing transaction
+            boolean ownsCommit = connection.isAutoCommit();
+            if (ownsCommit) {
+                connection.setAutoCommit(false);
+            }
+            progress.started();
+            String statement = insertStatement(connectionSource, tableName, names);
+            try (PreparedStatement ps = jdbcConnection.prepareStatement(statement)) {
+                Object[] values = new Object[names.length];
+                int pending = 0;
+                while (reader.readRow(values, kinds)) {
+                    for (int i = 0; i < values.length; i++) {
+                        if (values[i] == null) {
+                            ps.setNull(i + 1, sqlTypes[i]);
+                        } else {
+                            ps.setObject(i + 1, values[i], sqlTypes[i]);
+                        }
+                    }
+                    ps.addBatch();
+                    if (++pending == batchSize) {
+                        flush(connection, ps, statement, ownsCommit && commitPerBatch);
+                        pending = 0;
+                    }
+                    progress.row(interval, reader.getBytesRead());
+                }
+                if (pending > 0) {
+                    flush(connection, ps, statement, ownsCommit && commitPerBatch);
+                }
+                if (ownsCommit && !commitPerBatch) {
+                    connection.commit(null);
+                }
+            } catch (SQLException | IOException | RuntimeException e) {
+                if (ownsCommit) {
+                    rollbackQuietly(progress.databaseName, connection, e);
+                }
+                throw e;
+            } finally {
+                if (ownsCommit) {
+                    connection.setAutoCommit(true);
+                }
+            }
+            progress.ended(reader.getBytesRead());
+            return progress.rows;
+        } finally {
+            connectionSource.releaseConnection(connection);
+        }
+    }
+
+    @Nonnull
+    private static Connection requireJdbc(@Nonnull String databaseName, @Nonnull DatabaseConnection connection) throws SQLException {
+        Connection jdbcConnection = JdbcSupport.unwrap(connection);
+        if (jdbcConnection == null) {
+            throw new SQLException("Database '" + databaseName + "' does not provide JDBC connections, which data transfers require");
+        }
+        return jdbcConnection;
+    }
+
+    @Nonnull
+    private static int[] columnTypes(@Nonnull Connection connection, @Nonnull ConnectionSource connectionSource, @Nonnull String tableName, @Nonnull String[] names) throws SQLException {
+        StringBuilder sb = new StringBuilder("SELECT ");
+        appendColumns(sb, connectionSource, names);
+        sb.append(" FROM ");
+        connectionSource.getDatabaseType().appendEscapedEntityName(sb, tableName);
+        sb.append(" WHERE 1 = 0");
+
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(sb.toString())) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            int[] sqlTypes = new int[names.length];
+            for (int i = 0; i < sqlTypes.length; i++) {
+                sqlTypes[i] = metaData.getColumnType(i + 1);
+            }
+            return sqlTypes;
+        }
+    }
+
+    @Nonnull
+    private static String insertStatement(@Nonnull ConnectionSource connectionSource, @Nonnull String tableName, @Nonnull String[] names) {
+        StringBuilder sb = new StringBuilder("INSERT INTO ");
+        connectionSource.getDatabaseType().appendEscapedEntityName(sb, tableName);
+        sb.append(" (");
+        appendColumns(sb, connectionSource, names);
+        sb.append(") VALUES (");
+        for (int i = 0; i < names.length; i++) {
+            sb.append(i > 0 ? ",?" : "?");
+        }
+        return sb.append(')').toString();
+    }
+
+    private static void appendColumns(@Nonnull StringBuilder sb, @Nonnull ConnectionSource connectionSource, @Nonnull String[] names) {
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            connectionSource.getDatabaseType().appendEscapedEntityName(sb, names[i]);
+        }
+    }
+
+    private static void flush(@Nonnull DatabaseConnection connection, @Nonnull PreparedStatement ps, @Nonnull String statement, boolean commit) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            ps.executeBatch();
+        } finally {
+            // the rows bypass the decorators, tell the result cache and the statement statistics about them
+            JdbcSupport.executed(connection, statement, System.nanoTime() - start);
+            JdbcSupport.written(connection, statement);
+        }
+        if (commit) {
+            connection.commit(null);
+        }
+    }
+
+    private static void rollbackQuietly(@Nonnull String databaseName, @Nonnull DatabaseConnection connection, @Nonnull Exception cause) {
+        try {
+            connection.rollback(null);
+        } catch (SQLException e) {
+            LOG.warn("Could not rollback import on database '{}'", databaseName, e);
+            cause.addSuppressed(e);
+        }
+    }
+
+    private void event(@Nonnull Event event) {
+        application.getEventRouter().publishEvent(event);
+    }
+
+    /**
+     * Counts rows and publishes the transfer events.
+     */
+    private final class Progress {
+        private final String databaseName;
+        private final Operation operation;
+        private final String source;
+        private final Path file;
+        private long start;
+        private long rows;
+
+        private Progress(@Nonnull String databaseName, @Nonnull Operation operation, @Nonnull String source, @Nonnull Path file) {
+            this.databaseName = databaseName;
+            this.operation = operation;
+            this.source = source;
+            this.file = file;
+        }
+
+        private void started() {
+            LOG.debug("Starting {} of {} on database '{}' with {}", operation, source, databaseName, file);
+            start = System.nanoTime();
+            event(OrmliteTransferStartEvent.of(databaseName, operation, source, file));
+        }
+
+        private void row(int interval, long bytes) {
+            rows++;
+            if (interval > 0 && rows % interval == 0) {
+                event(OrmliteTransferProgressEvent.of(databaseName, operation, source, file, rows, bytes));
+            }
+        }
+
+        private void ended(long bytes) {
+            long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            LOG.debug("Finished {} of {} on database '{}': {} rows, {} bytes in {} ms", operation, source, databaseName, rows, bytes, duration);
+            event(OrmliteTransferEndEvent.of(databaseName, operation, source, file, rows, bytes, duration));
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.ormlite.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps metrics in memory. Counters and timers are striped so that publishing them does not contend; values are
+ * only aggregated when a {@link #snapshot()} is taken.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class DefaultMetricsRegistry implements MetricsRegistry {
+    private static final String ERROR_NAME_BLANK = "Argument 'name' must not be blank";
+    private static final String ERROR_DATABASE_NAME_BLANK = "Argument 'databaseName' must not be blank";
+    private static final double NANOS_PER_MILLI = 1000000d;
+
+    private final ConcurrentMap<String, Metric> metrics = new ConcurrentHashMap<>();
+
+    @Nonnull
+    @Override
+    public Counter counter(@Nonnull String name, @Nonnull String databaseName) {
+        Metric metric = lookup(name, databaseName);
+        if (metric == null) {
+            metric = register(new DefaultCounter(name, databaseName));
+        }
+        return (Counter) requireType(metric, DefaultCounter.class);
+    }
+
+    @Nonnull
+    @Override
+    public Timer timer(@Nonnull String name, @Nonnull String databaseName) {
+        Metric metric = lookup(name, databaseName);
+        if (metric == null) {
+            metric = register(new DefaultTimer(name, databaseName));
+        }
+        return (Timer) requireType(metric, DefaultTimer.class);
+    }
+
+    @Override
+    public void gauge(@Nonnull String name, @Nonnull String databaseName, @Nonnull Gauge gauge) {
+        requireNonNull(gauge, "Argument 'gauge' must not be null");
+        metrics.put(key(name, databaseName), new GaugeMetric(name, databaseName, gauge));
+    }
+
+    @Override
+    public void remove(@Nonnull String databaseName) {
+        requireNonBlank(databaseName, ERROR_DATABASE_NAME_BLANK);
+        for (Iterator<Metric> it = metrics.values().iterator(); it.hasNext(); ) {
+            if (databaseName.equals(it.next().databaseName)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the current value of every metric, sorted by database and name.
+     */
+    @Nonnull
+    public List<MetricValue> snapshot() {
+        List<Metric> list = new ArrayList<>(metrics.values());
+        Collections.sort(list);
+        List<MetricValue> values = new ArrayList<>(list.size());
+        for (Metric metric : list) {
+            Map<String, Number> map = new LinkedHashMap<>();
+            metric.collect(map);
+            values.add(new MetricValue(metric.name, metric.databaseName, metric.getType(), map));
+        }
+        return values;
+    }
+
+    private Metric lookup(@Nonnull String name, @Nonnull String databaseName) {
+        return metrics.get(key(name, databaseName));
+    }
+
+    @Nonnull
+    private Metric register(@Nonnull Metric metric) {
+        Metric existing = metrics.putIfAbsent(key(metric.name, metric.databaseName), metric);
+        return existing == null ? metric : existing;
+    }
+
+    @Nonnull
+    private static Metric requireType(@Nonnull Metric metric, @Nonnull Class<? extends Metric> type) {
+        // a name registered as a gauge, say, must not be handed out as a counter
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException("Metric '" + metric.name + "' of database '" + metric.databaseName + "' is a " + metric.getType());
+        }
+        return metric;
+    }
+
+    @Nonnull
+    private static String key(@Nonnull String name, @Nonnull String databaseName) {
+        requireNonBlank(name, ERROR_NAME_BLANK);
+        requireNonBlank(databaseName, ERROR_DATABASE_NAME_BLANK);
+        return databaseName + '/' + name;
+    }
+
+    /**
+     * The value of a metric at the time of a snapshot.
+     */
+    public static final class MetricValue {
+        private final String name;
+        private final String databaseName;
+        private final String type;
+        private final Map<String, Number> values;
+
+        private MetricValue(@Nonnull String name, @Nonnull String databaseName, @Nonnull String type, @Nonnull Map<String, Number> values) {
+            this.name = name;
+            this.databaseName = databaseName;
+            this.type = type;
+            this.values = Collections.unmodifiableMap(values);
+        }
+
+        @Nonnull
+        public String getName() {
+            return name;
+        }
+
+        @Nonnull
+        public String getDatabaseName() {
+            return databaseName;
+        }
+
+        /**
+         * @return one of {@code counter}, {@code timer} or {@code gauge}.
+         */
+        @Nonnull
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return {@code count} for counters; {@code count}, {@code total}, {@code max}, {@code p50} and {@code p99}
+         * in milliseconds for timers; {@code value} for gauges.
+         */
+        @Nonnull
+        public Map<String, Number> getValues() {
+            return values;
+        }
+    }
+
+    private abstract static class Metric implements Comparable<Metric> {
+        private final String name;
+        private final String databaseName;
+
+        private Metric(@Nonnull String name, @Nonnull String databaseName) {
+            this.name = name;
+            this.databaseName = databaseName;
+        }
+
+        @Nonnull
+        abstract String getType();
+
+        abstract void collect(@Nonnull Map<String, Number> values);
+
+        @Override
+        public int compareTo(Metric o) {
+            int c = databaseName.compareTo(o.databaseName);
+            return c != 0 ? c : name.compareTo(o.name);
+        }
+    }
+
+    private static final class DefaultCounter extends Metric implements Counter {
+        private final LongAdder count = new LongAdder();
+
+        private DefaultCounter(@Nonnull String name, @Nonnull String databaseName) {
+            super(name, databaseName);
+        }
+
+        @Override
+        public void increment() {
+            count.increment();
+        }
+
+        @Override
+        public void add(long amount) {
+            count.add(amount);
+        }
+
+        @Nonnull
+        @Override
+        String getType() {
+            return "counter";
+        }
+
+        @Override
+        void collect(@Nonnull Map<String, Number> values) {
+            values.put("count", count.sum());
+        }
+    }
+
+    private static final class DefaultTimer extends Metric implements Timer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        private DefaultTimer(@Nonnull String name, @Nonnull String databaseName) {
+            super(name, databaseName);
+        }
+
+        @Override
+        public void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            max.accumulate(nanos);
+            histogram.record(nanos);
+        }
+
+        @Nonnull
+        @Override
+        String getType() {
+            return "timer";
+        }
+
+        @Override
+        void collect(@Nonnull Map<String, Number> values) {
+            values.put("count", count.sum());
+            values.put("total", totalNanos.sum() / NANOS_PER_MILLI);
+            values.put("max", max.get() / NANOS_PER_MILLI);
+            values.put("p50", histogram.getValueAtPercentile(50d) / NANOS_PER_MILLI);
+            values.put("p99", histogram.getValueAtPercentile(99d) / NANOS_PER_MILLI);
+        }
+    }
+
+    private static final class GaugeMetric extends Metric {
+        private final Gauge gauge;
+
+        private GaugeMetric(@Nonnull String name, @Nonnull String databaseName, @Nonnull Gauge gauge) {
+            super(name, databaseName);
+            this.gauge = gauge;
+        }
+
+        @Nonnull
+        @Override
+        String getType() {
+            return "gauge";
+        }
+
+        @Override
+        void collect(@Nonnull Map<String, Number> values) {
+            values.put("value", gauge.getValue());
+        }
+    }
+}
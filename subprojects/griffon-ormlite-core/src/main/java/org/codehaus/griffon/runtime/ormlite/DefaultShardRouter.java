@@ -0,0 +1,176 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.ormlite.ConnectionSourceFactory;
+import griffon.plugins.ormlite.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Consistent hashing ring over every database configured with {@code shard = true}. Each database owns
+ * {@code shard_weight * 128} points of the ring, so adding or removing a shard only moves the keys adjacent
+ * to its points. Lookups read an immutable snapshot; {@link #rebuild()} swaps in a new one.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class DefaultShardRouter implements ShardRouter {
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultShardRouter.class);
+    private static final int VIRTUAL_NODES = 128;
+
+    private final ConnectionSourceFactory connectionSourceFactory;
+    private final AtomicReference<Ring> ring = new AtomicReference<>();
+
+    @Inject
+    public DefaultShardRouter(@Nonnull ConnectionSourceFactory connectionSourceFactory) {
+        this.connectionSourceFactory = requireNonNull(connectionSourceFactory, "Argument 'connectionSourceFactory' must not be null");
+    }
+
+    @Nonnull
+    @Override
+    public String resolve(@Nonnull Object shardKey) {
+        requireNonNull(shardKey, "Argument 'shardKey' must not be null");
+        return getRing().resolve(hash(String.valueOf(shardKey)));
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> getShardNames() {
+        return getRing().names;
+    }
+
+    @Override
+    public void rebuild() {
+        ring.set(buildRing());
+    }
+
+    @Nonnull
+    private Ring getRing() {
+        Ring r = ring.get();
+        if (r == null) {
+            ring.compareAndSet(null, buildRing());
+            r = ring.get();
+        }
+        return r;
+    }
+
+    @Nonnull
+    private Ring buildRing() {
+        Set<String> names = new LinkedHashSet<>();
+        int points = 0;
+        for (String databaseName : connectionSourceFactory.getConnectionSourceNames()) {
+            Map<String, Object> config = connectionSourceFactory.getConfigurationFor(databaseName);
+            if (getConfigValueAsBoolean(config, "shard", false)) {
+                names.add(databaseName);
+                points += VIRTUAL_NODES * Math.max(1, getConfigValueAsInt(config, "shard_weight", 1));
+            }
+        }
+
+        Point[] ring = new Point[points];
+        int i = 0;
+        for (String databaseName : names) {
+            int weight = Math.max(1, getConfigValueAsInt(connectionSourceFactory.getConfigurationFor(databaseName), "shard_weight", 1));
+            for (int n = 0; n < VIRTUAL_NODES * weight; n++) {
+                ring[i++] = new Point(hash(databaseName + "#" + n), databaseName);
+            }
+        }
+        Arrays.sort(ring);
+
+        long[] hashes = new long[points];
+        String[] owners = new String[points];
+        for (i = 0; i < points; i++) {
+            hashes[i] = ring[i].hash;
+            owners[i] = ring[i].owner;
+        }
+
+        LOG.debug("Built shard ring with {} points over {}", points, names);
+        return new Ring(Collections.unmodifiableSet(names), hashes, owners);
+    }
+
+    /**
+     * 64-bit FNV-1a followed by the MurmurHash3 finalizer, which spreads short and sequential keys evenly.
+     */
+    static long hash(@Nonnull String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Point implements Comparable<Point> {
+        private final long hash;
+        private final String owner;
+
+        private Point(long hash, @Nonnull String owner) {
+            this.hash = hash;
+            this.owner = owner;
+        }
+
+        @Override
+        public int compareTo(@Nonnull Point o) {
+            return Long.compare(hash, o.hash);
+        }
+    }
+
+    private static final class Ring {
+        private final Set<String> names;
+        private final long[] hashes;
+        private final String[] owners;
+
+        private Ring(@Nonnull Set<String> names, @Nonnull long[] hashes, @Nonnull String[] owners) {
+            this.names = names;
+            this.hashes = hashes;
+            this.owners = owners;
+        }
+
+        @Nonnull
+        private String resolve(long hash) {
+            if (hashes.length == 0) {
+                throw new IllegalStateException("No database is configured with 'shard = true'");
+            }
+            int index = Arrays.binarySearch(hashes, hash);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            // wrap around to the first point of the ring
+            return owners[index == hashes.length ? 0 : index];
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import com.j256.ormlite.dao.ObjectCache;
+import griffon.annotations.core.Nonnull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * ORMLite {@code ObjectCache} for the DAO of a single entity whose id is an integral number. Ids are stored as
+ * primitive {@code long}s in a {@code LongObjectCache}. Lookups for any other class or id type are not cached.
+ * <p>
+ * ORMLite keeps the cache in sync when entities are updated or deleted through the DAO; statements issued with
+ * update/delete builders or raw SQL bypass it.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class EntityObjectCache implements ObjectCache {
+    public enum Eviction {
+        /** Entries are held strongly and evicted least recently used first */
+        LRU,
+        /** As {@code LRU}, values may also be reclaimed by the garbage collector when memory runs low */
+        SOFT
+    }
+
+    private final String databaseName;
+    private final Class<?> entityClass;
+    private final Eviction eviction;
+    private final long ttl;
+    private final LongObjectCache<Object> cache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxSize maximum number of cached entities.
+     * @param ttl     milliseconds an entity stays cached, {@code 0} keeps it until evicted.
+     */
+    public EntityObjectCache(@Nonnull String databaseName, @Nonnull Class<?> entityClass, int maxSize, long ttl, @Nonnull Eviction eviction) {
+        this.databaseName = requireNonNull(databaseName, "Argument 'databaseName' must not be null");
+        this.entityClass = requireNonNull(entityClass, "Argument 'entityClass' must not be null");
+        this.eviction = requireNonNull(eviction, "Argument 'eviction' must not be null");
+        this.ttl = ttl;
+        this.cache = new LongObjectCache<>(maxSize, TimeUnit.MILLISECONDS.toNanos(ttl), eviction == Eviction.SOFT);
+    }
+
+    /**
+     * @return whether ids of the given type can be cached.
+     */
+    public static boolean supportsIdType(@Nonnull Class<?> idType) {
+        return idType == long.class || idType == Long.class ||
+            idType == int.class || idType == Integer.class ||
+            idType == short.class || idType == Short.class;
+    }
+
+    @Nonnull
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    @Nonnull
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    @Nonnull
+    public Eviction getEviction() {
+        return eviction;
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public int getMaxSize() {
+        return cache.getMaxSize();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return cache.getEvictions();
+    }
+
+    public double getHitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0d : (double) h / total;
+    }
+
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+    }
+
+    @Override
+    public <T> void registerClass(Class<T> clazz) {
+        // nothing to prepare, only the entity class given at construction is cached
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T, ID> T get(Class<T> clazz, ID id) {
+        if (!cacheable(clazz, id)) {
+            return null;
+        }
+        Object value = cache.get(((Number) id).longValue());
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return (T) value;
+    }
+
+    @Override
+    public <T, ID> void put(Class<T> clazz, ID id, T data) {
+        if (data != null && cacheable(clazz, id)) {
+            cache.put(((Number) id).longValue(), data);
+        }
+    }
+
+    @Override
+    public <T> void clear(Class<T> clazz) {
+        if (clazz == entityClass) {
+            cache.clear();
+        }
+    }
+
+    @Override
+    public void clearAll() {
+        cache.clear();
+    }
+
+    @Override
+    public <T, ID> void remove(Class<T> clazz, ID id) {
+        if (cacheable(clazz, id)) {
+            cache.remove(((Number) id).longValue());
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T, ID> T updateId(Class<T> clazz, ID oldId, ID newId) {
+        if (!cacheable(clazz, oldId)) {
+            return null;
+        }
+        Object value = cache.remove(((Number) oldId).longValue());
+        if (value != null && cacheable(clazz, newId)) {
+            cache.put(((Number) newId).longValue(), value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    public <T> int size(Class<T> clazz) {
+        return clazz == entityClass ? cache.size() : 0;
+    }
+
+    @Override
+    public int sizeAll() {
+        return cache.size();
+    }
+
+    /**
+     * Drops entries that expired or whose value was reclaimed. Lookups and stores already do so a few entries at a
+     * time, this sweeps the whole cache at once.
+     */
+    public void purge() {
+        cache.purge();
+    }
+
+    private boolean cacheable(Class<?> clazz, Object id) {
+        return clazz == entityClass && (id instanceof Long || id instanceof Integer || id instanceof Short);
+    }
+}
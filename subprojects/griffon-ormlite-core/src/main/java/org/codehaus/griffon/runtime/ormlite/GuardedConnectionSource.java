@@ -0,0 +1,62 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import com.j256.ormlite.support.ConnectionSource;
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+/**
+ * Carries the circuit breaker and retry policy that guard the units of work run by the handler on a database.
+ * Connections pass through untouched.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class GuardedConnectionSource extends ConnectionSourceDecorator {
+    private final CircuitBreaker circuitBreaker;
+    private final RetryPolicy retryPolicy;
+
+    /**
+     * @param circuitBreaker guards calls made through the handler, may be {@code null}.
+     * @param retryPolicy    retries units of work that fail on transient errors, may be {@code null}.
+     */
+    public GuardedConnectionSource(@Nonnull ConnectionSource delegate, @Nullable CircuitBreaker circuitBreaker, @Nullable RetryPolicy retryPolicy) {
+        super(delegate);
+        this.circuitBreaker = circuitBreaker;
+        this.retryPolicy = retryPolicy;
+    }
+
+    @Nullable
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    @Nullable
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Whether the calling thread runs inside a transaction. Asks the delegate directly, so that decorators above this
+     * one do not count the lookup as an acquisition.
+     */
+    boolean isInTransaction() {
+        return getDelegate().getSpecialConnection(null) != null;
+    }
+}
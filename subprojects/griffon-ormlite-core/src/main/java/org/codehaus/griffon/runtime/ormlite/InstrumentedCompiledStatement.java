@@ -0,0 +1,177 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import com.j256.ormlite.dao.ObjectCache;
+import com.j256.ormlite.field.SqlType;
+import com.j256.ormlite.support.CompiledStatement;
+import com.j256.ormlite.support.DatabaseResults;
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Times {@code runQuery}, {@code runUpdate} and {@code runExecute} of a compiled statement. Arguments are only
+ * captured when slow statements are being logged. Once closed, the instance goes back to the connection that
+ * handed it out and is reused for the next compiled statement; ORMLite never touches a compiled statement again
+ * after closing it.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class InstrumentedCompiledStatement implements CompiledStatement {
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private final InstrumentedDatabaseConnection connection;
+    private final StatementStatistics statistics;
+    private final SlowQueryLog slowQueryLog;
+    private CompiledStatement delegate;
+    private String statement;
+    private StatementStatistics.Entry entry;
+    private Object[] args = NO_ARGS;
+    private int argCount;
+
+    InstrumentedCompiledStatement(@Nonnull InstrumentedDatabaseConnection connection, @Nullable StatementStatistics statistics, @Nullable SlowQueryLog slowQueryLog) {
+        this.connection = connection;
+        this.statistics = statistics;
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    @Nonnull
+    InstrumentedCompiledStatement open(@Nonnull CompiledStatement delegate, @Nonnull String statement, int argCount) {
+        this.delegate = delegate;
+        if (!statement.equals(this.statement)) {
+            this.statement = statement;
+            this.entry = statistics != null ? statistics.entryFor(statement) : null;
+        }
+        if (slowQueryLog != null) {
+            if (args.length < argCount) {
+                args = new Object[argCount];
+            }
+            this.argCount = argCount;
+        }
+        return this;
+    }
+
+    @Override
+    public int getColumnCount() throws SQLException {
+        return delegate.getColumnCount();
+    }
+
+    @Override
+    public String getColumnName(int column) throws SQLException {
+        return delegate.getColumnName(column);
+    }
+
+    @Override
+    public int runUpdate() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.runUpdate();
+        } finally {
+            record(start);
+        }
+    }
+
+    @Override
+    public DatabaseResults runQuery(ObjectCache objectCache) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.runQuery(objectCache);
+        } finally {
+            record(start);
+        }
+    }
+
+    @Override
+    public int runExecute() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return delegate.runExecute();
+        } finally {
+            record(start);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        CompiledStatement closing = delegate;
+        if (closing != null) {
+            release();
+            closing.close();
+        }
+    }
+
+    @Override
+    public void closeQuietly() {
+        CompiledStatement closing = delegate;
+        if (closing != null) {
+            release();
+            closing.closeQuietly();
+        }
+    }
+
+    @Override
+    public void cancel() throws SQLException {
+        delegate.cancel();
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object obj, SqlType sqlType) throws SQLException {
+        delegate.setObject(parameterIndex, obj, sqlType);
+        if (slowQueryLog != null && parameterIndex >= 0 && parameterIndex < argCount) {
+            args[parameterIndex] = obj;
+        }
+    }
+
+    @Override
+    public void setMaxRows(int max) throws SQLException {
+        delegate.setMaxRows(max);
+    }
+
+    @Override
+    public void setQueryTimeout(long millis) throws SQLException {
+        delegate.setQueryTimeout(millis);
+    }
+
+    private void release() {
+        delegate = null;
+        if (argCount > 0) {
+            // do not keep the arguments of the last execution reachable
+            Arrays.fill(args, 0, argCount, null);
+        }
+        connection.release(this);
+    }
+
+    private void record(long start) {
+        long nanos = System.nanoTime() - start;
+        if (entry != null) {
+            if (!statistics.isCurrent(entry)) {
+                // the statistics were reset since the entry was looked up
+                entry = statistics.entryFor(statement);
+            }
+            statistics.record(entry, nanos);
+        }
+        if (slowQueryLog != null) {
+            slowQueryLog.record(statement, args, argCount, nanos);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import com.j256.ormlite.dao.ObjectCache;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.stmt.GenericRowMapper;
+import com.j256.ormlite.stmt.StatementBuilder;
+import com.j256.ormlite.support.CompiledStatement;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.support.GeneratedKeyHolder;
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import java.sql.SQLException;
+
+/**
+ * Records the latency of every statement executed through this connection. Compiled statements are timed when
+ * they run, under the SQL they were compiled from; the wrapper is reused once ORMLite closes it. Statements slower than the threshold of the
+ * {@code SlowQueryLog}, if any, are reported to it along with their arguments.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class InstrumentedDatabaseConnection extends DatabaseConnectionDecorator {
+    private final StatementStatistics statistics;
+    private final SlowQueryLog slowQueryLog;
+    // connections are used by one thread at a time, so is the compiled statement kept for reuse
+    private InstrumentedCompiledStatement idleStatement;
+
+    public InstrumentedDatabaseConnection(@Nonnull DatabaseConnection delegate, @Nullable StatementStatistics statistics, @Nullable SlowQueryLog slowQueryLog) {
+        super(delegate);
+        if (statistics == null && slowQueryLog == null) {
+            throw new IllegalArgumentException("Arguments 'statistics' and 'slowQueryLog' must not both be null");
+        }
+        this.statistics = statistics;
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    @Override
+    public int executeStatement(String statementStr, int resultFlags) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return super.executeStatement(statementStr, resultFlags);
+        } finally {
+            record(statementStr, null, start);
+        }
+    }
+
+    @Override
+    public CompiledStatement compileStatement(String statement, StatementBuilder.StatementType type, FieldType[] argFieldTypes, int resultFlags, boolean cacheStore) throws SQLException {
+        return instrument(super.compileStatement(statement, type, argFieldTypes, resultFlags, cacheStore), statement, argFieldTypes == null ? 0 : argFieldTypes.length);
+    }
+
+    /**
+     * Times a statement compiled on the JDBC connection directly, as if it had been compiled through this connection.
+     */
+    @Nonnull
+    CompiledStatement instrument(@Nonnull CompiledStatement compiledStatement, @Nonnull String statement, int argCount) {
+        InstrumentedCompiledStatement instrumented = idleStatement;
+        if (instrumented == null) {
+            instrumented = new InstrumentedCompiledStatement(this, statistics, slowQueryLog);
+        } else {
+            idleStatement = null;
+        }
+        return instrumented.open(compiledStatement, statement, argCount);
+    }
+
+    void release(@Nonnull InstrumentedCompiledStatement compiledStatement) {
+        idleStatement = compiledStatement;
+    }
+
+    @Override
+    public int insert(String statement, Object[] args, FieldType[] argfieldTypes, GeneratedKeyHolder keyHolder) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return super.insert(statement, args, argfieldTypes, keyHolder);
+        } finally {
+            record(statement, args, start);
+        }
+    }
+
+    @Override
+    public int update(String statement, Object[] args, FieldType[] argfieldTypes) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return super.update(statement, args, argfieldTypes);
+        } finally {
+            record(statement, args, start);
+        }
+    }
+
+    @Override
+    public int delete(String statement, Object[] args, FieldType[] argfieldTypes) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return super.delete(statement, args, argfieldTypes);
+        } finally {
+            record(statement, args, start);
+        }
+    }
+
+    @Override
+    public <T> Object queryForOne(String statement, Object[] args, FieldType[] argfieldTypes, GenericRowMapper<T> rowMapper, ObjectCache objectCache) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return super.queryForOne(statement, args, argfieldTypes, rowMapper, objectCache);
+        } finally {
+            record(statement, args, start);
+        }
+    }
+
+    @Override
+    public long queryForLong(String statement) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return super.queryForLong(statement);
+        } finally {
+            record(statement, null, start);
+        }
+    }
+
+    @Override
+    public long queryForLong(String statement, Object[] args, FieldType[] argFieldTypes) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return super.queryForLong(statement, args, argFieldTypes);
+        } finally {
+            record(statement, args, start);
+        }
+    }
+
+    /**
+     * Records a statement that was executed on the JDBC connection directly.
+     */
+    void executed(@Nonnull String statement, long nanos) {
+        if (statistics != null) {
+            statistics.record(statement, nanos);
+        }
+        if (slowQueryLog != null) {
+            slowQueryLog.record(statement, null, nanos);
+        }
+    }
+
+    private void record(String statement, Object[] args, long start) {
+        long nanos = System.nanoTime() - start;
+        if (statistics != null) {
+            statistics.record(statement, nanos);
+        }
+        if (slowQueryLog != null) {
+            slowQueryLog.record(statement, args, nanos);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import com.j256.ormlite.dao.BaseDaoImpl;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.jdbc.TypeValMapper;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.table.TableInfo;
+import griffon.annotations.core.Nonnull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Inserts entities with a single prepared statement and JDBC batches, bypassing the per-row statements issued
+ * by {@code Dao.create}. Each chunk of {@code batchSize} rows is committed on its own unless the connection is
+ * already part of a transaction, in which case committing is left to the owner of the transaction. Auto-commit and
+ * commits go through the decorated connection, and every chunk is reported to it as a write, so that cached query
+ * results of the table are invalidated just as for writes made through the DAO.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class JdbcBatchWriter<T> {
+    private static final Logger LOG = LoggerFactory.getLogger(JdbcBatchWriter.class);
+
+    private final String databaseName;
+    private final ConnectionSource connectionSource;
+    private final Dao<T, ?> dao;
+    private final TableInfo<T, ?> tableInfo;
+    private final FieldType[] argFieldTypes;
+    private final FieldType generatedIdField;
+    private final int[] sqlTypes;
+    private final String statement;
+
+    private JdbcBatchWriter(@Nonnull String databaseName, @Nonnull ConnectionSource connectionSource, @Nonnull Dao<T, ?> dao, @Nonnull TableInfo<T, ?> tableInfo) throws SQLException {
+        this.databaseName = databaseName;
+        this.connectionSource = connectionSource;
+        this.dao = dao;
+        this.tableInfo = tableInfo;
+
+        List<FieldType> fieldTypes = new ArrayList<>();
+        FieldType idField = null;
+        for (FieldType fieldType : tableInfo.getFieldTypes()) {
+            if (fieldType.isForeignCollection() || fieldType.isReadOnly()) {
+                continue;
+            }
+            if (fieldType.isGeneratedId()) {
+                // let the database assign it, the value is read back from the generated keys
+                idField = fieldType;
+                continue;
+            }
+            fieldTypes.add(fieldType);
+        }
+        this.argFieldTypes = fieldTypes.toArray(new FieldType[fieldTypes.size()]);
+        this.generatedIdField = idField;
+
+        this.sqlTypes = new int[argFieldTypes.length];
+        for (int i = 0; i < argFieldTypes.length; i++) {
+            sqlTypes[i] = TypeValMapper.getTypeValForSqlType(argFieldTypes[i].getSqlType());
+        }
+
+        StringBuilder sb = new StringBuilder("INSERT INTO ");
+        connectionSource.getDatabaseType().appendEscapedEntityName(sb, tableInfo.getTableName());
+        sb.append(" (");
+        for (int i = 0; i < argFieldTypes.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            connectionSource.getDatabaseType().appendEscapedEntityName(sb, argFieldTypes[i].getColumnName());
+        }
+        sb.append(") VALUES (");
+        for (int i = 0; i < argFieldTypes.length; i++) {
+            sb.append(i > 0 ? ",?" : "?");
+        }
+        this.statement = sb.append(')').toString();
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    static <T> JdbcBatchWriter<T> create(@Nonnull String databaseName, @Nonnull ConnectionSource connectionSource, @Nonnull Class<T> entityClass) throws SQLException {
+        Dao<T, ?> dao = DaoManager.createDao(connectionSource, entityClass);
+        if (!(dao instanceof BaseDaoImpl)) {
+            throw new IllegalArgumentException("Dao for " + entityClass.getName() + " does not expose its table metadata");
+        }
+        return new JdbcBatchWriter<>(databaseName, connectionSource, dao, ((BaseDaoImpl<T, ?>) dao).getTableInfo());
+    }
+
+    int insert(@Nonnull Iterable<T> entities, int batchSize) throws SQLException {
+        requireNonNull(entities, "Argument 'entities' must not be null");
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Argument 'batchSize' must be greater than zero");
+        }
+
+        DatabaseConnection connection = connectionSource.getReadWriteConnection(tableInfo.getTableName());
+        try {
+            Connection jdbcConnection = JdbcSupport.unwrap(connection);
+            if (jdbcConnection != null && (generatedIdField == null || !generatedIdField.isGeneratedIdSequence())) {
+                return insertBatched(connection, jdbcConnection, entities, batchSize);
+            }
+        } finally {
+            connectionSource.releaseConnection(connection);
+        }
+
+        // sequence based ids and non JDBC connections go through the regular DAO path
+        LOG.debug("Falling back to per-row inserts for {} on database '{}'", tableInfo.getDataClass().getName(), databaseName);
+        return insertPerRow(entities);
+    }
+
+    private int insertPerRow(@Nonnull Iterable<T> entities) throws SQLException {
+        int count = 0;
+        for (T entity : entities) {
+            count += dao.create(entity);
+        }
+        return count;
+    }
+
+    private int insertBatched(@Nonnull DatabaseConnection connection, @Nonnull Connection jdbcConnection, @Nonnull Iterable<T> entities, int batchSize) throws SQLException {
+        // a connection that is not in auto-commit mode belongs to an enclosing transaction
+        boolean ownsCommit = connection.isAutoCommit();
+        if (ownsCommit) {
+            connection.setAutoCommit(false);
+        }
+
+        int count = 0;
+        List<T> chunk = new ArrayList<>(Math.min(batchSize, 1024));
+        try (PreparedStatement ps = generatedIdField != null ?
+            jdbcConnection.prepareStatement(statement, Statement.RETURN_GENERATED_KEYS) :
+            jdbcConnection.prepareStatement(statement)) {
+            for (T entity : entities) {
+                bind(ps, entity);
+                ps.addBatch();
+                chunk.add(entity);
+                if (chunk.size() == batchSize) {
+                    count += flush(connection, ps, chunk, ownsCommit);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                count += flush(connection, ps, chunk, ownsCommit);
+            }
+        } catch (SQLException | RuntimeException e) {
+            if (ownsCommit) {
+                rollbackQuietly(connection, e);
+            }
+            throw e;
+        } finally {
+            if (ownsCommit) {
+                connection.setAutoCommit(true);
+            }
+        }
+        return count;
+    }
+
+    private void bind(@Nonnull PreparedStatement ps, @Nonnull T entity) throws SQLException {
+        for (int i = 0; i < argFieldTypes.length; i++) {
+            Object value = argFieldTypes[i].extractJavaFieldToSqlArgValue(entity);
+            if (value == null) {
+                ps.setNull(i + 1, sqlTypes[i]);
+            } else {
+                ps.setObject(i + 1, value, sqlTypes[i]);
+            }
+        }
+    }
+
+    private int flush(@Nonnull DatabaseConnection connection, @Nonnull PreparedStatement ps, @Nonnull List<T> chunk, boolean commit) throws SQLException {
+        int count = 0;
+        long start = System.nanoTime();
+        try {
+            for (int updated : ps.executeBatch()) {
+                count += updated == Statement.SUCCESS_NO_INFO ? 1 : updated;
+            }
+        } finally {
+            JdbcSupport.executed(connection, statement, System.nanoTime() - start);
+            // a failed batch may still have written some rows
+            JdbcSupport.written(connection, statement);
+        }
+        if (generatedIdField != null) {
+            assignGeneratedKeys(ps, chunk);
+        }
+        if (commit) {
+            connection.commit(null);
+        }
+        chunk.clear();
+        return count;
+    }
+
+    private void assignGeneratedKeys(@Nonnull PreparedStatement ps, @Nonnull List<T> chunk) throws SQLException {
+        int index = 0;
+        try (ResultSet keys = ps.getGeneratedKeys()) {
+            while (keys.next() && index < chunk.size()) {
+                generatedIdField.assignIdValue(connectionSource, chunk.get(index++), keys.getLong(1), null);
+            }
+        }
+        if (index < chunk.size()) {
+            LOG.warn("Driver returned {} generated keys for a batch of {} rows on database '{}'", index, chunk.size(), databaseName);
+        }
+    }
+
+    private void rollbackQuietly(@Nonnull DatabaseConnection connection, @Nonnull Exception cause) {
+        try {
+            connection.rollback(null);
+        } catch (SQLException e) {
+            LOG.warn("Could not rollback batch on database '{}'", databaseName, e);
+            cause.addSuppressed(e);
+        }
+    }
+}
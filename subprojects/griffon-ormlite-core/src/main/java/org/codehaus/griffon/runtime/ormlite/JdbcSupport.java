@@ -0,0 +1,136 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.jdbc.JdbcDatabaseConnection;
+import com.j256.ormlite.jdbc.TypeValMapper;
+import com.j256.ormlite.support.CompiledStatement;
+import com.j256.ormlite.support.DatabaseConnection;
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Helpers shared by the decorators that talk to JDBC directly.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class JdbcSupport {
+    private JdbcSupport() {
+        // prevent instantiation
+    }
+
+    /**
+     * Walks the decorator chain down to ORMLite's {@code JdbcDatabaseConnection}.
+     *
+     * @return the JDBC connection, or {@code null} if the connection is not backed by JDBC.
+     */
+    @Nullable
+    static Connection unwrap(@Nonnull DatabaseConnection connection) {
+        DatabaseConnection c = connection;
+        while (c instanceof DatabaseConnectionDecorator) {
+            c = ((DatabaseConnectionDecorator) c).getDelegate();
+        }
+        return c instanceof JdbcDatabaseConnection ? ((JdbcDatabaseConnection) c).getInternalConnection() : null;
+    }
+
+    /**
+     * Reports a write issued on the JDBC connection of {@code connection} to the decorators that would have seen it,
+     * had it gone through them: the result cache drops what it holds for the tables the statement names.
+     */
+    static void written(@Nonnull DatabaseConnection connection, @Nonnull String statement) {
+        DatabaseConnection c = connection;
+        while (c instanceof DatabaseConnectionDecorator) {
+            if (c instanceof ResultCachingDatabaseConnection) {
+                ((ResultCachingDatabaseConnection) c).written(statement);
+            }
+            c = ((DatabaseConnectionDecorator) c).getDelegate();
+        }
+    }
+
+    /**
+     * Hands a statement compiled on the JDBC connection of {@code connection} to the statement statistics and slow
+     * query log of the decorator chain, if any.
+     *
+     * @return the compiled statement, timed when it runs if the chain records statements.
+     */
+    @Nonnull
+    static CompiledStatement instrument(@Nonnull DatabaseConnection connection, @Nonnull CompiledStatement compiledStatement, @Nonnull String statement, int argCount) {
+        DatabaseConnection c = connection;
+        while (c instanceof DatabaseConnectionDecorator) {
+            if (c instanceof InstrumentedDatabaseConnection) {
+                return ((InstrumentedDatabaseConnection) c).instrument(compiledStatement, statement, argCount);
+            }
+            c = ((DatabaseConnectionDecorator) c).getDelegate();
+        }
+        return compiledStatement;
+    }
+
+    /**
+     * Reports the duration of a statement executed on the JDBC connection of {@code connection} to the statement
+     * statistics and slow query log of the decorator chain, if any.
+     */
+    static void executed(@Nonnull DatabaseConnection connection, @Nonnull String statement, long nanos) {
+        DatabaseConnection c = connection;
+        while (c instanceof DatabaseConnectionDecorator) {
+            if (c instanceof InstrumentedDatabaseConnection) {
+                ((InstrumentedDatabaseConnection) c).executed(statement, nanos);
+                return;
+            }
+            c = ((DatabaseConnectionDecorator) c).getDelegate();
+        }
+    }
+
+    /**
+     * Returns the driver's connection behind a pool proxy. Statements prepared on it are not closed by the pool
+     * when the proxy is returned, which lets them outlive a single checkout.
+     */
+    @Nonnull
+    static Connection physical(@Nonnull Connection connection) {
+        try {
+            if (connection.isWrapperFor(Connection.class)) {
+                return connection.unwrap(Connection.class);
+            }
+        } catch (SQLException ignored) {
+            // not a wrapper
+        }
+        return connection;
+    }
+
+    /**
+     * Binds arguments the same way {@code JdbcDatabaseConnection} does.
+     */
+    static void setArguments(@Nonnull PreparedStatement ps, @Nullable Object[] args, @Nullable FieldType[] argFieldTypes) throws SQLException {
+        if (args == null) {
+            return;
+        }
+        for (int i = 0; i < args.length; i++) {
+            int typeVal = TypeValMapper.getTypeValForSqlType(argFieldTypes[i].getSqlType());
+            if (args[i] == null) {
+                ps.setNull(i + 1, typeVal);
+            } else {
+                ps.setObject(i + 1, args[i], typeVal);
+            }
+        }
+    }
+}
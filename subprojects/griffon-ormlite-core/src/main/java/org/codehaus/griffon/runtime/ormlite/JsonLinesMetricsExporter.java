@@ -0,0 +1,218 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import griffon.annotations.core.Nonnull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Appends a snapshot of a {@code DefaultMetricsRegistry} to a local file at a fixed interval, one JSON document per
+ * line. When the file would grow past its maximum size it is renamed with a {@code .1} suffix, shifting older files
+ * up to {@code maxFiles - 1}; the oldest one is deleted.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class JsonLinesMetricsExporter {
+    private static final Logger LOG = LoggerFactory.getLogger(JsonLinesMetricsExporter.class);
+
+    private final DefaultMetricsRegistry registry;
+    private final Path file;
+    private final long interval;
+    private final long maxFileSize;
+    private final int maxFiles;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param interval    milliseconds between snapshots.
+     * @param maxFileSize bytes a file may hold before it is rolled over.
+     * @param maxFiles    number of files kept, including the current one.
+     */
+    public JsonLinesMetricsExporter(@Nonnull DefaultMetricsRegistry registry, @Nonnull Path file, long interval, long maxFileSize, int maxFiles) {
+        this.registry = requireNonNull(registry, "Argument 'registry' must not be null");
+        this.file = requireNonNull(file, "Argument 'file' must not be null").toAbsolutePath();
+        if (interval < 1) {
+            throw new IllegalArgumentException("Argument 'interval' must be greater than 0");
+        }
+        if (maxFileSize < 1) {
+            throw new IllegalArgumentException("Argument 'maxFileSize' must be greater than 0");
+        }
+        if (maxFiles < 1) {
+            throw new IllegalArgumentException("Argument 'maxFiles' must be greater than 0");
+        }
+        this.interval = interval;
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = maxFiles;
+    }
+
+    @Nonnull
+    public Path getFile() {
+        return file;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@Nonnull Runnable r) {
+                Thread thread = new Thread(r, "ormlite-metrics-exporter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                export();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the schedule and writes one last snapshot.
+     */
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        scheduler = null;
+        export();
+    }
+
+    /**
+     * Writes a snapshot immediately. Failures are logged, never thrown, so that a full disk does not affect the
+     * application.
+     */
+    public synchronized void export() {
+        try {
+            byte[] line = toJson(System.currentTimeMillis()).append('\n').toString().getBytes(StandardCharsets.UTF_8);
+            Files.createDirectories(file.getParent());
+            if (Files.exists(file) && Files.size(file) + line.length > maxFileSize) {
+                rollOver();
+            }
+            Files.write(file, line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Could not export metrics to {}", file, e);
+        }
+    }
+
+    private void rollOver() throws IOException {
+        if (maxFiles == 1) {
+            Files.delete(file);
+            return;
+        }
+        Files.deleteIfExists(rolled(maxFiles - 1));
+        for (int i = maxFiles - 2; i >= 1; i--) {
+            Path source = rolled(i);
+            if (Files.exists(source)) {
+                Files.move(source, rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Nonnull
+    private Path rolled(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    @Nonnull
+    private StringBuilder toJson(long timestamp) {
+        StringBuilder b = new StringBuilder(256);
+        b.append("{\"timestamp\":").append(timestamp).append(",\"metrics\":[");
+        boolean first = true;
+        for (DefaultMetricsRegistry.MetricValue metric : registry.snapshot()) {
+            if (!first) {
+                b.append(',');
+            }
+            first = false;
+            b.append("{\"name\":");
+            quote(b, metric.getName());
+            b.append(",\"database\":");
+            quote(b, metric.getDatabaseName());
+            b.append(",\"type\":");
+            quote(b, metric.getType());
+            for (Map.Entry<String, Number> e : metric.getValues().entrySet()) {
+                b.append(',');
+                quote(b, e.getKey());
+                b.append(':');
+                number(b, e.getValue());
+            }
+            b.append('}');
+        }
+        return b.append("]}");
+    }
+
+    private static void number(@Nonnull StringBuilder b, @Nonnull Number value) {
+        double d = value.doubleValue();
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            b.append("null");
+        } else {
+            b.append(value);
+        }
+    }
+
+    private static void quote(@Nonnull StringBuilder b, @Nonnull String s) {
+        b.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    b.append("\\\"");
+                    break;
+                case '\\':
+                    b.append("\\\\");
+                    break;
+                case '\n':
+                    b.append("\\n");
+                    break;
+                case '\r':
+                    b.append("\\r");
+                    break;
+                case '\t':
+                    b.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        b.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        b.append(c);
+                    }
+            }
+        }
+        b.append('"');
+    }
+}
@@ -20,18 +20,49 @@ package org.codehaus.griffon.runtime.ormlite;
 import com.j256.ormlite.support.ConnectionSource;
 import com.j256.ormlite.support.DatabaseConnection;
 import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * @author Andres Almiray
  */
 public class LinkedDatabaseConnection extends DatabaseConnectionDecorator {
+    private static final AtomicIntegerFieldUpdater<LinkedDatabaseConnection> REFERENCES =
+        AtomicIntegerFieldUpdater.newUpdater(LinkedDatabaseConnection.class, "references");
+
     private RecordingConnectionSource connectionSource;
+    private final long acquiredAt;
+    private final long acquiredTimestamp;
+    private final String acquiringThread;
+    private final Throwable acquisitionTrace;
+    private volatile int references = 1;
+    private volatile boolean suspect;
 
     public LinkedDatabaseConnection(@Nonnull DatabaseConnection delegate, @Nonnull RecordingConnectionSource connectionSource) {
         super(delegate);
         this.connectionSource = connectionSource;
+        // only leak reports need to know about the acquisition
+        this.acquiredAt = 0L;
+        this.acquiredTimestamp = 0L;
+        this.acquiringThread = null;
+        this.acquisitionTrace = null;
+    }
+
+    /**
+     * Records when and by which thread the connection was acquired, for leak reports.
+     *
+     * @param captureStackTrace whether the stack of the acquiring thread should be kept as well.
+     * @since 3.0.0
+     */
+    public LinkedDatabaseConnection(@Nonnull DatabaseConnection delegate, @Nonnull RecordingConnectionSource connectionSource, boolean captureStackTrace) {
+        super(delegate);
+        this.connectionSource = connectionSource;
+        this.acquiredAt = System.nanoTime();
+        this.acquiredTimestamp = System.currentTimeMillis();
+        this.acquiringThread = Thread.currentThread().getName();
+        this.acquisitionTrace = captureStackTrace ? new Throwable("Connection acquired by " + acquiringThread) : null;
     }
 
     @Nonnull
@@ -39,13 +70,68 @@ public class LinkedDatabaseConnection extends DatabaseConnectionDecorator {
         return connectionSource;
     }
 
+    /**
+     * @return value of {@link System#nanoTime()} when the connection was acquired, {@code 0} if it was not recorded.
+     * @since 3.0.0
+     */
+    public long getAcquiredAt() {
+        return acquiredAt;
+    }
+
+    /**
+     * @return wall clock time in milliseconds when the connection was acquired, {@code 0} if it was not recorded.
+     * @since 3.0.0
+     */
+    public long getAcquiredTimestamp() {
+        return acquiredTimestamp;
+    }
+
+    /**
+     * @return name of the acquiring thread, {@code null} if it was not recorded.
+     * @since 3.0.0
+     */
+    @Nullable
+    public String getAcquiringThread() {
+        return acquiringThread;
+    }
+
+    /**
+     * @return stack of the acquiring thread, {@code null} if it was not sampled.
+     * @since 3.0.0
+     */
+    @Nullable
+    public Throwable getAcquisitionTrace() {
+        return acquisitionTrace;
+    }
+
+    /**
+     * Hands out this connection once more, as happens with the special connection of a transaction.
+     */
+    void acquire() {
+        REFERENCES.incrementAndGet(this);
+    }
+
+    boolean markSuspect() {
+        if (suspect) {
+            return false;
+        }
+        suspect = true;
+        return true;
+    }
+
     @Override
     public void close() throws IOException {
         super.close();
-        connectionSource.decreaseConnectionCount();
+        unlink();
     }
 
     public void unlink() {
-        connectionSource.decreaseConnectionCount();
+        // a reclaimed connection may still be released by its owner later on
+        for (int current = references; current > 0; current = references) {
+            if (REFERENCES.compareAndSet(this, current, current - 1)) {
+                connectionSource.connectionReleased(this, current == 1);
+                return;
+            }
+        }
     }
 }
@@ -0,0 +1,327 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache keyed by primitive {@code long}s. Entries live in open-addressing tables (linear probing, at most
+ * half full) split into independently locked segments, so lookups neither box keys nor allocate entry objects.
+ * When a segment is full an entry is evicted with the CLOCK algorithm, an approximation of LRU that only flips a
+ * bit on access. Each segment holds an equal share of the maximum size, so a segment may evict while others still
+ * have room. Values may optionally be held through soft references and expire after a fixed time; every access
+ * then also looks at the next two slots of a sweep cursor and drops what expired or was reclaimed, so stale entries
+ * are released without waiting for an explicit {@link #purge()}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class LongObjectCache<V> {
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MIN_ENTRIES_PER_SEGMENT = 64;
+
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final int maxSize;
+    private final long ttlNanos;
+    private final boolean softValues;
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize    maximum number of entries.
+     * @param ttlNanos   time after which an entry expires, {@code 0} keeps entries until evicted.
+     * @param softValues whether values may be reclaimed by the garbage collector.
+     */
+    LongObjectCache(int maxSize, long ttlNanos, boolean softValues) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Argument 'maxSize' must be greater than 0");
+        }
+        if (ttlNanos < 0) {
+            throw new IllegalArgumentException("Argument 'ttlNanos' must not be negative");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlNanos;
+        this.softValues = softValues;
+
+        int count = Integer.highestOneBit(Math.max(1, Math.min(MAX_SEGMENTS, maxSize / MIN_ENTRIES_PER_SEGMENT)));
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            // spread the remainder so that the segments add up to maxSize exactly
+            segments[i] = new Segment(maxSize / count + (i < maxSize % count ? 1 : 0), softValues, ttlNanos > 0 || softValues, evictions);
+        }
+        segmentShift = 64 - Integer.numberOfTrailingZeros(count);
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        long now = System.nanoTime();
+        synchronized (segment) {
+            segment.sweep(now);
+            return (V) segment.get(key, (int) hash, now);
+        }
+    }
+
+    void put(long key, @Nonnull V value) {
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        Object stored = softValues ? new SoftReference<>(value) : value;
+        long now = System.nanoTime();
+        synchronized (segment) {
+            segment.sweep(now);
+            segment.put(key, (int) hash, stored, ttlNanos > 0 ? now + ttlNanos : 0L);
+        }
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            return (V) segment.remove(key, (int) hash);
+        }
+    }
+
+    void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Drops entries whose value was reclaimed or that expired.
+     */
+    void purge() {
+        long now = System.nanoTime();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.purge(now);
+            }
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    @Nonnull
+    private Segment segmentFor(long hash) {
+        return segments.length == 1 ? segments[0] : segments[(int) (hash >>> segmentShift)];
+    }
+
+    private static long hash(long key) {
+        // murmur3 finalizer, spreads sequential ids over the table
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private static final class Segment {
+        private static final int SWEEP_SLOTS = 2;
+
+        private final int maxEntries;
+        private final boolean softValues;
+        private final boolean expiring;
+        private final LongAdder evictions;
+        private final int mask;
+        private final long[] keys;
+        private final Object[] values;
+        private final long[] deadlines;
+        private final boolean[] referenced;
+        private int size;
+        private int hand;
+        private int sweepHand;
+
+        private Segment(int maxEntries, boolean softValues, boolean expiring, @Nonnull LongAdder evictions) {
+            this.maxEntries = maxEntries;
+            this.softValues = softValues;
+            this.expiring = expiring;
+            this.evictions = evictions;
+            int capacity = Integer.highestOneBit(Math.max(2, maxEntries * 2 - 1)) << 1;
+            mask = capacity - 1;
+            keys = new long[capacity];
+            values = new Object[capacity];
+            deadlines = new long[capacity];
+            referenced = new boolean[capacity];
+        }
+
+        private Object get(long key, int hash, long now) {
+            int i = indexOf(key, hash);
+            if (i < 0) {
+                return null;
+            }
+            Object value = valueAt(i, now);
+            if (value == null) {
+                delete(i);
+                return null;
+            }
+            referenced[i] = true;
+            return value;
+        }
+
+        private void put(long key, int hash, Object value, long deadline) {
+            int i = indexOf(key, hash);
+            if (i < 0) {
+                if (size >= maxEntries) {
+                    evict();
+                }
+                i = hash & mask;
+                while (values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                size++;
+            }
+            values[i] = value;
+            deadlines[i] = deadline;
+            referenced[i] = true;
+        }
+
+        private Object remove(long key, int hash) {
+            int i = indexOf(key, hash);
+            if (i < 0) {
+                return null;
+            }
+            Object value = valueAt(i, System.nanoTime());
+            delete(i);
+            return value;
+        }
+
+        private void clear() {
+            Arrays.fill(values, null);
+            Arrays.fill(referenced, false);
+            size = 0;
+            hand = 0;
+        }
+
+        private void purge(long now) {
+            for (int i = 0; i <= mask; i++) {
+                // deleting shifts a later entry into this slot, look at it again
+                while (values[i] != null && valueAt(i, now) == null) {
+                    delete(i);
+                }
+            }
+        }
+
+        private void sweep(long now) {
+            if (!expiring || size == 0) {
+                return;
+            }
+            for (int n = 0; n < SWEEP_SLOTS; n++) {
+                int i = sweepHand;
+                sweepHand = (sweepHand + 1) & mask;
+                while (values[i] != null && valueAt(i, now) == null) {
+                    delete(i);
+                }
+            }
+        }
+
+        private void evict() {
+            long now = System.nanoTime();
+            // every slot is visited at most twice: once to clear its bit, once to evict it
+            for (int n = 0; n <= 2 * mask + 1; n++) {
+                int i = hand;
+                hand = (hand + 1) & mask;
+                if (values[i] == null) {
+                    continue;
+                }
+                if (referenced[i] && valueAt(i, now) != null) {
+                    referenced[i] = false;
+                    continue;
+                }
+                delete(i);
+                evictions.increment();
+                return;
+            }
+        }
+
+        private int indexOf(long key, int hash) {
+            int i = hash & mask;
+            while (values[i] != null) {
+                if (keys[i] == key) {
+                    return i;
+                }
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * @return the live value in slot {@code i}, {@code null} if it expired or was reclaimed.
+         */
+        private Object valueAt(int i, long now) {
+            if (deadlines[i] != 0L && now - deadlines[i] > 0) {
+                return null;
+            }
+            Object value = values[i];
+            return softValues ? ((SoftReference<?>) value).get() : value;
+        }
+
+        /**
+         * Empties slot {@code i}, moving back later entries of the same probe run so that lookups never stop early.
+         */
+        private void delete(int i) {
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (values[j] == null) {
+                    break;
+                }
+                int home = (int) hash(keys[j]) & mask;
+                boolean inRange = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+                if (!inRange) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    deadlines[i] = deadlines[j];
+                    referenced[i] = referenced[j];
+                    i = j;
+                }
+            }
+            values[i] = null;
+            referenced[i] = false;
+            size--;
+        }
+    }
+}
@@ -20,6 +20,7 @@ package org.codehaus.griffon.runtime.ormlite;
 import com.j256.ormlite.support.ConnectionSource;
 import griffon.annotations.core.Nonnull;
 import griffon.annotations.inject.DependsOn;
+import griffon.core.Configuration;
 import griffon.core.GriffonApplication;
 import griffon.core.env.Metadata;
 import griffon.core.events.StartupStartEvent;
@@ -28,14 +29,29 @@ import griffon.plugins.ormlite.ConnectionSourceCallback;
 import griffon.plugins.ormlite.ConnectionSourceFactory;
 import griffon.plugins.ormlite.ConnectionSourceHandler;
 import griffon.plugins.ormlite.ConnectionSourceStorage;
+import griffon.plugins.ormlite.MetricsRegistry;
 import org.codehaus.griffon.runtime.core.addon.AbstractGriffonAddon;
 import org.codehaus.griffon.runtime.ormlite.monitor.ConnectionSourceStorageMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.application.event.EventHandler;
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.nio.file.Paths;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
 
@@ -45,6 +61,16 @@ import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
 @DependsOn("datasource")
 @Named("ormlite")
 public class OrmliteAddon extends AbstractGriffonAddon {
+    private static final Logger LOG = LoggerFactory.getLogger(OrmliteAddon.class);
+    private static final long DEFAULT_STARTUP_TIMEOUT = 30000L;
+    private static final long DEFAULT_METRICS_EXPORT_INTERVAL = 60000L;
+    private static final long DEFAULT_METRICS_EXPORT_MAX_FILE_SIZE = 10L * 1024 * 1024;
+    private static final int DEFAULT_METRICS_EXPORT_MAX_FILES = 5;
+
+    @Inject
+    @Named("ormlite")
+    private Configuration configuration;
+
     @Inject
     private ConnectionSourceHandler connectionSourceHandler;
 
@@ -60,28 +86,121 @@ public class OrmliteAddon extends AbstractGriffonAddon {
     @Inject
     private Metadata metadata;
 
+    @Inject
+    private MetricsRegistry metricsRegistry;
+
+    private JsonLinesMetricsExporter metricsExporter;
+
     @Override
     public void init(@Nonnull GriffonApplication application) {
         mbeanManager.registerMBean(new ConnectionSourceStorageMonitor(metadata, connectionSourceStorage));
+        startMetricsExporter();
+    }
+
+    private void startMetricsExporter() {
+        if (!configuration.containsKey("metrics_export_file")) {
+            return;
+        }
+        if (!(metricsRegistry instanceof DefaultMetricsRegistry)) {
+            LOG.warn("Metrics are not exported to a file, a custom MetricsRegistry is bound");
+            return;
+        }
+
+        metricsExporter = new JsonLinesMetricsExporter((DefaultMetricsRegistry) metricsRegistry,
+            Paths.get(configuration.getAsString("metrics_export_file", null)),
+            configuration.getAsLong("metrics_export_interval", DEFAULT_METRICS_EXPORT_INTERVAL),
+            configuration.getAsLong("metrics_export_max_file_size", DEFAULT_METRICS_EXPORT_MAX_FILE_SIZE),
+            configuration.getAsInt("metrics_export_max_files", DEFAULT_METRICS_EXPORT_MAX_FILES));
+        metricsExporter.start();
     }
 
     @EventHandler
     public void handleStartupStartEvent(@Nonnull StartupStartEvent event) {
+        List<String> databaseNames = new ArrayList<>();
         for (String databaseName : connectionSourceFactory.getConnectionSourceNames()) {
             Map<String, Object> config = connectionSourceFactory.getConfigurationFor(databaseName);
             if (getConfigValueAsBoolean(config, "connect_on_startup", false)) {
-                connectionSourceHandler.withConnectionSource(new ConnectionSourceCallback<Object>() {
+                databaseNames.add(databaseName);
+            }
+        }
+
+        if (databaseNames.size() == 1) {
+            warmUp(databaseNames.get(0));
+        } else if (!databaseNames.isEmpty()) {
+            warmUp(databaseNames);
+        }
+    }
+
+    /**
+     * Connects all databases in parallel, so that startup is bound by the slowest one rather than by their sum.
+     * Databases that are still connecting when the deadline expires finish in the background.
+     */
+    private void warmUp(@Nonnull List<String> databaseNames) {
+        final AtomicInteger counter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(databaseNames.size(), new ThreadFactory() {
+            @Override
+            public Thread newThread(@Nonnull Runnable r) {
+                Thread thread = new Thread(r, "ormlite-startup-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        Map<String, Future<?>> futures = new LinkedHashMap<>();
+        try {
+            for (final String databaseName : databaseNames) {
+                futures.put(databaseName, executor.submit(new Runnable() {
                     @Override
-                    public Object handle(@Nonnull String databaseName, @Nonnull ConnectionSource connectionSource) throws SQLException {
-                        return null;
+                    public void run() {
+                        warmUp(databaseName);
+                    }
+                }));
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(getStartupTimeout());
+            for (Map.Entry<String, Future<?>> e : futures.entrySet()) {
+                try {
+                    e.getValue().get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException te) {
+                    LOG.warn("Database '{}' did not connect within {} ms, continuing startup", e.getKey(), getStartupTimeout());
+                } catch (ExecutionException ee) {
+                    if (ee.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) ee.getCause();
                     }
-                });
+                    throw new IllegalStateException("Could not connect to database '" + e.getKey() + "'", ee.getCause());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
             }
+        } finally {
+            executor.shutdown();
         }
     }
 
+    private void warmUp(@Nonnull String databaseName) {
+        connectionSourceHandler.withConnectionSource(databaseName, new ConnectionSourceCallback<Object>() {
+            @Override
+            public Object handle(@Nonnull String databaseName, @Nonnull ConnectionSource connectionSource) throws SQLException {
+                // checking out a connection forces the pool to start filling
+                connectionSource.releaseConnection(connectionSource.getReadWriteConnection(null));
+                return null;
+            }
+        });
+    }
+
+    private long getStartupTimeout() {
+        return configuration.getAsLong("startup_timeout", DEFAULT_STARTUP_TIMEOUT);
+    }
+
     @Override
     public void onShutdown(@Nonnull GriffonApplication application) {
+        // the last snapshot is taken while databases are still connected
+        if (metricsExporter != null) {
+            metricsExporter.stop();
+            metricsExporter = null;
+        }
+
         for (String databaseName : connectionSourceFactory.getConnectionSourceNames()) {
             connectionSourceHandler.closeConnectionSource(databaseName);
         }
@@ -24,6 +24,10 @@ import griffon.core.injection.Module;
 import griffon.plugins.ormlite.ConnectionSourceFactory;
 import griffon.plugins.ormlite.ConnectionSourceHandler;
 import griffon.plugins.ormlite.ConnectionSourceStorage;
+import griffon.plugins.ormlite.DaoRegistry;
+import griffon.plugins.ormlite.DataTransfer;
+import griffon.plugins.ormlite.MetricsRegistry;
+import griffon.plugins.ormlite.ShardRouter;
 import org.codehaus.griffon.runtime.core.injection.AbstractModule;
 import org.codehaus.griffon.runtime.util.ResourceBundleProvider;
 import org.kordamp.jipsy.annotations.ServiceProviderFor;
@@ -61,10 +65,26 @@ public class OrmliteModule extends AbstractModule {
             .to(DefaultConnectionSourceFactory.class)
             .asSingleton();
 
+        bind(DaoRegistry.class)
+            .to(DefaultDaoRegistry.class)
+            .asSingleton();
+
+        bind(MetricsRegistry.class)
+            .to(DefaultMetricsRegistry.class)
+            .asSingleton();
+
+        bind(ShardRouter.class)
+            .to(DefaultShardRouter.class)
+            .asSingleton();
+
         bind(ConnectionSourceHandler.class)
             .to(DefaultConnectionSourceHandler.class)
             .asSingleton();
 
+        bind(DataTransfer.class)
+            .to(DefaultDataTransfer.class)
+            .asSingleton();
+
         bind(GriffonAddon.class)
             .to(OrmliteAddon.class)
             .asSingleton();
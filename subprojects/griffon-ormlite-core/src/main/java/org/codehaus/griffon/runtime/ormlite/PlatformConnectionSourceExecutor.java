@@ -0,0 +1,113 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import griffon.annotations.core.Nonnull;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs callbacks on a fixed number of platform threads fed by a bounded queue.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class PlatformConnectionSourceExecutor extends ConnectionSourceExecutor {
+    private final ThreadPoolExecutor executor;
+
+    public PlatformConnectionSourceExecutor(@Nonnull String databaseName, int poolSize, int queueSize) {
+        super(databaseName, poolSize, queueSize);
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(queueSize), new DefaultThreadFactory(databaseName));
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    protected void doExecute(@Nonnull final Runnable command, final long submittedAt) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                taskStarted(submittedAt);
+                command.run();
+            }
+        });
+    }
+
+    @Override
+    public void shutdown(long timeout, @Nonnull TimeUnit unit) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeout, unit)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    @Override
+    public int getPoolSize() {
+        return executor.getMaximumPoolSize();
+    }
+
+    @Override
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return executor.getQueue().size() + executor.getQueue().remainingCapacity();
+    }
+
+    @Override
+    public long getCompletedTaskCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    private static class DefaultThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+        private final String prefix;
+
+        private DefaultThreadFactory(@Nonnull String databaseName) {
+            this.prefix = "ormlite-" + databaseName + "-";
+        }
+
+        @Override
+        public Thread newThread(@Nonnull Runnable r) {
+            Thread thread = new Thread(r, prefix + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
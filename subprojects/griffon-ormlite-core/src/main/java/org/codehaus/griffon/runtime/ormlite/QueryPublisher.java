@@ -0,0 +1,266 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import com.j256.ormlite.stmt.PreparedQuery;
+import com.j256.ormlite.support.ConnectionSource;
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Publishes the rows of a prepared query. Every subscriber gets its own cursor, opened by {@link QueryStream} on the
+ * database executor once demand arrives; rows are read only as far as requested and the connection is released on
+ * completion, error or cancellation. Opening the cursor and fetching the first row count as one call of the circuit
+ * breaker, if any; a rejected subscription gets an error without a connection being taken. A subscriber that throws
+ * from {@code onNext} is treated as having cancelled (rule 2.13 of the specification): the cursor is closed and no
+ * further signal is sent.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class QueryPublisher<T> implements Publisher<T> {
+    private static final Logger LOG = LoggerFactory.getLogger(QueryPublisher.class);
+
+    private final String databaseName;
+    private final ConnectionSource connectionSource;
+    private final String tableName;
+    private final PreparedQuery<T> preparedQuery;
+    private final int fetchSize;
+    private final Executor executor;
+    private final CircuitBreaker circuitBreaker;
+
+    QueryPublisher(@Nonnull String databaseName, @Nonnull ConnectionSource connectionSource, @Nullable String tableName, @Nonnull PreparedQuery<T> preparedQuery, int fetchSize, @Nonnull Executor executor, @Nullable CircuitBreaker circuitBreaker) {
+        this.databaseName = requireNonBlank(databaseName, "Argument 'databaseName' must not be blank");
+        this.connectionSource = requireNonNull(connectionSource, "Argument 'connectionSource' must not be null");
+        this.tableName = tableName;
+        this.preparedQuery = requireNonNull(preparedQuery, "Argument 'preparedQuery' must not be null");
+        this.fetchSize = fetchSize;
+        this.executor = requireNonNull(executor, "Argument 'executor' must not be null");
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        requireNonNull(subscriber, "Argument 'subscriber' must not be null");
+        subscriber.onSubscribe(new QuerySubscription(subscriber));
+    }
+
+    /**
+     * Signals are emitted by a single drain task at a time; {@code wip} counts the requests and cancellations that
+     * arrived while it was running, so that it loops again instead of another task being scheduled. Successive drain
+     * tasks may run on different executor threads, the cursor is never used by two of them at once.
+     */
+    private final class QuerySubscription implements Subscription, Runnable {
+        private final Subscriber<? super T> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+        private boolean done;
+        private Stream<T> stream;
+        private Iterator<T> rows;
+
+        private QuerySubscription(@Nonnull Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Subscriber requested " + n + " rows, the demand must be positive");
+            } else {
+                long current;
+                long next;
+                do {
+                    current = demand.get();
+                    if (current == Long.MAX_VALUE) {
+                        break;
+                    }
+                    next = current + n;
+                    if (next < 0) {
+                        next = Long.MAX_VALUE;
+                    }
+                } while (!demand.compareAndSet(current, next));
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            try {
+                executor.execute(this);
+            } catch (RuntimeException e) {
+                // nothing else runs while wip is held, fail the subscription from the calling thread
+                if (!done) {
+                    close();
+                    if (!cancelled) {
+                        signalError(e);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            while (true) {
+                drain();
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private void drain() {
+            if (done) {
+                return;
+            }
+            if (cancelled) {
+                close();
+                return;
+            }
+            Throwable error = invalidRequest;
+            if (error != null) {
+                close();
+                signalError(error);
+                return;
+            }
+
+            long requested = demand.get();
+            if (requested == 0) {
+                return;
+            }
+            long emitted = 0;
+            while (emitted != requested) {
+                if (cancelled) {
+                    close();
+                    return;
+                }
+
+                T row;
+                try {
+                    row = rows == null ? open() : rows.hasNext() ? rows.next() : null;
+                } catch (Throwable t) {
+                    close();
+                    if (!cancelled) {
+                        signalError(t);
+                    }
+                    return;
+                }
+                if (row == null) {
+                    close();
+                    signalComplete();
+                    return;
+                }
+
+                try {
+                    subscriber.onNext(row);
+                } catch (Throwable t) {
+                    // the subscriber broke rule 2.13, consider the subscription cancelled
+                    cancelled = true;
+                    close();
+                    LOG.warn("Subscriber to a query on database '{}' failed in onNext, the subscription was cancelled", databaseName, t);
+                    return;
+                }
+                emitted++;
+                if (emitted == requested) {
+                    requested = requested == Long.MAX_VALUE ? requested : demand.addAndGet(-emitted);
+                    emitted = requested == Long.MAX_VALUE ? emitted : 0;
+                }
+            }
+        }
+
+        /**
+         * Opens the cursor and fetches the first row.
+         */
+        @Nullable
+        private T open() throws SQLException {
+            if (circuitBreaker != null) {
+                circuitBreaker.acquirePermission();
+            }
+            long start = System.nanoTime();
+            try {
+                stream = QueryStream.open(databaseName, connectionSource, tableName, preparedQuery, fetchSize);
+                rows = stream.iterator();
+                T row = rows.hasNext() ? rows.next() : null;
+                if (circuitBreaker != null) {
+                    circuitBreaker.onSuccess(System.nanoTime() - start);
+                }
+                return row;
+            } catch (SQLException | RuntimeException e) {
+                if (circuitBreaker != null) {
+                    circuitBreaker.onError(System.nanoTime() - start, e);
+                }
+                throw e;
+            }
+        }
+
+        private void signalComplete() {
+            try {
+                subscriber.onComplete();
+            } catch (Throwable t) {
+                LOG.warn("Subscriber to a query on database '{}' failed in onComplete", databaseName, t);
+            }
+        }
+
+        private void signalError(@Nonnull Throwable error) {
+            try {
+                subscriber.onError(error);
+            } catch (Throwable t) {
+                LOG.warn("Subscriber to a query on database '{}' failed in onError", databaseName, t);
+            }
+        }
+
+        private void close() {
+            done = true;
+            rows = null;
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (RuntimeException e) {
+                    LOG.warn("Could not close query on database '{}'", databaseName, e);
+                }
+                stream = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,409 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import java.time.temporal.TemporalAccessor;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+
+/**
+ * Results of read queries keyed by SQL and arguments, bounded by an estimate of the memory they use. Entries are
+ * evicted least recently used first. Every write names the tables it touches and drops the entries that read any
+ * of them; statements whose tables cannot be determined drop every entry.
+ * <p>
+ * Each table carries a version that is bumped by writes. A result is only stored if the versions of the tables it
+ * read did not change while it was being loaded, so a concurrent write never leaves a stale entry behind.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class QueryResultCache {
+    static final int KIND_ONE = 0;
+    static final int KIND_LONG = 1;
+    static final int KIND_QUERY = 2;
+
+    private static final String[] UNCACHEABLE = new String[0];
+    private static final int MAX_PARSED_STATEMENTS = 1024;
+
+    private final String databaseName;
+    private final long maxMemory;
+    private final int maxRows;
+    private final long ttl;
+    private final Object lock = new Object();
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Set<Key>> keysByTable = new HashMap<>();
+    private final Map<String, AtomicLong> tableVersions = new ConcurrentHashMap<>();
+    private final AtomicLong epoch = new AtomicLong();
+    private final Map<String, String[]> readTables = new ConcurrentHashMap<>();
+    private final Map<String, String[]> writtenTables = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private long memoryUsed;
+
+    /**
+     * @param maxMemory estimated bytes all cached results may use.
+     * @param maxRows   results with more rows are not cached.
+     * @param ttl       milliseconds a result stays cached, {@code 0} keeps it until it is invalidated or evicted.
+     */
+    public QueryResultCache(@Nonnull String databaseName, long maxMemory, int maxRows, long ttl) {
+        this.databaseName = requireNonBlank(databaseName, "Argument 'databaseName' must not be blank");
+        if (maxMemory <= 0) {
+            throw new IllegalArgumentException("Argument 'maxMemory' must be greater than zero");
+        }
+        this.maxMemory = maxMemory;
+        this.maxRows = maxRows;
+        this.ttl = ttl;
+    }
+
+    @Nonnull
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public long getMemoryUsed() {
+        synchronized (lock) {
+            return memoryUsed;
+        }
+    }
+
+    public int getSize() {
+        synchronized (lock) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0d : (double) h / total;
+    }
+
+    /**
+     * @return entries dropped because a table they read was written to.
+     */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * @return entries dropped to stay within the memory budget.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        invalidations.reset();
+        evictions.reset();
+    }
+
+    /**
+     * Drops every entry.
+     */
+    public void clear() {
+        clear(false);
+    }
+
+    /**
+     * Drops the entries that read any of the tables the given statement writes to.
+     */
+    public void invalidate(@Nonnull String sql) {
+        String[] tables = writtenTables.get(sql);
+        if (tables == null) {
+            tables = SqlTables.writtenTables(sql);
+            remember(writtenTables, sql, tables);
+        }
+
+        if (tables.length == 0) {
+            clear(true);
+            return;
+        }
+
+        for (String table : tables) {
+            version(table).incrementAndGet();
+        }
+        synchronized (lock) {
+            for (String table : tables) {
+                Set<Key> keys = keysByTable.remove(table);
+                if (keys == null) {
+                    continue;
+                }
+                for (Key key : keys) {
+                    if (remove(key) != null) {
+                        invalidations.increment();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return a key for the given query, or {@code null} if its result must not be cached.
+     */
+    @Nullable
+    Key key(int kind, @Nonnull String sql, @Nullable Object[] args, int maxRows) {
+        String[] tables = readTables.get(sql);
+        if (tables == null) {
+            tables = SqlTables.readTables(sql);
+            remember(readTables, sql, tables == null ? UNCACHEABLE : tables);
+        }
+        if (tables == null || tables == UNCACHEABLE || tables.length == 0) {
+            return null;
+        }
+        if (args != null) {
+            for (Object arg : args) {
+                if (!isCacheableArgument(arg)) {
+                    return null;
+                }
+            }
+        }
+        return new Key(kind, sql, args == null ? null : args.clone(), maxRows, tables);
+    }
+
+    /**
+     * @return the cached result, {@code null} on a miss.
+     */
+    @Nullable
+    Object get(@Nonnull Key key) {
+        Object value = null;
+        synchronized (lock) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expiresAt != 0 && entry.expiresAt - System.nanoTime() < 0) {
+                    remove(key);
+                } else {
+                    value = entry.value;
+                }
+            }
+        }
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Captures the versions of the tables read by the given query. Must be called before the query runs.
+     */
+    @Nonnull
+    long[] snapshot(@Nonnull Key key) {
+        long[] versions = new long[key.tables.length + 1];
+        versions[0] = epoch.get();
+        for (int i = 0; i < key.tables.length; i++) {
+            AtomicLong version = tableVersions.get(key.tables[i]);
+            versions[i + 1] = version == null ? 0L : version.get();
+        }
+        return versions;
+    }
+
+    void put(@Nonnull Key key, @Nonnull long[] snapshot, @Nonnull Object value, long size) {
+        long entrySize = size + key.estimatedSize();
+        if (entrySize > maxMemory) {
+            return;
+        }
+        long expiresAt = ttl > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttl) : 0L;
+
+        synchronized (lock) {
+            // writes since the snapshot may not be reflected in the value
+            if (epoch.get() != snapshot[0]) {
+                return;
+            }
+            for (int i = 0; i < key.tables.length; i++) {
+                AtomicLong version = tableVersions.get(key.tables[i]);
+                if ((version == null ? 0L : version.get()) != snapshot[i + 1]) {
+                    return;
+                }
+            }
+
+            remove(key);
+            entries.put(key, new Entry(value, entrySize, expiresAt));
+            memoryUsed += entrySize;
+            for (String table : key.tables) {
+                Set<Key> keys = keysByTable.get(table);
+                if (keys == null) {
+                    keys = new HashSet<>();
+                    keysByTable.put(table, keys);
+                }
+                keys.add(key);
+            }
+
+            while (memoryUsed > maxMemory && !entries.isEmpty()) {
+                remove(entries.keySet().iterator().next());
+                evictions.increment();
+            }
+        }
+    }
+
+    private void clear(boolean invalidated) {
+        // results being loaded right now must not be stored either
+        epoch.incrementAndGet();
+        synchronized (lock) {
+            if (invalidated) {
+                invalidations.add(entries.size());
+            }
+            entries.clear();
+            keysByTable.clear();
+            memoryUsed = 0;
+        }
+    }
+
+    // guarded by lock
+    @Nullable
+    private Entry remove(@Nonnull Key key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            memoryUsed -= entry.size;
+            for (String table : key.tables) {
+                Set<Key> keys = keysByTable.get(table);
+                if (keys != null) {
+                    keys.remove(key);
+                    if (keys.isEmpty()) {
+                        keysByTable.remove(table);
+                    }
+                }
+            }
+        }
+        return entry;
+    }
+
+    @Nonnull
+    private AtomicLong version(@Nonnull String table) {
+        AtomicLong version = tableVersions.get(table);
+        if (version == null) {
+            version = new AtomicLong();
+            AtomicLong existing = tableVersions.putIfAbsent(table, version);
+            if (existing != null) {
+                version = existing;
+            }
+        }
+        return version;
+    }
+
+    private static void remember(@Nonnull Map<String, String[]> parsed, @Nonnull String sql, @Nonnull String[] tables) {
+        // statements are usually generated from a handful of templates, start over if they are not
+        if (parsed.size() >= MAX_PARSED_STATEMENTS) {
+            parsed.clear();
+        }
+        parsed.put(sql, tables);
+    }
+
+    private static boolean isCacheableArgument(@Nullable Object arg) {
+        return arg == null || arg instanceof String || arg instanceof Number || arg instanceof Boolean ||
+            arg instanceof Character || arg instanceof Date || arg instanceof byte[] || arg instanceof UUID ||
+            arg instanceof Enum || arg instanceof TemporalAccessor;
+    }
+
+    static final class Key {
+        private final int kind;
+        private final String sql;
+        private final Object[] args;
+        private final int maxRows;
+        private final String[] tables;
+        private final int hash;
+
+        private Key(int kind, @Nonnull String sql, @Nullable Object[] args, int maxRows, @Nonnull String[] tables) {
+            this.kind = kind;
+            this.sql = sql;
+            this.args = args;
+            this.maxRows = maxRows;
+            this.tables = tables;
+            this.hash = 31 * (31 * (31 * kind + sql.hashCode()) + Arrays.deepHashCode(args)) + maxRows;
+        }
+
+        private long estimatedSize() {
+            long size = 96L + 2L * sql.length();
+            if (args != null) {
+                for (Object arg : args) {
+                    size += 8L + CachedDatabaseResults.Rows.estimateSize(arg);
+                }
+            }
+            return size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && kind == other.kind && maxRows == other.maxRows &&
+                sql.equals(other.sql) && Arrays.deepEquals(args, other.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final long size;
+        private final long expiresAt;
+
+        private Entry(@Nonnull Object value, long size, long expiresAt) {
+            this.value = value;
+            this.size = size;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.jdbc.JdbcCompiledStatement;
+import com.j256.ormlite.stmt.PreparedQuery;
+import com.j256.ormlite.stmt.StatementBuilder;
+import com.j256.ormlite.support.CompiledStatement;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.support.DatabaseResults;
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.ormlite.exceptions.RuntimeSQLException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily mapped results of a prepared query. The stream holds one connection, and fetches rows through a
+ * forward-only cursor in batches of the configured fetch size, so memory use does not grow with the number of
+ * rows. The connection is released when the last row has been read or when the stream is closed, whichever
+ * comes first.
+ * <p>
+ * Auto-commit is turned off while the stream is open, as some drivers (PostgreSQL among them) ignore the fetch
+ * size otherwise. Streams opened inside a transaction read through its connection and leave it alone.
+ * <p>
+ * Streams that are garbage collected while still open are reported and their connection is released. The place they
+ * were opened at is only captured when debug logging is on, or when the leak detector samples the connection.
+ * <p>
+ * Statements prepared with a fetch size are handed back to the statement statistics and slow query log of the
+ * connection, as they do not go through its decorators.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class QueryStream {
+    private static final Logger LOG = LoggerFactory.getLogger(QueryStream.class);
+    private static final ReferenceQueue<Object> UNCLOSED = new ReferenceQueue<>();
+    private static final Set<Guard> GUARDS = Collections.newSetFromMap(new ConcurrentHashMap<Guard, Boolean>());
+    private static Thread reaper;
+
+    private QueryStream() {
+        // prevent instantiation
+    }
+
+    @Nonnull
+    static <T> Stream<T> open(@Nonnull String databaseName, @Nonnull ConnectionSource connectionSource, @Nullable String tableName, @Nonnull PreparedQuery<T> preparedQuery, int fetchSize) throws SQLException {
+        Cursor<T> cursor = new Cursor<>(databaseName, connectionSource, preparedQuery, captureOpenedAt(connectionSource));
+        DatabaseConnection connection = connectionSource.getReadOnlyConnection(tableName);
+        cursor.connection = connection;
+        try {
+            if (fetchSize != 0 && connection.isAutoCommitSupported() && connection.isAutoCommit() &&
+                connectionSource.getSpecialConnection(tableName) == null) {
+                connection.setAutoCommit(false);
+                cursor.restoreAutoCommit = true;
+            }
+            cursor.compiledStatement = preparedQuery.compile(fetchSize != 0 ? new FetchingDatabaseConnection(connection, fetchSize) : connection,
+                StatementBuilder.StatementType.SELECT);
+            // no object cache, mapped entities must not outlive the caller's interest in them
+            cursor.results = cursor.compiledStatement.runQuery(null);
+        } catch (SQLException | RuntimeException e) {
+            cursor.close();
+            throw e;
+        }
+
+        Stream<T> stream = StreamSupport.stream(cursor, false);
+        cursor.guard = watch(stream, cursor);
+        return stream.onClose(cursor);
+    }
+
+    @Nullable
+    private static Throwable captureOpenedAt(@Nonnull ConnectionSource connectionSource) {
+        if (LOG.isDebugEnabled()) {
+            return new Throwable("Stream opened here");
+        }
+        RecordingConnectionSource recordingConnectionSource = ConnectionSourceDecorator.find(connectionSource, RecordingConnectionSource.class);
+        ConnectionLeakDetector leakDetector = recordingConnectionSource != null ? recordingConnectionSource.getLeakDetector() : null;
+        return leakDetector != null && leakDetector.shouldCaptureStackTrace() ? new Throwable("Stream opened here") : null;
+    }
+
+    @Nonnull
+    private static Guard watch(@Nonnull Object stream, @Nonnull Cursor<?> cursor) {
+        Guard guard = new Guard(stream, cursor);
+        GUARDS.add(guard);
+        synchronized (QueryStream.class) {
+            if (reaper == null) {
+                reaper = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        reap();
+                    }
+                }, "ormlite-stream-reaper");
+                reaper.setDaemon(true);
+                reaper.start();
+            }
+        }
+        return guard;
+    }
+
+    private static void reap() {
+        while (true) {
+            Guard guard;
+            try {
+                guard = (Guard) UNCLOSED.remove();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (GUARDS.remove(guard)) {
+                Cursor<?> cursor = guard.cursor;
+                if (cursor.openedAt != null) {
+                    LOG.warn("A stream on database '{}' was garbage collected without being closed, releasing its connection", cursor.databaseName, cursor.openedAt);
+                } else {
+                    LOG.warn("A stream on database '{}' was garbage collected without being closed, releasing its connection. Enable debug logging to see where it was opened", cursor.databaseName);
+                }
+                cursor.close();
+            }
+        }
+    }
+
+    private static final class Guard extends PhantomReference<Object> {
+        // must not reach the stream, or it would never become phantom reachable
+        private final Cursor<?> cursor;
+
+        private Guard(@Nonnull Object stream, @Nonnull Cursor<?> cursor) {
+            super(stream, UNCLOSED);
+            this.cursor = cursor;
+        }
+    }
+
+    private static final class Cursor<T> extends Spliterators.AbstractSpliterator<T> implements Runnable {
+        private final String databaseName;
+        private final ConnectionSource connectionSource;
+        private final PreparedQuery<T> preparedQuery;
+        private final Throwable openedAt;
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private DatabaseConnection connection;
+        private CompiledStatement compiledStatement;
+        private DatabaseResults results;
+        private boolean restoreAutoCommit;
+        private boolean started;
+        private Guard guard;
+
+        private Cursor(@Nonnull String databaseName, @Nonnull ConnectionSource connectionSource, @Nonnull PreparedQuery<T> preparedQuery, @Nullable Throwable openedAt) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.databaseName = databaseName;
+            this.connectionSource = connectionSource;
+            this.preparedQuery = preparedQuery;
+            this.openedAt = openedAt;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (closed.get()) {
+                return false;
+            }
+
+            T entity;
+            try {
+                boolean more = started ? results.next() : results.first();
+                started = true;
+                if (!more) {
+                    close();
+                    return false;
+                }
+                entity = preparedQuery.mapRow(results);
+            } catch (SQLException e) {
+                close();
+                throw new RuntimeSQLException(databaseName, e);
+            }
+            action.accept(entity);
+            return true;
+        }
+
+        @Override
+        public void run() {
+            close();
+        }
+
+        private void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            if (guard != null) {
+                GUARDS.remove(guard);
+                guard.clear();
+            }
+
+            if (results != null) {
+                results.closeQuietly();
+            }
+            if (compiledStatement != null) {
+                compiledStatement.closeQuietly();
+            }
+            if (connection == null) {
+                return;
+            }
+            try {
+                if (restoreAutoCommit) {
+                    // commits the read-only transaction
+                    connection.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                LOG.warn("Could not restore auto-commit of a stream connection on database '{}'", databaseName, e);
+            } finally {
+                try {
+                    connectionSource.releaseConnection(connection);
+                } catch (SQLException e) {
+                    LOG.warn("Could not release a stream connection on database '{}'", databaseName, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Prepares forward-only, read-only statements with the given fetch size.
+     */
+    private static final class FetchingDatabaseConnection extends DatabaseConnectionDecorator {
+        private final int fetchSize;
+
+        private FetchingDatabaseConnection(@Nonnull DatabaseConnection delegate, int fetchSize) {
+            super(delegate);
+            this.fetchSize = fetchSize;
+        }
+
+        @Override
+        public CompiledStatement compileStatement(String statement, StatementBuilder.StatementType type, FieldType[] argFieldTypes, int resultFlags, boolean cacheStore) throws SQLException {
+            Connection connection = JdbcSupport.unwrap(getDelegate());
+            if (connection == null) {
+                return super.compileStatement(statement, type, argFieldTypes, resultFlags, cacheStore);
+            }
+            PreparedStatement ps = connection.prepareStatement(statement, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            try {
+                ps.setFetchSize(fetchSize);
+            } catch (SQLException | RuntimeException e) {
+                ps.close();
+                throw e;
+            }
+            // prepared below the decorators, let the statement statistics and slow query log see it nonetheless
+            return JdbcSupport.instrument(getDelegate(), new JdbcCompiledStatement(ps, type, cacheStore), statement, argFieldTypes == null ? 0 : argFieldTypes.length);
+        }
+    }
+}
@@ -20,66 +20,350 @@ package org.codehaus.griffon.runtime.ormlite;
 import com.j256.ormlite.support.ConnectionSource;
 import com.j256.ormlite.support.DatabaseConnection;
 import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
 
+import java.io.IOException;
+import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Objects.requireNonNull;
 
 /**
  * @author Andres Almiray
  */
 public class RecordingConnectionSource extends ConnectionSourceDecorator {
-    private AtomicInteger connectionCount = new AtomicInteger(0);
+    private final ConnectionStatistics connectionStatistics = new ConnectionStatistics();
+    private final int statementCacheSize;
+    private final StatementCacheStatistics statementCacheStatistics;
+    private final StatementStatistics statementStatistics;
+    private final SlowQueryLog slowQueryLog;
+    private final ConnectionLeakDetector leakDetector;
+    private final QueryResultCache resultCache;
+    // whether connections need a wrapper at all, plain ones are counted without it
+    private final boolean decorating;
+    private final Map<Connection, StatementCache> statementCaches = new ConcurrentHashMap<>();
+    // wrappers of saved special connections, handed out again instead of wrapping the same connection per DAO call
+    private final Map<DatabaseConnection, LinkedDatabaseConnection> specialConnections = new ConcurrentHashMap<>();
 
     public RecordingConnectionSource(@Nonnull ConnectionSource delegate) {
-        super(delegate);
+        this(builder(delegate));
+    }
+
+    private RecordingConnectionSource(@Nonnull Builder builder) {
+        super(builder.delegate);
+        this.statementCacheSize = builder.statementCacheSize;
+        this.statementCacheStatistics = statementCacheSize > 0 ? new StatementCacheStatistics(statementCacheSize) : null;
+        this.statementStatistics = builder.statementStatistics;
+        this.slowQueryLog = builder.slowQueryLog;
+        this.leakDetector = builder.leakDetector;
+        this.resultCache = builder.resultCache;
+        this.decorating = statementCacheStatistics != null || statementStatistics != null || slowQueryLog != null || leakDetector != null || resultCache != null;
+    }
+
+    @Nonnull
+    public static Builder builder(@Nonnull ConnectionSource delegate) {
+        return new Builder(delegate);
+    }
+
+    @Nullable
+    public StatementStatistics getStatementStatistics() {
+        return statementStatistics;
+    }
+
+    @Nullable
+    public SlowQueryLog getSlowQueryLog() {
+        return slowQueryLog;
+    }
+
+    @Nullable
+    public ConnectionLeakDetector getLeakDetector() {
+        return leakDetector;
+    }
+
+    @Nullable
+    public QueryResultCache getResultCache() {
+        return resultCache;
+    }
+
+    @Nullable
+    public StatementCacheStatistics getStatementCacheStatistics() {
+        return statementCacheStatistics;
+    }
+
+    @Nonnull
+    public ConnectionStatistics getConnectionStatistics() {
+        return connectionStatistics;
     }
 
     public int increaseConnectionCount() {
-        return connectionCount.incrementAndGet();
+        connectionStatistics.acquired();
+        return connectionStatistics.getConnectionCount();
     }
 
     public int decreaseConnectionCount() {
-        return connectionCount.decrementAndGet();
+        connectionStatistics.released();
+        return connectionStatistics.getConnectionCount();
     }
 
     public int getConnectionCount() {
-        return connectionCount.get();
+        return connectionStatistics.getConnectionCount();
+    }
+
+    void connectionReleased(@Nonnull LinkedDatabaseConnection connection, boolean lastReference) {
+        connectionStatistics.released();
+        if (lastReference && leakDetector != null) {
+            leakDetector.untrack(connection);
+        }
     }
 
     @Override
     public DatabaseConnection getReadOnlyConnection(String tableName) throws SQLException {
-        DatabaseConnection connection = super.getReadOnlyConnection(tableName);
-        increaseConnectionCount();
+        DatabaseConnection connection;
+        try {
+            connection = super.getReadOnlyConnection(tableName);
+        } catch (SQLException | RuntimeException e) {
+            connectionStatistics.acquisitionFailed();
+            throw e;
+        }
+        connectionStatistics.readOnlyAcquired();
         return wrap(connection);
     }
 
     @Override
     public DatabaseConnection getReadWriteConnection(String tableName) throws SQLException {
-        DatabaseConnection connection = super.getReadWriteConnection(tableName);
-        increaseConnectionCount();
+        long start = System.nanoTime();
+        DatabaseConnection connection;
+        try {
+            connection = super.getReadWriteConnection(tableName);
+        } catch (SQLException | RuntimeException e) {
+            connectionStatistics.acquisitionFailed();
+            throw e;
+        }
+        connectionStatistics.readWriteAcquired(System.nanoTime() - start);
         return wrap(connection);
     }
 
     @Override
     public DatabaseConnection getSpecialConnection(String tableName) {
         DatabaseConnection connection = super.getSpecialConnection(tableName);
-        increaseConnectionCount();
+        if (connection == null) {
+            return null;
+        }
+        connectionStatistics.specialAcquired();
         return wrap(connection);
     }
 
+    @Override
+    public boolean saveSpecialConnection(DatabaseConnection connection) throws SQLException {
+        DatabaseConnection unwrapped = unwrap(connection);
+        boolean saved = super.saveSpecialConnection(unwrapped);
+        if (saved && connection instanceof LinkedDatabaseConnection) {
+            specialConnections.put(unwrapped, (LinkedDatabaseConnection) connection);
+        }
+        return saved;
+    }
+
+    @Override
+    public void clearSpecialConnection(DatabaseConnection connection) {
+        DatabaseConnection unwrapped = unwrap(connection);
+        super.clearSpecialConnection(unwrapped);
+        if (super.getSpecialConnection(null) != unwrapped) {
+            LinkedDatabaseConnection linked = specialConnections.remove(unwrapped);
+            if (linked != null && leakDetector != null) {
+                // not every caller of getSpecialConnection releases it, stop tracking once the transaction is over
+                leakDetector.untrack(linked);
+            }
+        }
+    }
+
     @Override
     public void releaseConnection(DatabaseConnection connection) throws SQLException {
+        // the delegate identifies connections by the instance it handed out
+        super.releaseConnection(unwrap(connection));
         if (connection instanceof LinkedDatabaseConnection) {
-            LinkedDatabaseConnection ldb = (LinkedDatabaseConnection) connection;
-            super.releaseConnection(ldb.getDelegate());
-            ldb.unlink();
+            ((LinkedDatabaseConnection) connection).unlink();
         } else {
-            super.releaseConnection(connection);
+            connectionStatistics.released();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        specialConnections.clear();
+        stopLeakDetector();
+        clearStatementCaches();
+        super.close();
+    }
+
+    @Override
+    public void closeQuietly() {
+        specialConnections.clear();
+        stopLeakDetector();
+        clearStatementCaches();
+        super.closeQuietly();
+    }
+
+    /**
+     * Strips the decorators added by {@link #wrap}, yielding the connection handed out by the delegate.
+     */
+    private DatabaseConnection unwrap(DatabaseConnection connection) {
+        DatabaseConnection c = connection;
+        while (c instanceof DatabaseConnectionDecorator) {
+            c = ((DatabaseConnectionDecorator) c).getDelegate();
         }
+        return c;
     }
 
     @Nonnull
     private DatabaseConnection wrap(@Nonnull DatabaseConnection connection) {
-        return connection instanceof LinkedDatabaseConnection ? connection : new LinkedDatabaseConnection(connection, this);
+        if (!decorating || connection instanceof LinkedDatabaseConnection) {
+            return connection;
+        }
+        if (!specialConnections.isEmpty()) {
+            LinkedDatabaseConnection linked = specialConnections.get(connection);
+            if (linked != null) {
+                linked.acquire();
+                return linked;
+            }
+        }
+
+        DatabaseConnection wrapped = withStatementCache(connection);
+        if (statementStatistics != null || slowQueryLog != null) {
+            wrapped = new InstrumentedDatabaseConnection(wrapped, statementStatistics, slowQueryLog);
+        }
+        if (resultCache != null) {
+            // outermost, so that hits are not counted as executed statements
+            wrapped = new ResultCachingDatabaseConnection(wrapped, resultCache);
+        }
+        if (leakDetector == null) {
+            return new LinkedDatabaseConnection(wrapped, this);
+        }
+        LinkedDatabaseConnection linked = new LinkedDatabaseConnection(wrapped, this, leakDetector.shouldCaptureStackTrace());
+        leakDetector.track(linked);
+        return linked;
+    }
+
+    @Nonnull
+    private DatabaseConnection withStatementCache(@Nonnull DatabaseConnection connection) {
+        if (statementCacheStatistics == null) {
+            return connection;
+        }
+        Connection jdbcConnection = JdbcSupport.unwrap(connection);
+        if (jdbcConnection == null) {
+            return connection;
+        }
+
+        // caches are keyed by the driver's connection so that they survive pool checkouts
+        Connection physical = JdbcSupport.physical(jdbcConnection);
+        StatementCache statementCache = statementCaches.get(physical);
+        if (statementCache == null) {
+            purgeClosedStatementCaches();
+            statementCache = new StatementCache(physical, statementCacheSize, statementCacheStatistics);
+            StatementCache existing = statementCaches.putIfAbsent(physical, statementCache);
+            if (existing != null) {
+                statementCache = existing;
+            }
+        }
+        return new StatementCachingDatabaseConnection(connection, jdbcConnection, statementCache);
+    }
+
+    private void purgeClosedStatementCaches() {
+        // the pool may have retired physical connections since the last lookup
+        for (Iterator<Map.Entry<Connection, StatementCache>> it = statementCaches.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Connection, StatementCache> entry = it.next();
+            boolean closed;
+            try {
+                closed = entry.getKey().isClosed();
+            } catch (SQLException e) {
+                closed = true;
+            }
+            if (closed) {
+                entry.getValue().clear();
+                it.remove();
+            }
+        }
+    }
+
+    private void stopLeakDetector() {
+        if (leakDetector != null) {
+            leakDetector.stop();
+        }
+    }
+
+    private void clearStatementCaches() {
+        for (StatementCache statementCache : statementCaches.values()) {
+            statementCache.clear();
+        }
+        statementCaches.clear();
+    }
+
+    /**
+     * Collects the optional features of a {@link RecordingConnectionSource}. Features left unset are disabled.
+     */
+    public static final class Builder {
+        private final ConnectionSource delegate;
+        private int statementCacheSize;
+        private StatementStatistics statementStatistics;
+        private SlowQueryLog slowQueryLog;
+        private ConnectionLeakDetector leakDetector;
+        private QueryResultCache resultCache;
+
+        private Builder(@Nonnull ConnectionSource delegate) {
+            this.delegate = requireNonNull(delegate, "Argument 'delegate' must not be null");
+        }
+
+        /**
+         * @param statementCacheSize idle prepared statements kept per physical connection, {@code 0} disables caching.
+         */
+        @Nonnull
+        public Builder statementCacheSize(int statementCacheSize) {
+            this.statementCacheSize = statementCacheSize;
+            return this;
+        }
+
+        /**
+         * @param statementStatistics records statement latencies, may be {@code null}.
+         */
+        @Nonnull
+        public Builder statementStatistics(@Nullable StatementStatistics statementStatistics) {
+            this.statementStatistics = statementStatistics;
+            return this;
+        }
+
+        /**
+         * @param slowQueryLog records slow statements, may be {@code null}. Connections are left uninstrumented when
+         *                     both this and the statement statistics are {@code null}.
+         */
+        @Nonnull
+        public Builder slowQueryLog(@Nullable SlowQueryLog slowQueryLog) {
+            this.slowQueryLog = slowQueryLog;
+            return this;
+        }
+
+        /**
+         * @param leakDetector tracks connections that are not released, may be {@code null}.
+         */
+        @Nonnull
+        public Builder leakDetector(@Nullable ConnectionLeakDetector leakDetector) {
+            this.leakDetector = leakDetector;
+            return this;
+        }
+
+        /**
+         * @param resultCache caches query results, may be {@code null}.
+         */
+        @Nonnull
+        public Builder resultCache(@Nullable QueryResultCache resultCache) {
+            this.resultCache = resultCache;
+            return this;
+        }
+
+        @Nonnull
+        public RecordingConnectionSource build() {
+            return new RecordingConnectionSource(this);
+        }
     }
 }
@@ -0,0 +1,182 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+import griffon.annotations.core.Nonnull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Sends read-only connections to replica {@code ConnectionSource}s while read-write and special connections stay
+ * on the primary. The replica with the fewest outstanding connections wins. Reads stick to the primary while it
+ * holds a saved special connection, i.e. inside a transaction, so that they observe uncommitted writes.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class ReplicaRoutingConnectionSource extends ConnectionSourceDecorator {
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicaRoutingConnectionSource.class);
+
+    private final Route primary;
+    private final List<Route> replicas;
+    private final Map<DatabaseConnection, Route> routes = new ConcurrentHashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaRoutingConnectionSource(@Nonnull String primaryName, @Nonnull ConnectionSource primary, @Nonnull Map<String, ConnectionSource> replicas) {
+        super(primary);
+        requireNonNull(replicas, "Argument 'replicas' must not be null");
+        this.primary = new Route(primaryName, primary, true);
+        List<Route> list = new ArrayList<>();
+        for (Map.Entry<String, ConnectionSource> e : replicas.entrySet()) {
+            list.add(new Route(e.getKey(), e.getValue(), false));
+        }
+        this.replicas = Collections.unmodifiableList(list);
+    }
+
+    @Nonnull
+    public List<Route> getRoutes() {
+        List<Route> list = new ArrayList<>();
+        list.add(primary);
+        list.addAll(replicas);
+        return Collections.unmodifiableList(list);
+    }
+
+    @Override
+    public DatabaseConnection getReadOnlyConnection(String tableName) throws SQLException {
+        if (replicas.isEmpty() || getDelegate().getSpecialConnection(tableName) != null) {
+            return checkout(primary, primary.connectionSource.getReadOnlyConnection(tableName));
+        }
+
+        Route route = leastOutstanding();
+        try {
+            return checkout(route, route.connectionSource.getReadOnlyConnection(tableName));
+        } catch (SQLException e) {
+            route.failed.incrementAndGet();
+            LOG.warn("Could not obtain a connection from replica '{}', falling back to '{}'", route.name, primary.name, e);
+            return checkout(primary, primary.connectionSource.getReadOnlyConnection(tableName));
+        }
+    }
+
+    @Override
+    public DatabaseConnection getReadWriteConnection(String tableName) throws SQLException {
+        return checkout(primary, primary.connectionSource.getReadWriteConnection(tableName));
+    }
+
+    @Override
+    public void releaseConnection(DatabaseConnection connection) throws SQLException {
+        Route route = connection != null ? routes.remove(connection) : null;
+        if (route == null) {
+            route = primary;
+        } else {
+            route.outstanding.decrementAndGet();
+        }
+        route.connectionSource.releaseConnection(connection);
+    }
+
+    @Override
+    public void closeQuietly() {
+        for (Route route : replicas) {
+            route.connectionSource.closeQuietly();
+        }
+        super.closeQuietly();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Route route : replicas) {
+            route.connectionSource.closeQuietly();
+        }
+        super.close();
+    }
+
+    @Nonnull
+    private DatabaseConnection checkout(@Nonnull Route route, @Nonnull DatabaseConnection connection) {
+        route.routed.incrementAndGet();
+        // a saved special connection is handed out more than once, only the first checkout is tracked
+        if (routes.putIfAbsent(connection, route) == null) {
+            route.outstanding.incrementAndGet();
+        }
+        return connection;
+    }
+
+    @Nonnull
+    private Route leastOutstanding() {
+        // start at a rotating offset so that ties are spread evenly
+        int size = replicas.size();
+        int offset = (next.getAndIncrement() & Integer.MAX_VALUE) % size;
+        Route selected = replicas.get(offset);
+        for (int i = 1; i < size; i++) {
+            Route candidate = replicas.get((offset + i) % size);
+            if (candidate.outstanding.get() < selected.outstanding.get()) {
+                selected = candidate;
+            }
+        }
+        return selected;
+    }
+
+    public static final class Route {
+        private final String name;
+        private final ConnectionSource connectionSource;
+        private final boolean primary;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicLong routed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+
+        private Route(@Nonnull String name, @Nonnull ConnectionSource connectionSource, boolean primary) {
+            this.name = requireNonBlank(name, "Argument 'name' must not be blank");
+            this.connectionSource = requireNonNull(connectionSource, "Argument 'connectionSource' must not be null");
+            this.primary = primary;
+        }
+
+        @Nonnull
+        public String getName() {
+            return name;
+        }
+
+        public boolean isPrimary() {
+            return primary;
+        }
+
+        public int getOutstandingConnections() {
+            return outstanding.get();
+        }
+
+        public long getRoutedConnections() {
+            return routed.get();
+        }
+
+        public long getFailedConnections() {
+            return failed.get();
+        }
+    }
+}
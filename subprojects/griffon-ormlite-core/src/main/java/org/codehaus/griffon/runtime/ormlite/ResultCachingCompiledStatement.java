@@ -0,0 +1,340 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import com.j256.ormlite.dao.ObjectCache;
+import com.j256.ormlite.field.SqlType;
+import com.j256.ormlite.support.CompiledStatement;
+import com.j256.ormlite.support.DatabaseResults;
+import griffon.annotations.core.Nonnull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Serves a compiled SELECT from the {@code QueryResultCache} of its connection, keyed by the arguments set on it.
+ * On a miss the rows are copied while the caller iterates over them, and stored once the caller reaches the end.
+ * Results that are scrolled, abandoned early or larger than the cache's row limit are not stored. Compiled
+ * updates and executes invalidate the cache when they run.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class ResultCachingCompiledStatement implements CompiledStatement {
+    private final CompiledStatement delegate;
+    private final ResultCachingDatabaseConnection connection;
+    private final String statement;
+    private final boolean query;
+    private final boolean cacheStore;
+    private final Object[] args;
+    private boolean cacheable = true;
+    private int maxRows;
+
+    ResultCachingCompiledStatement(@Nonnull CompiledStatement delegate, @Nonnull ResultCachingDatabaseConnection connection, @Nonnull String statement, int argCount, boolean query, boolean cacheStore) {
+        this.delegate = delegate;
+        this.connection = connection;
+        this.statement = statement;
+        this.query = query;
+        this.cacheStore = cacheStore;
+        this.args = query ? new Object[argCount] : null;
+    }
+
+    @Override
+    public int getColumnCount() throws SQLException {
+        return delegate.getColumnCount();
+    }
+
+    @Override
+    public String getColumnName(int column) throws SQLException {
+        return delegate.getColumnName(column);
+    }
+
+    @Override
+    public int runUpdate() throws SQLException {
+        try {
+            return delegate.runUpdate();
+        } finally {
+            if (!query) {
+                connection.written(statement);
+            }
+        }
+    }
+
+    @Override
+    public DatabaseResults runQuery(ObjectCache objectCache) throws SQLException {
+        QueryResultCache cache = connection.getCache();
+        QueryResultCache.Key key = query && cacheable ? cache.key(QueryResultCache.KIND_QUERY, statement, args, maxRows) : null;
+        if (key == null) {
+            return delegate.runQuery(objectCache);
+        }
+
+        Object cached = cache.get(key);
+        if (cached != null) {
+            return new CachedDatabaseResults((CachedDatabaseResults.Rows) cached, objectCache, cacheStore ? objectCache : null);
+        }
+        long[] snapshot = cache.snapshot(key);
+        return new RecordingDatabaseResults(delegate.runQuery(objectCache), cache, key, snapshot);
+    }
+
+    @Override
+    public int runExecute() throws SQLException {
+        try {
+            return delegate.runExecute();
+        } finally {
+            if (!query) {
+                connection.written(statement);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    @Override
+    public void closeQuietly() {
+        delegate.closeQuietly();
+    }
+
+    @Override
+    public void cancel() throws SQLException {
+        delegate.cancel();
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object obj, SqlType sqlType) throws SQLException {
+        delegate.setObject(parameterIndex, obj, sqlType);
+        if (args != null) {
+            if (parameterIndex >= 0 && parameterIndex < args.length) {
+                args[parameterIndex] = obj;
+            } else {
+                cacheable = false;
+            }
+        }
+    }
+
+    @Override
+    public void setMaxRows(int max) throws SQLException {
+        delegate.setMaxRows(max);
+        maxRows = max;
+    }
+
+    @Override
+    public void setQueryTimeout(long millis) throws SQLException {
+        delegate.setQueryTimeout(millis);
+    }
+
+    private static final class RecordingDatabaseResults implements DatabaseResults {
+        private final DatabaseResults delegate;
+        private final QueryResultCache cache;
+        private final QueryResultCache.Key key;
+        private final long[] snapshot;
+        private List<Object[]> rows = new ArrayList<>();
+        private String[] columns;
+        private int position = -1;
+
+        private RecordingDatabaseResults(@Nonnull DatabaseResults delegate, @Nonnull QueryResultCache cache, @Nonnull QueryResultCache.Key key, @Nonnull long[] snapshot) {
+            this.delegate = delegate;
+            this.cache = cache;
+            this.key = key;
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public int getColumnCount() throws SQLException {
+            return delegate.getColumnCount();
+        }
+
+        @Override
+        public String[] getColumnNames() throws SQLException {
+            return delegate.getColumnNames();
+        }
+
+        @Override
+        public boolean first() throws SQLException {
+            boolean moved = delegate.first();
+            if (position < 0) {
+                // same as next() on a fresh cursor
+                position = 0;
+                record(moved);
+            } else if (position > 0) {
+                rows = null;
+            }
+            return moved;
+        }
+
+        @Override
+        public boolean previous() throws SQLException {
+            rows = null;
+            return delegate.previous();
+        }
+
+        @Override
+        public boolean next() throws SQLException {
+            boolean moved = delegate.next();
+            position++;
+            record(moved);
+            return moved;
+        }
+
+        @Override
+        public boolean last() throws SQLException {
+            rows = null;
+            return delegate.last();
+        }
+
+        @Override
+        public boolean moveRelative(int offset) throws SQLException {
+            rows = null;
+            return delegate.moveRelative(offset);
+        }
+
+        @Override
+        public boolean moveAbsolute(int position) throws SQLException {
+            rows = null;
+            return delegate.moveAbsolute(position);
+        }
+
+        @Override
+        public int findColumn(String columnName) throws SQLException {
+            return delegate.findColumn(columnName);
+        }
+
+        @Override
+        public String getString(int columnIndex) throws SQLException {
+            return delegate.getString(columnIndex);
+        }
+
+        @Override
+        public boolean getBoolean(int columnIndex) throws SQLException {
+            return delegate.getBoolean(columnIndex);
+        }
+
+        @Override
+        public char getChar(int columnIndex) throws SQLException {
+            return delegate.getChar(columnIndex);
+        }
+
+        @Override
+        public byte getByte(int columnIndex) throws SQLException {
+            return delegate.getByte(columnIndex);
+        }
+
+        @Override
+        public byte[] getBytes(int columnIndex) throws SQLException {
+            return delegate.getBytes(columnIndex);
+        }
+
+        @Override
+        public short getShort(int columnIndex) throws SQLException {
+            return delegate.getShort(columnIndex);
+        }
+
+        @Override
+        public int getInt(int columnIndex) throws SQLException {
+            return delegate.getInt(columnIndex);
+        }
+
+        @Override
+        public long getLong(int columnIndex) throws SQLException {
+            return delegate.getLong(columnIndex);
+        }
+
+        @Override
+        public float getFloat(int columnIndex) throws SQLException {
+            return delegate.getFloat(columnIndex);
+        }
+
+        @Override
+        public double getDouble(int columnIndex) throws SQLException {
+            return delegate.getDouble(columnIndex);
+        }
+
+        @Override
+        public Timestamp getTimestamp(int columnIndex) throws SQLException {
+            return delegate.getTimestamp(columnIndex);
+        }
+
+        @Override
+        public InputStream getBlobStream(int columnIndex) throws SQLException {
+            return delegate.getBlobStream(columnIndex);
+        }
+
+        @Override
+        public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+            return delegate.getBigDecimal(columnIndex);
+        }
+
+        @Override
+        public Object getObject(int columnIndex) throws SQLException {
+            return delegate.getObject(columnIndex);
+        }
+
+        @Override
+        public boolean wasNull(int columnIndex) throws SQLException {
+            return delegate.wasNull(columnIndex);
+        }
+
+        @Override
+        public ObjectCache getObjectCacheForRetrieve() {
+            return delegate.getObjectCacheForRetrieve();
+        }
+
+        @Override
+        public ObjectCache getObjectCacheForStore() {
+            return delegate.getObjectCacheForStore();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public void closeQuietly() {
+            delegate.closeQuietly();
+        }
+
+        private void record(boolean moved) throws SQLException {
+            if (rows == null) {
+                return;
+            }
+            if (columns == null) {
+                columns = delegate.getColumnNames();
+            }
+            if (!moved) {
+                // the caller read every row
+                CachedDatabaseResults.Rows result = new CachedDatabaseResults.Rows(columns, rows);
+                cache.put(key, snapshot, result, result.getEstimatedSize());
+                rows = null;
+                return;
+            }
+            if (rows.size() >= cache.getMaxRows()) {
+                rows = null;
+                return;
+            }
+            rows.add(CachedDatabaseResults.copyRow(delegate, columns.length));
+        }
+    }
+}
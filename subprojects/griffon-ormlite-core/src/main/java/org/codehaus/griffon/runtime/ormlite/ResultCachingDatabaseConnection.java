@@ -0,0 +1,240 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import com.j256.ormlite.dao.ObjectCache;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.stmt.GenericRowMapper;
+import com.j256.ormlite.stmt.StatementBuilder;
+import com.j256.ormlite.support.CompiledStatement;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.support.DatabaseResults;
+import com.j256.ormlite.support.GeneratedKeyHolder;
+import griffon.annotations.core.Nonnull;
+
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Serves {@code queryForOne}, {@code queryForLong} and compiled SELECTs from a {@code QueryResultCache}, and
+ * invalidates it on every insert, update, delete and executed statement.
+ * <p>
+ * Inside a transaction reads bypass the cache, as they may observe uncommitted writes. Tables written by the
+ * transaction are invalidated once more when it ends, dropping whatever other connections cached in between.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class ResultCachingDatabaseConnection extends DatabaseConnectionDecorator {
+    private final QueryResultCache cache;
+    private Boolean autoCommit;
+    private Set<String> pendingWrites;
+
+    public ResultCachingDatabaseConnection(@Nonnull DatabaseConnection delegate, @Nonnull QueryResultCache cache) {
+        super(delegate);
+        this.cache = requireNonNull(cache, "Argument 'cache' must not be null");
+    }
+
+    @Override
+    public void setAutoCommit(boolean autoCommit) throws SQLException {
+        super.setAutoCommit(autoCommit);
+        this.autoCommit = autoCommit;
+        if (autoCommit) {
+            // enabling auto-commit commits the current transaction
+            transactionEnded();
+        }
+    }
+
+    @Override
+    public void commit(Savepoint savePoint) throws SQLException {
+        try {
+            super.commit(savePoint);
+        } finally {
+            if (savePoint == null) {
+                transactionEnded();
+            }
+        }
+    }
+
+    @Override
+    public void rollback(Savepoint savePoint) throws SQLException {
+        try {
+            super.rollback(savePoint);
+        } finally {
+            if (savePoint == null) {
+                transactionEnded();
+            }
+        }
+    }
+
+    @Override
+    public int executeStatement(String statementStr, int resultFlags) throws SQLException {
+        try {
+            return super.executeStatement(statementStr, resultFlags);
+        } finally {
+            written(statementStr);
+        }
+    }
+
+    @Override
+    public CompiledStatement compileStatement(String statement, StatementBuilder.StatementType type, FieldType[] argFieldTypes, int resultFlags, boolean cacheStore) throws SQLException {
+        CompiledStatement compiledStatement = super.compileStatement(statement, type, argFieldTypes, resultFlags, cacheStore);
+        boolean query = type == StatementBuilder.StatementType.SELECT || type == StatementBuilder.StatementType.SELECT_LONG ||
+            type == StatementBuilder.StatementType.SELECT_RAW;
+        if (query && isInTransaction()) {
+            return compiledStatement;
+        }
+        return new ResultCachingCompiledStatement(compiledStatement, this, statement, argFieldTypes == null ? 0 : argFieldTypes.length, query, cacheStore);
+    }
+
+    @Override
+    public int insert(String statement, Object[] args, FieldType[] argfieldTypes, GeneratedKeyHolder keyHolder) throws SQLException {
+        try {
+            return super.insert(statement, args, argfieldTypes, keyHolder);
+        } finally {
+            written(statement);
+        }
+    }
+
+    @Override
+    public int update(String statement, Object[] args, FieldType[] argfieldTypes) throws SQLException {
+        try {
+            return super.update(statement, args, argfieldTypes);
+        } finally {
+            written(statement);
+        }
+    }
+
+    @Override
+    public int delete(String statement, Object[] args, FieldType[] argfieldTypes) throws SQLException {
+        try {
+            return super.delete(statement, args, argfieldTypes);
+        } finally {
+            written(statement);
+        }
+    }
+
+    @Override
+    public <T> Object queryForOne(String statement, Object[] args, FieldType[] argfieldTypes, final GenericRowMapper<T> rowMapper, ObjectCache objectCache) throws SQLException {
+        QueryResultCache.Key key = isInTransaction() ? null : cache.key(QueryResultCache.KIND_ONE, statement, args, 0);
+        if (key == null) {
+            return super.queryForOne(statement, args, argfieldTypes, rowMapper, objectCache);
+        }
+
+        Object cached = cache.get(key);
+        if (cached != null) {
+            if (cached == MORE_THAN_ONE) {
+                return MORE_THAN_ONE;
+            }
+            CachedDatabaseResults results = new CachedDatabaseResults((CachedDatabaseResults.Rows) cached, objectCache, objectCache);
+            return results.first() ? rowMapper.mapRow(results) : null;
+        }
+
+        long[] snapshot = cache.snapshot(key);
+        final CachedDatabaseResults.Rows[] captured = new CachedDatabaseResults.Rows[1];
+        Object result = super.queryForOne(statement, args, argfieldTypes, new GenericRowMapper<T>() {
+            @Override
+            public T mapRow(DatabaseResults results) throws SQLException {
+                // map from the copy, so that a hit behaves exactly like this miss
+                captured[0] = new CachedDatabaseResults.Rows(results.getColumnNames(),
+                    Collections.singletonList(CachedDatabaseResults.copyRow(results, results.getColumnCount())));
+                CachedDatabaseResults copy = new CachedDatabaseResults(captured[0], results.getObjectCacheForRetrieve(), results.getObjectCacheForStore());
+                copy.first();
+                return rowMapper.mapRow(copy);
+            }
+        }, objectCache);
+
+        if (result == MORE_THAN_ONE) {
+            cache.put(key, snapshot, MORE_THAN_ONE, 0L);
+        } else if (result == null) {
+            CachedDatabaseResults.Rows empty = new CachedDatabaseResults.Rows(new String[0], Collections.<Object[]>emptyList());
+            cache.put(key, snapshot, empty, empty.getEstimatedSize());
+        } else if (captured[0] != null) {
+            cache.put(key, snapshot, captured[0], captured[0].getEstimatedSize());
+        }
+        return result;
+    }
+
+    @Override
+    public long queryForLong(String statement) throws SQLException {
+        return queryForLong(statement, null, null);
+    }
+
+    @Override
+    public long queryForLong(String statement, Object[] args, FieldType[] argFieldTypes) throws SQLException {
+        QueryResultCache.Key key = isInTransaction() ? null : cache.key(QueryResultCache.KIND_LONG, statement, args, 0);
+        if (key == null) {
+            return args == null ? super.queryForLong(statement) : super.queryForLong(statement, args, argFieldTypes);
+        }
+
+        Object cached = cache.get(key);
+        if (cached != null) {
+            return (Long) cached;
+        }
+        long[] snapshot = cache.snapshot(key);
+        long result = args == null ? super.queryForLong(statement) : super.queryForLong(statement, args, argFieldTypes);
+        cache.put(key, snapshot, result, 16L);
+        return result;
+    }
+
+    @Nonnull
+    QueryResultCache getCache() {
+        return cache;
+    }
+
+    void written(@Nonnull String statement) {
+        cache.invalidate(statement);
+        if (isInTransactionQuietly()) {
+            if (pendingWrites == null) {
+                pendingWrites = new LinkedHashSet<>();
+            }
+            pendingWrites.add(statement);
+        }
+    }
+
+    boolean isInTransaction() throws SQLException {
+        if (autoCommit == null) {
+            DatabaseConnection delegate = getDelegate();
+            autoCommit = !delegate.isAutoCommitSupported() || delegate.isAutoCommit();
+        }
+        return !autoCommit;
+    }
+
+    private boolean isInTransactionQuietly() {
+        try {
+            return isInTransaction();
+        } catch (SQLException e) {
+            // assume the worst, the write is invalidated again once the connection commits
+            return true;
+        }
+    }
+
+    private void transactionEnded() {
+        if (pendingWrites != null) {
+            for (String statement : pendingWrites) {
+                cache.invalidate(statement);
+            }
+            pendingWrites.clear();
+        }
+    }
+}
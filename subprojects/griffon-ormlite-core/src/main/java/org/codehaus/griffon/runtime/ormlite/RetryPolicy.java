@@ -0,0 +1,115 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.ormlite.MetricsRegistry;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+
+/**
+ * Decides whether a failed unit of work is run again and how long to wait before doing so. Only errors caused by a
+ * concurrent transaction (deadlocks, serialization failures, lock timeouts) are retried, as recognized by their
+ * SQLState or by the vendor codes of the database in use. Waits grow exponentially from {@code backoff} up to
+ * {@code maxBackoff} and are drawn uniformly below that bound, so that competing callers do not collide again.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class RetryPolicy {
+    private final String databaseName;
+    private final int maxAttempts;
+    private final long backoff;
+    private final long maxBackoff;
+    private final int[] vendorCodes;
+    private final MetricsRegistry.Counter retriesCounter;
+    private final MetricsRegistry.Counter exhaustedCounter;
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    /**
+     * @param databaseType     value of {@code DatabaseType.getDatabaseName()}, selects the vendor codes to retry.
+     * @param maxAttempts      times a unit of work is run at most, the first attempt included.
+     * @param backoff          milliseconds bounding the wait before the first retry.
+     * @param maxBackoff       upper bound of any wait, in milliseconds.
+     * @param retriesCounter   incremented per retry, may be {@code null}.
+     * @param exhaustedCounter incremented when the last attempt fails as well, may be {@code null}.
+     */
+    public RetryPolicy(@Nonnull String databaseName, @Nullable String databaseType, int maxAttempts, long backoff, long maxBackoff,
+                       @Nullable MetricsRegistry.Counter retriesCounter, @Nullable MetricsRegistry.Counter exhaustedCounter) {
+        this.databaseName = requireNonBlank(databaseName, "Argument 'databaseName' must not be blank");
+        if (maxAttempts < 2) {
+            throw new IllegalArgumentException("Retry attempts of database '" + databaseName + "' must be greater than one");
+        }
+        this.maxAttempts = maxAttempts;
+        this.backoff = Math.max(0L, backoff);
+        this.maxBackoff = Math.max(this.backoff, maxBackoff);
+        this.vendorCodes = SqlStates.transientVendorCodes(databaseType);
+        this.retriesCounter = retriesCounter;
+        this.exhaustedCounter = exhaustedCounter;
+    }
+
+    @Nonnull
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    public long getExhausted() {
+        return exhausted.sum();
+    }
+
+    public boolean isTransient(@Nullable Throwable error) {
+        return SqlStates.isTransient(error, vendorCodes);
+    }
+
+    /**
+     * Returns the milliseconds to wait before running a unit of work that failed {@code attempt} times, or {@code -1}
+     * when it has used up its attempts.
+     */
+    public long nextBackoff(int attempt) {
+        if (attempt >= maxAttempts) {
+            exhausted.increment();
+            if (exhaustedCounter != null) {
+                exhaustedCounter.increment();
+            }
+            return -1L;
+        }
+        retries.increment();
+        if (retriesCounter != null) {
+            retriesCounter.increment();
+        }
+        long bound = backoff;
+        for (int i = 1; i < attempt && bound < maxBackoff; i++) {
+            bound = bound > maxBackoff / 2 ? maxBackoff : bound * 2;
+        }
+        bound = Math.min(bound, maxBackoff);
+        return bound == 0 ? 0L : ThreadLocalRandom.current().nextLong(bound == Long.MAX_VALUE ? bound : bound + 1);
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.ormlite.MetricsRegistry;
+import org.codehaus.griffon.runtime.ormlite.monitor.SlowQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+
+/**
+ * Keeps the most recent statements of a database that ran longer than a threshold. Only a sample of them is
+ * recorded; entries are written to a fixed size ring buffer without locking, overwriting the oldest ones. At most
+ * one warning per second is logged, the ones skipped in between are counted in the next warning.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class SlowQueryLog {
+    private static final Logger LOG = LoggerFactory.getLogger(SlowQueryLog.class);
+    private static final int MAX_ARGS = 16;
+    private static final int MAX_ARG_LENGTH = 64;
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+    private static final long WARNING_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final String databaseName;
+    private final long thresholdNanos;
+    private final double sampleRate;
+    private final AtomicReferenceArray<SlowQuery> entries;
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder slowQueryCount = new LongAdder();
+    private final MetricsRegistry.Counter slowQueries;
+    private final AtomicLong nextWarning = new AtomicLong(System.nanoTime());
+    private final AtomicLong suppressedWarnings = new AtomicLong();
+
+    public SlowQueryLog(@Nonnull String databaseName, long thresholdMillis, double sampleRate, int capacity) {
+        this(databaseName, thresholdMillis, sampleRate, capacity, null);
+    }
+
+    /**
+     * @param slowQueries also counts every slow statement, may be {@code null}.
+     */
+    public SlowQueryLog(@Nonnull String databaseName, long thresholdMillis, double sampleRate, int capacity, @Nullable MetricsRegistry.Counter slowQueries) {
+        this.databaseName = requireNonBlank(databaseName, "Argument 'databaseName' must not be blank");
+        if (thresholdMillis < 1) {
+            throw new IllegalArgumentException("Argument 'thresholdMillis' must be greater than 0");
+        }
+        if (sampleRate <= 0d || sampleRate > 1d) {
+            throw new IllegalArgumentException("Argument 'sampleRate' must be greater than 0 and not greater than 1");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Argument 'capacity' must be greater than 0");
+        }
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.sampleRate = sampleRate;
+        this.entries = new AtomicReferenceArray<>(capacity);
+        this.slowQueries = slowQueries;
+    }
+
+    @Nonnull
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    public long getThreshold() {
+        return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getCapacity() {
+        return entries.length();
+    }
+
+    /**
+     * @return number of statements that exceeded the threshold, sampled or not.
+     */
+    public long getSlowQueryCount() {
+        return slowQueryCount.sum();
+    }
+
+    public void record(@Nonnull String sql, @Nullable Object[] args, long nanos) {
+        record(sql, args, args == null ? 0 : args.length, nanos);
+    }
+
+    /**
+     * Records a statement whose arguments are the first {@code argCount} elements of {@code args}.
+     */
+    void record(@Nonnull String sql, @Nullable Object[] args, int argCount, long nanos) {
+        if (nanos < thresholdNanos) {
+            return;
+        }
+        slowQueryCount.increment();
+        if (slowQueries != null) {
+            slowQueries.increment();
+        }
+        if (sampleRate < 1d && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+
+        SlowQuery entry = new SlowQuery(System.currentTimeMillis(), databaseName, sql, formatArgs(args, argCount), nanos / NANOS_PER_MILLI, Thread.currentThread().getName());
+        entries.set((int) (sequence.getAndIncrement() % entries.length()), entry);
+        if (LOG.isWarnEnabled()) {
+            warn(entry);
+        }
+    }
+
+    private void warn(@Nonnull SlowQuery entry) {
+        // logging is synchronous, a burst of slow statements must not turn into a burst of appender calls
+        long now = System.nanoTime();
+        long next = nextWarning.get();
+        if (now - next < 0 || !nextWarning.compareAndSet(next, now + WARNING_INTERVAL_NANOS)) {
+            suppressedWarnings.incrementAndGet();
+            return;
+        }
+
+        long suppressed = suppressedWarnings.getAndSet(0);
+        if (suppressed > 0) {
+            LOG.warn("Slow statement on database '{}' took {} ms: {} {} ({} more slow statements were not logged)", databaseName, entry.getElapsed(), entry.getSql(), entry.getArgs(), suppressed);
+        } else {
+            LOG.warn("Slow statement on database '{}' took {} ms: {} {}", databaseName, entry.getElapsed(), entry.getSql(), entry.getArgs());
+        }
+    }
+
+    /**
+     * @return recorded entries, most recent first.
+     */
+    @Nonnull
+    public List<SlowQuery> getSlowQueries() {
+        long end = sequence.get();
+        int capacity = entries.length();
+        List<SlowQuery> list = new ArrayList<>();
+        for (long i = end - 1; i >= 0 && i >= end - capacity; i--) {
+            SlowQuery entry = entries.get((int) (i % capacity));
+            if (entry != null) {
+                list.add(entry);
+            }
+        }
+        return list;
+    }
+
+    public void clear() {
+        for (int i = 0; i < entries.length(); i++) {
+            entries.set(i, null);
+        }
+        slowQueryCount.reset();
+    }
+
+    @Nonnull
+    static String formatArgs(@Nullable Object[] args) {
+        return formatArgs(args, args == null ? 0 : args.length);
+    }
+
+    @Nonnull
+    private static String formatArgs(@Nullable Object[] args, int argCount) {
+        if (args == null || argCount == 0) {
+            return "[]";
+        }
+
+        StringBuilder b = new StringBuilder("[");
+        int count = Math.min(argCount, MAX_ARGS);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                b.append(", ");
+            }
+            String value = String.valueOf(args[i]);
+            if (value.length() > MAX_ARG_LENGTH) {
+                b.append(value, 0, MAX_ARG_LENGTH).append("...");
+            } else {
+                b.append(value);
+            }
+        }
+        if (args.length > count) {
+            b.append(", ... ").append(args.length - count).append(" more");
+        }
+        return b.append(']').toString();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Locale;
+
+/**
+ * Classifies SQL errors by exception type and SQLState. Drivers differ in which of the two they fill in, so both
+ * are checked for every exception of a cause chain.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class SqlStates {
+    private static final int[] NO_VENDOR_CODES = new int[0];
+
+    private SqlStates() {
+        // prevent instantiation
+    }
+
+    /**
+     * Whether the error means the database could not be reached or did not answer in time, as opposed to a
+     * statement being rejected. Lock conflicts are never connection failures, even when the driver reports a lock
+     * timeout as a timeout.
+     *
+     * @param vendorCodes driver error codes of lock conflicts for the database in use, see {@link #transientVendorCodes}.
+     */
+    static boolean isConnectionFailure(@Nullable Throwable error, @Nonnull int[] vendorCodes) {
+        if (isTransient(error, vendorCodes)) {
+            return false;
+        }
+        for (Throwable t = error; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof SQLTransientConnectionException || t instanceof SQLNonTransientConnectionException || t instanceof SQLTimeoutException) {
+                return true;
+            }
+            if (t instanceof SQLException && isConnectionState(((SQLException) t).getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the statement lost a race against a concurrent transaction (deadlock, serialization failure, lock
+     * timeout) and may succeed when run again.
+     *
+     * @param vendorCodes driver error codes that mean the same for the database in use, see {@link #transientVendorCodes}.
+     */
+    static boolean isTransient(@Nullable Throwable error, @Nonnull int[] vendorCodes) {
+        for (Throwable t = error; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof SQLTransactionRollbackException) {
+                return true;
+            }
+            if (t instanceof SQLException) {
+                SQLException e = (SQLException) t;
+                if (isTransientState(e.getSQLState()) || contains(vendorCodes, e.getErrorCode())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Error codes of lock conflicts that the driver reports with a generic SQLState, keyed by
+     * {@code DatabaseType.getDatabaseName()}.
+     */
+    @Nonnull
+    static int[] transientVendorCodes(@Nullable String databaseName) {
+        if (databaseName == null) {
+            return NO_VENDOR_CODES;
+        }
+        String name = databaseName.toLowerCase(Locale.ROOT);
+        if (name.contains("mysql") || name.contains("mariadb")) {
+            // ER_LOCK_WAIT_TIMEOUT, ER_LOCK_DEADLOCK
+            return new int[]{1205, 1213};
+        } else if (name.contains("sql server")) {
+            // deadlock victim, lock request timeout
+            return new int[]{1205, 1222};
+        } else if (name.contains("oracle")) {
+            // ORA-00054 resource busy, ORA-00060 deadlock, ORA-08177 serialization failure, ORA-30006 wait timeout
+            return new int[]{54, 60, 8177, 30006};
+        } else if (name.contains("db2")) {
+            // deadlock or timeout with and without rollback
+            return new int[]{-911, -913};
+        } else if (name.contains("h2")) {
+            // LOCK_TIMEOUT_1, CONCURRENT_UPDATE_1
+            return new int[]{50200, 90131};
+        } else if (name.contains("sqlite")) {
+            // SQLITE_BUSY, SQLITE_LOCKED
+            return new int[]{5, 6};
+        }
+        return NO_VENDOR_CODES;
+    }
+
+    private static boolean isTransientState(@Nullable String sqlState) {
+        if (sqlState == null) {
+            return false;
+        }
+        // 40001: serialization failure, 40P01: PostgreSQL deadlock, 55P03: PostgreSQL lock not available,
+        // 40XL1/40XL2: Derby lock timeout and deadlock
+        return "40001".equals(sqlState) || "40P01".equals(sqlState) || "55P03".equals(sqlState) ||
+            "40XL1".equals(sqlState) || "40XL2".equals(sqlState);
+    }
+
+    private static boolean contains(@Nonnull int[] values, int value) {
+        if (value == 0) {
+            return false;
+        }
+        for (int v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isConnectionState(@Nullable String sqlState) {
+        if (sqlState == null || sqlState.length() < 2) {
+            return false;
+        }
+        // 08: connection exception, HYT01: ODBC connection timeout, 57P: PostgreSQL operator intervention (shutdown,
+        // crash). HYT00 is left out, H2 reports lock timeouts with it
+        return sqlState.startsWith("08") || "HYT01".equals(sqlState) || sqlState.startsWith("57P");
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Finds the tables a SQL statement reads or writes. This is a tokenizer rather than a parser: it looks for the
+ * names following {@code FROM}, {@code JOIN}, {@code INTO}, {@code UPDATE} and {@code TABLE}, skipping string
+ * literals and comments. Table names are unquoted, stripped of their schema and lower cased.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class SqlTables {
+    private static final String[] NONE = new String[0];
+
+    // keywords that end a table reference, anything else following a table name is taken as its alias
+    private static final Set<String> CLAUSES = new HashSet<>(Arrays.asList(
+        "as", "cross", "except", "fetch", "for", "full", "group", "having", "inner", "intersect", "join", "left",
+        "limit", "minus", "natural", "offset", "on", "order", "outer", "right", "select", "set", "union", "using",
+        "values", "where", "window"));
+
+    // functions whose result changes between calls
+    private static final Set<String> VOLATILE_FUNCTIONS = new HashSet<>(Arrays.asList(
+        "currval", "newid", "nextval", "now", "rand", "random", "random_uuid", "uuid"));
+
+    // niladic functions and pseudo columns whose value changes between calls
+    private static final Set<String> VOLATILE_VALUES = new HashSet<>(Arrays.asList(
+        "current_date", "current_time", "current_timestamp", "localtime", "localtimestamp", "sysdate", "systimestamp"));
+
+    private static final Set<String> SKIPPED = new HashSet<>(Arrays.asList("exists", "if", "not", "only"));
+
+    private SqlTables() {
+        // prevent instantiation
+    }
+
+    /**
+     * @return the tables read by the given query, or {@code null} if its result must not be cached, i.e. it reads
+     * no table, locks rows or calls a volatile function.
+     */
+    @Nullable
+    static String[] readTables(@Nonnull String sql) {
+        Tokenizer tokenizer = new Tokenizer(sql);
+        Set<String> tables = new LinkedHashSet<>();
+        String previous = null;
+        for (String token = tokenizer.next(); token != null; token = tokenizer.next()) {
+            String word = token.toLowerCase(Locale.ENGLISH);
+            if (isVolatile(word, tokenizer) || ("update".equals(word) && "for".equals(previous)) ||
+                ("value".equals(word) && "next".equals(previous))) {
+                return null;
+            }
+            if ("from".equals(word) || "join".equals(word)) {
+                readTableList(tokenizer, tables, "from".equals(word));
+            }
+            previous = word;
+        }
+        return tables.isEmpty() || tables.contains("dual") ? null : tables.toArray(NONE);
+    }
+
+    /**
+     * @return the tables the given statement may change. An empty array means they are not known.
+     */
+    @Nonnull
+    static String[] writtenTables(@Nonnull String sql) {
+        Tokenizer tokenizer = new Tokenizer(sql);
+        Set<String> tables = new LinkedHashSet<>();
+        for (String token = tokenizer.next(); token != null; token = tokenizer.next()) {
+            String word = token.toLowerCase(Locale.ENGLISH);
+            if ("from".equals(word) || "into".equals(word) || "update".equals(word) || "table".equals(word)) {
+                readTableList(tokenizer, tables, "from".equals(word));
+            }
+        }
+        return tables.toArray(NONE);
+    }
+
+    private static void readTableList(@Nonnull Tokenizer tokenizer, @Nonnull Set<String> tables, boolean list) {
+        while (true) {
+            String name = tokenizer.next();
+            if (name == null || "(".equals(name)) {
+                // end of input or a derived table, whose own FROM is picked up later on
+                tokenizer.pushBack(name);
+                return;
+            }
+            String lower = name.toLowerCase(Locale.ENGLISH);
+            if (SKIPPED.contains(lower)) {
+                // CREATE TABLE IF NOT EXISTS t, SELECT * FROM ONLY t
+                continue;
+            }
+            tables.add(unquote(lower));
+
+            String next = tokenizer.next();
+            if (next != null && !",".equals(next) && !CLAUSES.contains(next.toLowerCase(Locale.ENGLISH)) && isName(next)) {
+                // alias
+                next = tokenizer.next();
+            } else if (next != null && "as".equalsIgnoreCase(next)) {
+                tokenizer.next();
+                next = tokenizer.next();
+            }
+            if (!list || !",".equals(next)) {
+                tokenizer.pushBack(next);
+                return;
+            }
+        }
+    }
+
+    private static boolean isVolatile(@Nonnull String word, @Nonnull Tokenizer tokenizer) {
+        if (VOLATILE_VALUES.contains(word) || word.endsWith(".nextval") || word.endsWith(".currval")) {
+            return true;
+        }
+        if (!VOLATILE_FUNCTIONS.contains(word)) {
+            return false;
+        }
+        // a column may well be called uuid, only calls count
+        String next = tokenizer.next();
+        tokenizer.pushBack(next);
+        return "(".equals(next);
+    }
+
+    private static boolean isName(@Nonnull String token) {
+        char c = token.charAt(0);
+        return Character.isLetter(c) || c == '_' || c == '"' || c == '`' || c == '[';
+    }
+
+    @Nonnull
+    private static String unquote(@Nonnull String name) {
+        // schema.table, "schema"."table", [table]
+        int dot = name.lastIndexOf('.');
+        String table = dot >= 0 ? name.substring(dot + 1) : name;
+        if (table.length() > 1 && (table.charAt(0) == '"' || table.charAt(0) == '`' || table.charAt(0) == '[')) {
+            table = table.substring(1, table.length() - 1);
+        }
+        return table;
+    }
+
+    private static final class Tokenizer {
+        private final String sql;
+        private int position;
+        private String pushedBack;
+
+        private Tokenizer(@Nonnull String sql) {
+            this.sql = sql;
+        }
+
+        private void pushBack(@Nullable String token) {
+            pushedBack = token;
+        }
+
+        @Nullable
+        private String next() {
+            if (pushedBack != null) {
+                String token = pushedBack;
+                pushedBack = null;
+                return token;
+            }
+
+            int length = sql.length();
+            while (position < length) {
+                char c = sql.charAt(position);
+                if (Character.isWhitespace(c)) {
+                    position++;
+                } else if (c == '\'') {
+                    position = skipQuoted(position, '\'');
+                } else if (c == '-' && position + 1 < length && sql.charAt(position + 1) == '-') {
+                    int end = sql.indexOf('\n', position);
+                    position = end < 0 ? length : end + 1;
+                } else if (c == '/' && position + 1 < length && sql.charAt(position + 1) == '*') {
+                    int end = sql.indexOf("*/", position + 2);
+                    position = end < 0 ? length : end + 2;
+                } else if (Character.isLetterOrDigit(c) || c == '_' || c == '"' || c == '`' || c == '[') {
+                    return name();
+                } else {
+                    position++;
+                    return String.valueOf(c);
+                }
+            }
+            return null;
+        }
+
+        @Nonnull
+        private String name() {
+            // a possibly qualified, possibly quoted identifier
+            int start = position;
+            int length = sql.length();
+            while (position < length) {
+                char c = sql.charAt(position);
+                if (c == '"' || c == '`') {
+                    position = skipQuoted(position, c);
+                } else if (c == '[') {
+                    position = skipQuoted(position, ']');
+                } else {
+                    while (position < length && isIdentifierPart(sql.charAt(position))) {
+                        position++;
+                    }
+                }
+                if (position < length && sql.charAt(position) == '.') {
+                    position++;
+                } else {
+                    break;
+                }
+            }
+            return sql.substring(start, position);
+        }
+
+        private boolean isIdentifierPart(char c) {
+            return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+        }
+
+        private int skipQuoted(int start, char close) {
+            int end = sql.indexOf(close, start + 1);
+            return end < 0 ? sql.length() : end + 1;
+        }
+    }
+}
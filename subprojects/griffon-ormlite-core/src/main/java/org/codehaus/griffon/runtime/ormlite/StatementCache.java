@@ -0,0 +1,172 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import griffon.annotations.core.Nonnull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.j256.ormlite.support.DatabaseConnection.DEFAULT_RESULT_FLAGS;
+
+/**
+ * Bounded LRU of idle {@code PreparedStatement}s prepared on one physical connection. A statement is removed
+ * while it is checked out, so two callers never share one; closing the handle returned by {@link #prepare}
+ * puts it back, evicting the least recently used statement when the cache is full.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class StatementCache {
+    private static final Logger LOG = LoggerFactory.getLogger(StatementCache.class);
+
+    private final Connection connection;
+    private final StatementCacheStatistics statistics;
+    private final Map<Key, PreparedStatement> statements;
+
+    StatementCache(@Nonnull Connection connection, final int maxSize, @Nonnull StatementCacheStatistics statistics) {
+        this.connection = connection;
+        this.statistics = statistics;
+        this.statements = new LinkedHashMap<Key, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, PreparedStatement> eldest) {
+                if (size() > maxSize) {
+                    closeQuietly(eldest.getValue());
+                    StatementCache.this.statistics.evicted();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Nonnull
+    Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Returns a statement for the given SQL. Closing the returned statement hands it back to the cache.
+     */
+    @Nonnull
+    PreparedStatement prepare(@Nonnull String sql, int resultFlags, boolean generatedKeys) throws SQLException {
+        Key key = new Key(sql, resultFlags, generatedKeys);
+        PreparedStatement ps;
+        synchronized (statements) {
+            ps = statements.remove(key);
+        }
+
+        if (ps != null && !ps.isClosed()) {
+            statistics.hit();
+        } else {
+            statistics.miss();
+            ps = prepareStatement(connection, sql, resultFlags, generatedKeys);
+        }
+        return new CachedPreparedStatement(this, key, ps);
+    }
+
+    /**
+     * Prepares a statement the same way {@code JdbcDatabaseConnection} does.
+     */
+    @Nonnull
+    static PreparedStatement prepareStatement(@Nonnull Connection connection, @Nonnull String sql, int resultFlags, boolean generatedKeys) throws SQLException {
+        if (generatedKeys) {
+            return connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        } else if (resultFlags == DEFAULT_RESULT_FLAGS) {
+            return connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        }
+        return connection.prepareStatement(sql, resultFlags, ResultSet.CONCUR_READ_ONLY);
+    }
+
+    void release(@Nonnull Key key, @Nonnull PreparedStatement ps) {
+        try {
+            ps.clearParameters();
+            ps.setMaxRows(0);
+            ps.setQueryTimeout(0);
+            ps.setFetchSize(0);
+        } catch (SQLException e) {
+            LOG.debug("Discarding statement that could not be reset", e);
+            closeQuietly(ps);
+            return;
+        }
+
+        PreparedStatement previous;
+        synchronized (statements) {
+            previous = statements.put(key, ps);
+        }
+        if (previous != null && previous != ps) {
+            // the same SQL was checked out twice, keep only one
+            closeQuietly(previous);
+        }
+    }
+
+    void clear() {
+        synchronized (statements) {
+            for (PreparedStatement ps : statements.values()) {
+                closeQuietly(ps);
+            }
+            statements.clear();
+        }
+    }
+
+    private static void closeQuietly(@Nonnull PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException e) {
+            LOG.debug("Could not close statement", e);
+        }
+    }
+
+    static final class Key {
+        private final String sql;
+        private final int resultFlags;
+        private final boolean generatedKeys;
+        private final int hash;
+
+        private Key(@Nonnull String sql, int resultFlags, boolean generatedKeys) {
+            this.sql = sql;
+            this.resultFlags = resultFlags;
+            this.generatedKeys = generatedKeys;
+            this.hash = 31 * (31 * sql.hashCode() + resultFlags) + (generatedKeys ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return resultFlags == other.resultFlags && generatedKeys == other.generatedKeys && sql.equals(other.sql);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
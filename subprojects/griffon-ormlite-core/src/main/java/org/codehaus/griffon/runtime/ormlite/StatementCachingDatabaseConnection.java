@@ -0,0 +1,150 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import com.j256.ormlite.dao.ObjectCache;
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.jdbc.JdbcCompiledStatement;
+import com.j256.ormlite.jdbc.JdbcDatabaseResults;
+import com.j256.ormlite.stmt.GenericRowMapper;
+import com.j256.ormlite.stmt.StatementBuilder;
+import com.j256.ormlite.support.CompiledStatement;
+import com.j256.ormlite.support.DatabaseConnection;
+import com.j256.ormlite.support.DatabaseResults;
+import com.j256.ormlite.support.GeneratedKeyHolder;
+import griffon.annotations.core.Nonnull;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Serves {@code compileStatement}, {@code insert}, {@code update}, {@code delete}, {@code queryForOne} and
+ * {@code queryForLong} from a {@link StatementCache} instead of preparing the SQL again on every call.
+ * Result handling mirrors {@code JdbcDatabaseConnection}.
+ * <p>
+ * Cached statements live on the driver's connection, out of sight of the pool. That is only safe while the
+ * connection is in auto-commit mode; inside a transaction statements are prepared through the pool's connection
+ * so that it can track the uncommitted work and roll it back should the connection be returned unfinished.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class StatementCachingDatabaseConnection extends DatabaseConnectionDecorator {
+    private final Connection connection;
+    private final StatementCache statementCache;
+
+    StatementCachingDatabaseConnection(@Nonnull DatabaseConnection delegate, @Nonnull Connection connection, @Nonnull StatementCache statementCache) {
+        super(delegate);
+        this.connection = requireNonNull(connection, "Argument 'connection' must not be null");
+        this.statementCache = requireNonNull(statementCache, "Argument 'statementCache' must not be null");
+    }
+
+    @Override
+    public CompiledStatement compileStatement(String statement, StatementBuilder.StatementType type, FieldType[] argFieldTypes, int resultFlags, boolean cacheStore) throws SQLException {
+        return new JdbcCompiledStatement(prepare(statement, resultFlags, false), type, cacheStore);
+    }
+
+    @Override
+    public int insert(String statement, Object[] args, FieldType[] argFieldTypes, GeneratedKeyHolder keyHolder) throws SQLException {
+        try (PreparedStatement ps = prepare(statement, DEFAULT_RESULT_FLAGS, keyHolder != null)) {
+            JdbcSupport.setArguments(ps, args, argFieldTypes);
+            int rowN = ps.executeUpdate();
+            if (keyHolder != null) {
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    ResultSetMetaData metaData = keys.getMetaData();
+                    int columns = metaData.getColumnCount();
+                    while (keys.next()) {
+                        for (int column = 1; column <= columns; column++) {
+                            Object key = keys.getObject(column);
+                            if (!(key instanceof Number)) {
+                                throw new SQLException("Generated key " + key + " of column " + metaData.getColumnName(column) + " is not a number");
+                            }
+                            keyHolder.addKey((Number) key);
+                        }
+                    }
+                }
+            }
+            return rowN;
+        }
+    }
+
+    @Override
+    public int update(String statement, Object[] args, FieldType[] argFieldTypes) throws SQLException {
+        return executeUpdate(statement, args, argFieldTypes);
+    }
+
+    @Override
+    public int delete(String statement, Object[] args, FieldType[] argFieldTypes) throws SQLException {
+        return executeUpdate(statement, args, argFieldTypes);
+    }
+
+    @Override
+    public <T> Object queryForOne(String statement, Object[] args, FieldType[] argFieldTypes, GenericRowMapper<T> rowMapper, ObjectCache objectCache) throws SQLException {
+        try (PreparedStatement ps = prepare(statement, DEFAULT_RESULT_FLAGS, false)) {
+            JdbcSupport.setArguments(ps, args, argFieldTypes);
+            try (DatabaseResults results = new JdbcDatabaseResults(ps, ps.executeQuery(), objectCache, false)) {
+                if (!results.first()) {
+                    return null;
+                }
+                T first = rowMapper.mapRow(results);
+                return results.next() ? MORE_THAN_ONE : first;
+            } catch (IOException e) {
+                throw new SQLException("Could not close results", e);
+            }
+        }
+    }
+
+    @Override
+    public long queryForLong(String statement) throws SQLException {
+        return queryForLong(statement, null, null);
+    }
+
+    @Override
+    public long queryForLong(String statement, Object[] args, FieldType[] argFieldTypes) throws SQLException {
+        try (PreparedStatement ps = prepare(statement, DEFAULT_RESULT_FLAGS, false)) {
+            JdbcSupport.setArguments(ps, args, argFieldTypes);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("No result found in queryForLong: " + statement);
+                }
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    @Nonnull
+    private PreparedStatement prepare(@Nonnull String statement, int resultFlags, boolean generatedKeys) throws SQLException {
+        if (connection.getAutoCommit()) {
+            return statementCache.prepare(statement, resultFlags, generatedKeys);
+        }
+        return StatementCache.prepareStatement(connection, statement, resultFlags, generatedKeys);
+    }
+
+    private int executeUpdate(String statement, Object[] args, FieldType[] argFieldTypes) throws SQLException {
+        try (PreparedStatement ps = prepare(statement, DEFAULT_RESULT_FLAGS, false)) {
+            JdbcSupport.setArguments(ps, args, argFieldTypes);
+            return ps.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.ormlite.MetricsRegistry;
+import org.codehaus.griffon.runtime.ormlite.monitor.StatementStat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency of every SQL statement executed on a database, grouped by shape: literals are replaced by {@code ?} so
+ * that statements differing only in their values share one entry. The raw SQL text is normalized only the first
+ * time it is seen, later executions are a map lookup plus a few atomic increments.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class StatementStatistics {
+    private static final double NANOS_PER_MILLI = 1000000d;
+    // caps the memory taken by SQL built with inline literals, the lookup table starts over once it is full
+    private static final int MAX_RAW_STATEMENTS = 10000;
+
+    private final ConcurrentMap<String, Entry> byRawSql = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Entry> byShape = new ConcurrentHashMap<>();
+    private final MetricsRegistry.Timer timer;
+    // bumped by reset, entries of an older generation are no longer reachable from the maps
+    private volatile int generation;
+
+    public StatementStatistics() {
+        this(null);
+    }
+
+    /**
+     * @param timer also receives the latency of every statement, may be {@code null}.
+     */
+    public StatementStatistics(@Nullable MetricsRegistry.Timer timer) {
+        this.timer = timer;
+    }
+
+    public void record(@Nonnull String sql, long nanos) {
+        record(entryFor(sql), nanos);
+    }
+
+    /**
+     * Looks up the entry of a statement once, so that a compiled statement can record every execution directly.
+     */
+    @Nonnull
+    Entry entryFor(@Nonnull String sql) {
+        Entry entry = byRawSql.get(sql);
+        return entry != null ? entry : resolve(sql);
+    }
+
+    /**
+     * Whether the entry is still the one {@link #entryFor} returns, i.e, no reset happened since it was looked up.
+     */
+    boolean isCurrent(@Nonnull Entry entry) {
+        return entry.generation == generation;
+    }
+
+    void record(@Nonnull Entry entry, long nanos) {
+        entry.record(nanos);
+        if (timer != null) {
+            timer.record(nanos);
+        }
+    }
+
+    @Nonnull
+    public List<StatementStat> getTopStatements(int count) {
+        List<Entry> entries = new ArrayList<>(byShape.values());
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return Long.compare(b.totalNanos.sum(), a.totalNanos.sum());
+            }
+        });
+
+        List<StatementStat> stats = new ArrayList<>();
+        long now = System.nanoTime();
+        for (Entry entry : entries.subList(0, Math.min(count, entries.size()))) {
+            long calls = entry.calls.sum();
+            double seconds = Math.max(1d, (now - entry.since) / (NANOS_PER_MILLI * 1000d));
+            stats.add(new StatementStat(entry.shape,
+                calls,
+                calls / seconds,
+                entry.totalNanos.sum() / NANOS_PER_MILLI,
+                entry.histogram.getValueAtPercentile(50d) / NANOS_PER_MILLI,
+                entry.histogram.getValueAtPercentile(99d) / NANOS_PER_MILLI,
+                entry.max.get() / NANOS_PER_MILLI));
+        }
+        return stats;
+    }
+
+    public int getStatementCount() {
+        return byShape.size();
+    }
+
+    public long getTotalCalls() {
+        long calls = 0;
+        for (Entry entry : byShape.values()) {
+            calls += entry.calls.sum();
+        }
+        return calls;
+    }
+
+    public synchronized void reset() {
+        generation++;
+        byRawSql.clear();
+        byShape.clear();
+    }
+
+    @Nonnull
+    private synchronized Entry resolve(@Nonnull String sql) {
+        String shape = normalize(sql);
+        Entry entry = byShape.get(shape);
+        if (entry == null) {
+            Entry created = new Entry(shape, generation);
+            entry = byShape.putIfAbsent(shape, created);
+            if (entry == null) {
+                entry = created;
+            }
+        }
+        if (byRawSql.size() >= MAX_RAW_STATEMENTS) {
+            // statements still in use are normalized once more and come back, one-off SQL is dropped
+            byRawSql.clear();
+        }
+        byRawSql.putIfAbsent(sql, entry);
+        return entry;
+    }
+
+    /**
+     * Replaces string and numeric literals with {@code ?} and collapses whitespace.
+     */
+    @Nonnull
+    static String normalize(@Nonnull String sql) {
+        StringBuilder sb = new StringBuilder(sql.length());
+        int length = sql.length();
+        for (int i = 0; i < length; i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                // skip to the closing quote, '' is an escaped quote
+                i++;
+                while (i < length && !(sql.charAt(i) == '\'' && (i + 1 >= length || sql.charAt(i + 1) != '\''))) {
+                    i += sql.charAt(i) == '\'' ? 2 : 1;
+                }
+                sb.append('?');
+            } else if (Character.isDigit(c) && (sb.length() == 0 || !isIdentifierPart(sb.charAt(sb.length() - 1)))) {
+                while (i + 1 < length && (Character.isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '.')) {
+                    i++;
+                }
+                sb.append('?');
+            } else if (Character.isWhitespace(c)) {
+                if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ') {
+                    sb.append(' ');
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString().trim();
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '"' || c == '`';
+    }
+
+    static final class Entry {
+        private final String shape;
+        private final int generation;
+        private final long since = System.nanoTime();
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        private Entry(@Nonnull String shape, int generation) {
+            this.shape = shape;
+            this.generation = generation;
+        }
+
+        private void record(long nanos) {
+            calls.increment();
+            totalNanos.add(nanos);
+            max.accumulate(nanos);
+            histogram.record(nanos);
+        }
+    }
+}
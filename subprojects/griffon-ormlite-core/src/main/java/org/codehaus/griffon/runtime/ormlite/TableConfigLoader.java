@@ -0,0 +1,84 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.table.DatabaseTableConfig;
+import com.j256.ormlite.table.DatabaseTableConfigLoader;
+import griffon.annotations.core.Nonnull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Registers the table configs generated at compile time with {@code DaoManager}, so that creating a DAO for those
+ * entities does not scan their annotations.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class TableConfigLoader {
+    public static final String RESOURCE = "META-INF/griffon/ormlite-table-configs.txt";
+
+    private static final Logger LOG = LoggerFactory.getLogger(TableConfigLoader.class);
+
+    private TableConfigLoader() {
+        // prevent instantiation
+    }
+
+    /**
+     * Loads every {@value #RESOURCE} visible to the given class loader.
+     *
+     * @return the number of table configs registered.
+     */
+    public static int load(@Nonnull ClassLoader classLoader) {
+        requireNonNull(classLoader, "Argument 'classLoader' must not be null");
+
+        List<DatabaseTableConfig<?>> configs = new ArrayList<>();
+        try {
+            Enumeration<URL> resources = classLoader.getResources(RESOURCE);
+            while (resources.hasMoreElements()) {
+                URL url = resources.nextElement();
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+                    configs.addAll(DatabaseTableConfigLoader.loadDatabaseConfigFromReader(reader));
+                } catch (SQLException e) {
+                    LOG.warn("Could not parse table configs from {}", url, e);
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not read table configs", e);
+        }
+
+        if (!configs.isEmpty()) {
+            DaoManager.addCachedDatabaseConfigs(configs);
+            LOG.debug("Registered {} generated table configs", configs.size());
+        }
+        return configs.size();
+    }
+}
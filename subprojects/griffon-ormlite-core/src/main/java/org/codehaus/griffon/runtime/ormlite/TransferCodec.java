@@ -0,0 +1,133 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Base64;
+
+/**
+ * Shared by {@link TransferWriter} and {@link TransferReader}. Columns are grouped by the Java representation their
+ * values are transferred as; anything that is not recognized goes through its string form.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class TransferCodec {
+    static final Charset CHARSET = StandardCharsets.UTF_8;
+    static final byte[] MAGIC = {'O', 'R', 'M', 'T'};
+    static final byte VERSION = 1;
+    static final int NULL_LENGTH = -1;
+
+    enum Kind {
+        LONG,
+        DOUBLE,
+        BOOLEAN,
+        DATE,
+        TIME,
+        TIMESTAMP,
+        BYTES,
+        DECIMAL,
+        TEXT
+    }
+
+    private TransferCodec() {
+        // prevent instantiation
+    }
+
+    @Nonnull
+    static Kind kindOf(int sqlType) {
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return Kind.LONG;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return Kind.DOUBLE;
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return Kind.BOOLEAN;
+            case Types.DATE:
+                return Kind.DATE;
+            case Types.TIME:
+                return Kind.TIME;
+            case Types.TIMESTAMP:
+                return Kind.TIMESTAMP;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return Kind.BYTES;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return Kind.DECIMAL;
+            default:
+                return Kind.TEXT;
+        }
+    }
+
+    @Nonnull
+    static Kind[] kindsOf(@Nonnull int[] sqlTypes) {
+        Kind[] kinds = new Kind[sqlTypes.length];
+        for (int i = 0; i < sqlTypes.length; i++) {
+            kinds[i] = kindOf(sqlTypes[i]);
+        }
+        return kinds;
+    }
+
+    /**
+     * Parses the CSV form written by {@link TransferWriter}.
+     */
+    @Nullable
+    static Object fromText(@Nullable String text, @Nonnull Kind kind) {
+        if (text == null) {
+            return null;
+        }
+        switch (kind) {
+            case LONG:
+                return Long.parseLong(text);
+            case DOUBLE:
+                return Double.parseDouble(text);
+            case BOOLEAN:
+                return Boolean.parseBoolean(text);
+            case DATE:
+                return Date.valueOf(text);
+            case TIME:
+                return Time.valueOf(text);
+            case TIMESTAMP:
+                return Timestamp.valueOf(text);
+            case BYTES:
+                return Base64.getDecoder().decode(text);
+            case DECIMAL:
+                return new BigDecimal(text);
+            default:
+                return text;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.ormlite.DataTransfer;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reads rows written by {@link TransferWriter} through a single direct buffer that is refilled from the channel as
+ * it is consumed.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+abstract class TransferReader implements Closeable {
+    protected final FileChannel channel;
+    protected final ByteBuffer buffer;
+    protected long row;
+    private long bytesRead;
+
+    protected TransferReader(@Nonnull FileChannel channel, int bufferSize) {
+        this.channel = requireNonNull(channel, "Argument 'channel' must not be null");
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.buffer.flip();
+    }
+
+    @Nonnull
+    static TransferReader create(@Nonnull DataTransfer.Format format, @Nonnull FileChannel channel, int bufferSize) {
+        requireNonNull(format, "Argument 'format' must not be null");
+        return format == DataTransfer.Format.CSV ? new CsvReader(channel, bufferSize) : new BinaryReader(channel, bufferSize);
+    }
+
+    /**
+     * @return the column names, in file order.
+     */
+    @Nonnull
+    abstract String[] readHeader() throws IOException;
+
+    /**
+     * Reads the next row into {@code values}.
+     *
+     * @param kinds the kind of each column, used by formats that do not record it.
+     *
+     * @return {@code false} once the end of the file has been reached.
+     */
+    abstract boolean readRow(@Nonnull Object[] values, @Nonnull TransferCodec.Kind[] kinds) throws IOException;
+
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the channel belongs to the caller
+    }
+
+    /**
+     * Moves unread bytes to the start of the buffer and reads more after them.
+     *
+     * @return {@code false} at the end of the file.
+     */
+    protected boolean fill() throws IOException {
+        buffer.compact();
+        int read;
+        try {
+            read = channel.read(buffer);
+        } finally {
+            buffer.flip();
+        }
+        if (read > 0) {
+            bytesRead += read;
+        }
+        return read >= 0;
+    }
+
+    @Nonnull
+    protected IOException malformed(@Nonnull String message) {
+        return new IOException("Malformed transfer file at row " + row + ": " + message);
+    }
+
+    private static final class CsvReader extends TransferReader {
+        private final CharsetDecoder decoder = TransferCodec.CHARSET.newDecoder();
+        private final CharBuffer chars;
+        private final StringBuilder field = new StringBuilder();
+        private final List<String> fields = new ArrayList<>();
+        private boolean endOfInput;
+        private boolean drained;
+        private int pushedBack = -1;
+
+        private CsvReader(@Nonnull FileChannel channel, int bufferSize) {
+            super(channel, bufferSize);
+            this.chars = CharBuffer.allocate(bufferSize);
+            this.chars.flip();
+        }
+
+        @Nonnull
+        @Override
+        String[] readHeader() throws IOException {
+            List<String> names = readRecord();
+            if (names == null) {
+                throw malformed("missing header");
+            }
+            return names.toArray(new String[names.size()]);
+        }
+
+        @Override
+        boolean readRow(@Nonnull Object[] values, @Nonnull TransferCodec.Kind[] kinds) throws IOException {
+            List<String> record = readRecord();
+            if (record == null) {
+                return false;
+            }
+            row++;
+            if (record.size() != values.length) {
+                throw malformed(record.size() + " fields instead of " + values.length);
+            }
+            for (int i = 0; i < values.length; i++) {
+                try {
+                    values[i] = TransferCodec.fromText(record.get(i), kinds[i]);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Malformed transfer file at row " + row + ": " + e.getMessage(), e);
+                }
+            }
+            return true;
+        }
+
+        @Nullable
+        private List<String> readRecord() throws IOException {
+            int c = read();
+            if (c == -1) {
+                return null;
+            }
+            fields.clear();
+            while (true) {
+                field.setLength(0);
+                boolean quoted = c == '"';
+                if (quoted) {
+                    while (true) {
+                        c = read();
+                        if (c == -1) {
+                            throw malformed("unterminated quoted field");
+                        }
+                        if (c == '"') {
+                            c = read();
+                            if (c != '"') {
+                                break;
+                            }
+                        }
+                        field.append((char) c);
+                    }
+                } else {
+                    while (c != ',' && c != '\r' && c != '\n' && c != -1) {
+                        field.append((char) c);
+                        c = read();
+                    }
+                }
+                // an empty unquoted field stands for NULL
+                fields.add(quoted || field.length() > 0 ? field.toString() : null);
+
+                if (c == ',') {
+                    c = read();
+                    continue;
+                }
+                if (c == '\r') {
+                    c = read();
+                    if (c != '\n' && c != -1) {
+                        pushedBack = c;
+                    }
+                } else if (c != '\n' && c != -1) {
+                    throw malformed("unexpected character after quoted field");
+                }
+                return fields;
+            }
+        }
+
+        private int read() throws IOException {
+            if (pushedBack != -1) {
+                int c = pushedBack;
+                pushedBack = -1;
+                return c;
+            }
+            if (!chars.hasRemaining() && !decode()) {
+                return -1;
+            }
+            return chars.get();
+        }
+
+        private boolean decode() throws IOException {
+            if (drained) {
+                return false;
+            }
+            chars.compact();
+            try {
+                while (true) {
+                    CoderResult result = decoder.decode(buffer, chars, endOfInput);
+                    if (result.isError()) {
+                        result.throwException();
+                    }
+                    if (chars.position() > 0 || endOfInput) {
+                        break;
+                    }
+                    endOfInput = !fill();
+                }
+                if (endOfInput && !buffer.hasRemaining()) {
+                    decoder.flush(chars);
+                    drained = true;
+                }
+            } finally {
+                chars.flip();
+            }
+            return chars.hasRemaining();
+        }
+    }
+
+    private static final class BinaryReader extends TransferReader {
+        private TransferCodec.Kind[] fileKinds;
+
+        private BinaryReader(@Nonnull FileChannel channel, int bufferSize) {
+            super(channel, bufferSize);
+        }
+
+        @Nonnull
+        @Override
+        String[] readHeader() throws IOException {
+            require(TransferCodec.MAGIC.length + 5);
+            byte[] magic = new byte[TransferCodec.MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, TransferCodec.MAGIC)) {
+                throw malformed("not a binary transfer file");
+            }
+            byte version = buffer.get();
+            if (version != TransferCodec.VERSION) {
+                throw malformed("unsupported version " + version);
+            }
+            int count = buffer.getInt();
+            String[] names = new String[count];
+            int[] sqlTypes = new int[count];
+            for (int i = 0; i < count; i++) {
+                require(8);
+                sqlTypes[i] = buffer.getInt();
+                names[i] = new String(getBytes(buffer.getInt()), TransferCodec.CHARSET);
+            }
+            fileKinds = TransferCodec.kindsOf(sqlTypes);
+            return names;
+        }
+
+        @Override
+        boolean readRow(@Nonnull Object[] values, @Nonnull TransferCodec.Kind[] kinds) throws IOException {
+            if (!buffer.hasRemaining() && !fill()) {
+                return false;
+            }
+            row++;
+            for (int i = 0; i < values.length; i++) {
+                require(4);
+                int length = buffer.getInt();
+                if (length == TransferCodec.NULL_LENGTH) {
+                    values[i] = null;
+                    continue;
+                }
+                switch (fileKinds[i]) {
+                    case LONG:
+                        require(8);
+                        values[i] = buffer.getLong();
+                        break;
+                    case DOUBLE:
+                        require(8);
+                        values[i] = buffer.getDouble();
+                        break;
+                    case BOOLEAN:
+                        require(1);
+                        values[i] = buffer.get() != 0;
+                        break;
+                    case DATE:
+                        require(8);
+                        values[i] = new Date(buffer.getLong());
+                        break;
+                    case TIME:
+                        require(8);
+                        values[i] = new Time(buffer.getLong());
+                        break;
+                    case TIMESTAMP:
+                        require(12);
+                        Timestamp timestamp = new Timestamp(buffer.getLong());
+                        timestamp.setNanos(buffer.getInt());
+                        values[i] = timestamp;
+                        break;
+                    case BYTES:
+                        values[i] = getBytes(length);
+                        break;
+                    case DECIMAL:
+                        values[i] = new BigDecimal(new String(getBytes(length), TransferCodec.CHARSET));
+                        break;
+                    default:
+                        values[i] = new String(getBytes(length), TransferCodec.CHARSET);
+                }
+            }
+            return true;
+        }
+
+        private void require(int length) throws IOException {
+            while (buffer.remaining() < length) {
+                if (!fill()) {
+                    throw new EOFException("Transfer file ends in the middle of row " + row);
+                }
+            }
+        }
+
+        @Nonnull
+        private byte[] getBytes(int length) throws IOException {
+            if (length < 0) {
+                throw malformed("negative length " + length);
+            }
+            byte[] bytes = new byte[length];
+            int offset = 0;
+            while (offset < length) {
+                if (!buffer.hasRemaining() && !fill()) {
+                    throw new EOFException("Transfer file ends in the middle of row " + row);
+                }
+                int chunk = Math.min(buffer.remaining(), length - offset);
+                buffer.get(bytes, offset, chunk);
+                offset += chunk;
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.ormlite.DataTransfer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Base64;
+import java.util.Date;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Writes rows to a file through a single direct buffer that is drained to the channel whenever it fills up. Values
+ * larger than the buffer are written to the channel as they are.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+abstract class TransferWriter implements Closeable {
+    protected final FileChannel channel;
+    protected final ByteBuffer buffer;
+    protected TransferCodec.Kind[] kinds;
+    private long bytesWritten;
+
+    protected TransferWriter(@Nonnull FileChannel channel, int bufferSize) {
+        this.channel = requireNonNull(channel, "Argument 'channel' must not be null");
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    @Nonnull
+    static TransferWriter create(@Nonnull DataTransfer.Format format, @Nonnull FileChannel channel, int bufferSize) {
+        requireNonNull(format, "Argument 'format' must not be null");
+        return format == DataTransfer.Format.CSV ? new CsvWriter(channel, bufferSize) : new BinaryWriter(channel, bufferSize);
+    }
+
+    void writeHeader(@Nonnull String[] names, @Nonnull int[] sqlTypes) throws IOException {
+        this.kinds = TransferCodec.kindsOf(sqlTypes);
+        doWriteHeader(names, sqlTypes);
+    }
+
+    protected abstract void doWriteHeader(@Nonnull String[] names, @Nonnull int[] sqlTypes) throws IOException;
+
+    /**
+     * Writes the current row of the result set, with the columns given to {@link #writeHeader}.
+     */
+    abstract void writeRow(@Nonnull ResultSet rs) throws SQLException, IOException;
+
+    long getBytesWritten() {
+        return bytesWritten + buffer.position();
+    }
+
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            bytesWritten += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    protected void ensure(int length) throws IOException {
+        if (buffer.remaining() < length) {
+            flush();
+        }
+    }
+
+    protected void put(@Nonnull byte[] bytes) throws IOException {
+        if (bytes.length <= buffer.remaining()) {
+            buffer.put(bytes);
+            return;
+        }
+        flush();
+        if (bytes.length <= buffer.capacity()) {
+            buffer.put(bytes);
+            return;
+        }
+        ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+        while (wrapped.hasRemaining()) {
+            bytesWritten += channel.write(wrapped);
+        }
+    }
+
+    private static final class CsvWriter extends TransferWriter {
+        private final CharsetEncoder encoder = TransferCodec.CHARSET.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final StringBuilder line = new StringBuilder();
+
+        private CsvWriter(@Nonnull FileChannel channel, int bufferSize) {
+            super(channel, bufferSize);
+        }
+
+        @Override
+        protected void doWriteHeader(@Nonnull String[] names, @Nonnull int[] sqlTypes) throws IOException {
+            for (int i = 0; i < names.length; i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                appendQuoted(names[i]);
+            }
+            endLine();
+        }
+
+        @Override
+        void writeRow(@Nonnull ResultSet rs) throws SQLException, IOException {
+            for (int i = 0; i < kinds.length; i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                int column = i + 1;
+                switch (kinds[i]) {
+                    case LONG:
+                        long l = rs.getLong(column);
+                        if (!rs.wasNull()) {
+                            line.append(l);
+                        }
+                        break;
+                    case DOUBLE:
+                        double d = rs.getDouble(column);
+                        if (!rs.wasNull()) {
+                            line.append(d);
+                        }
+                        break;
+                    case BOOLEAN:
+                        boolean b = rs.getBoolean(column);
+                        if (!rs.wasNull()) {
+                            line.append(b);
+                        }
+                        break;
+                    case DATE:
+                        appendPlain(rs.getDate(column));
+                        break;
+                    case TIME:
+                        appendPlain(rs.getTime(column));
+                        break;
+                    case TIMESTAMP:
+                        appendPlain(rs.getTimestamp(column));
+                        break;
+                    case BYTES:
+                        byte[] bytes = rs.getBytes(column);
+                        if (bytes != null) {
+                            appendQuoted(Base64.getEncoder().encodeToString(bytes));
+                        }
+                        break;
+                    case DECIMAL:
+                        BigDecimal decimal = rs.getBigDecimal(column);
+                        if (decimal != null) {
+                            line.append(decimal.toPlainString());
+                        }
+                        break;
+                    default:
+                        String text = rs.getString(column);
+                        if (text != null) {
+                            appendQuoted(text);
+                        }
+                }
+            }
+            endLine();
+        }
+
+        private void appendPlain(@Nullable Object value) {
+            if (value != null) {
+                line.append(value);
+            }
+        }
+
+        private void appendQuoted(@Nonnull String text) {
+            // an empty unquoted field stands for NULL
+            boolean quote = text.isEmpty();
+            for (int i = 0; i < text.length() && !quote; i++) {
+                char c = text.charAt(i);
+                quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+            }
+            if (!quote) {
+                line.append(text);
+                return;
+            }
+            line.append('"');
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '"') {
+                    line.append('"');
+                }
+                line.append(c);
+            }
+            line.append('"');
+        }
+
+        private void endLine() throws IOException {
+            line.append("\r\n");
+            CharBuffer chars = CharBuffer.wrap(line);
+            encoder.reset();
+            while (true) {
+                CoderResult result = encoder.encode(chars, buffer, true);
+                if (result.isOverflow()) {
+                    flush();
+                } else if (result.isUnderflow()) {
+                    break;
+                } else {
+                    result.throwException();
+                }
+            }
+            while (encoder.flush(buffer).isOverflow()) {
+                flush();
+            }
+            line.setLength(0);
+        }
+    }
+
+    /**
+     * Header: magic, version, column count, then type and name of each column. Rows: every value as its length,
+     * {@code -1} for {@code NULL}, followed by its bytes.
+     */
+    private static final class BinaryWriter extends TransferWriter {
+        private BinaryWriter(@Nonnull FileChannel channel, int bufferSize) {
+            super(channel, bufferSize);
+        }
+
+        @Override
+        protected void doWriteHeader(@Nonnull String[] names, @Nonnull int[] sqlTypes) throws IOException {
+            ensure(TransferCodec.MAGIC.length + 5);
+            buffer.put(TransferCodec.MAGIC).put(TransferCodec.VERSION).putInt(names.length);
+            for (int i = 0; i < names.length; i++) {
+                ensure(4);
+                buffer.putInt(sqlTypes[i]);
+                putValue(names[i].getBytes(TransferCodec.CHARSET));
+            }
+        }
+
+        @Override
+        void writeRow(@Nonnull ResultSet rs) throws SQLException, IOException {
+            for (int i = 0; i < kinds.length; i++) {
+                int column = i + 1;
+                switch (kinds[i]) {
+                    case LONG:
+                        long l = rs.getLong(column);
+                        if (rs.wasNull()) {
+                            putNull();
+                        } else {
+                            ensure(12);
+                            buffer.putInt(8).putLong(l);
+                        }
+                        break;
+                    case DOUBLE:
+                        double d = rs.getDouble(column);
+                        if (rs.wasNull()) {
+                            putNull();
+                        } else {
+                            ensure(12);
+                            buffer.putInt(8).putDouble(d);
+                        }
+                        break;
+                    case BOOLEAN:
+                        boolean b = rs.getBoolean(column);
+                        if (rs.wasNull()) {
+                            putNull();
+                        } else {
+                            ensure(5);
+                            buffer.putInt(1).put(b ? (byte) 1 : (byte) 0);
+                        }
+                        break;
+                    case DATE:
+                        putMillis(rs.getDate(column));
+                        break;
+                    case TIME:
+                        putMillis(rs.getTime(column));
+                        break;
+                    case TIMESTAMP:
+                        Timestamp timestamp = rs.getTimestamp(column);
+                        if (timestamp == null) {
+                            putNull();
+                        } else {
+                            ensure(16);
+                            buffer.putInt(12).putLong(timestamp.getTime()).putInt(timestamp.getNanos());
+                        }
+                        break;
+                    case BYTES:
+                        putValue(rs.getBytes(column));
+                        break;
+                    case DECIMAL:
+                        BigDecimal decimal = rs.getBigDecimal(column);
+                        putValue(decimal != null ? decimal.toString().getBytes(TransferCodec.CHARSET) : null);
+                        break;
+                    default:
+                        String text = rs.getString(column);
+                        putValue(text != null ? text.getBytes(TransferCodec.CHARSET) : null);
+                }
+            }
+        }
+
+        private void putNull() throws IOException {
+            ensure(4);
+            buffer.putInt(TransferCodec.NULL_LENGTH);
+        }
+
+        private void putMillis(@Nullable Date date) throws IOException {
+            if (date == null) {
+                putNull();
+            } else {
+                ensure(12);
+                buffer.putInt(8).putLong(date.getTime());
+            }
+        }
+
+        private void putValue(@Nullable byte[] bytes) throws IOException {
+            if (bytes == null) {
+                putNull();
+                return;
+            }
+            ensure(4);
+            buffer.putInt(bytes.length);
+            put(bytes);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import griffon.annotations.core.Nonnull;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs every callback on its own virtual thread (JDK 21+). A semaphore sized to the connection pool caps the
+ * number of callbacks running at once, so that waiting happens on cheap virtual threads rather than inside the pool.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class VirtualConnectionSourceExecutor extends ConnectionSourceExecutor {
+    // high bit of the state, the rest counts pending tasks so that submission and shutdown agree on a single CAS
+    private static final int SHUTDOWN = 1 << 30;
+    private static final int PENDING_MASK = SHUTDOWN - 1;
+
+    private final ThreadFactory threadFactory;
+    private final Semaphore permits;
+    private final int poolSize;
+    private final int queueSize;
+    private final AtomicInteger state = new AtomicInteger();
+    private final AtomicInteger waitingTasks = new AtomicInteger();
+    private final LongAdder completedTasks = new LongAdder();
+    private final Object terminationLock = new Object();
+    private final VirtualThreads.PinningDiagnostic pinningDiagnostic;
+
+    public VirtualConnectionSourceExecutor(@Nonnull String databaseName, int poolSize, int queueSize, long pinningThreshold) {
+        super(databaseName, poolSize, queueSize);
+        String prefix = "ormlite-" + databaseName + "-vt-";
+        this.threadFactory = VirtualThreads.newThreadFactory(prefix);
+        this.permits = new Semaphore(poolSize);
+        this.poolSize = poolSize;
+        this.queueSize = queueSize;
+        this.pinningDiagnostic = pinningThreshold > 0 ? VirtualThreads.startPinningDiagnostic(prefix, pinningThreshold) : null;
+    }
+
+    @Override
+    protected void doExecute(@Nonnull final Runnable command, final long submittedAt) {
+        int current;
+        do {
+            current = state.get();
+            if ((current & SHUTDOWN) != 0) {
+                throw new RejectedExecutionException("Executor for database '" + getDatabaseName() + "' has been shut down");
+            }
+            if ((current & PENDING_MASK) >= poolSize + queueSize) {
+                throw new RejectedExecutionException("Executor for database '" + getDatabaseName() + "' is saturated");
+            }
+        } while (!state.compareAndSet(current, current + 1));
+
+        try {
+            threadFactory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    runTask(command, submittedAt);
+                }
+            }).start();
+        } catch (RuntimeException | Error e) {
+            taskFinished();
+            throw e;
+        }
+    }
+
+    private void runTask(@Nonnull Runnable command, long submittedAt) {
+        waitingTasks.incrementAndGet();
+        permits.acquireUninterruptibly();
+        waitingTasks.decrementAndGet();
+        try {
+            taskStarted(submittedAt);
+            command.run();
+        } finally {
+            permits.release();
+            completedTasks.increment();
+            taskFinished();
+        }
+    }
+
+    private void taskFinished() {
+        if (state.decrementAndGet() == SHUTDOWN) {
+            synchronized (terminationLock) {
+                terminationLock.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void shutdown(long timeout, @Nonnull TimeUnit unit) {
+        int current;
+        do {
+            current = state.get();
+        } while ((current & SHUTDOWN) == 0 && !state.compareAndSet(current, current | SHUTDOWN));
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            synchronized (terminationLock) {
+                long remaining;
+                while ((state.get() & PENDING_MASK) > 0 && (remaining = deadline - System.nanoTime()) > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(terminationLock, remaining);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (pinningDiagnostic != null) {
+                pinningDiagnostic.close();
+            }
+        }
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return (state.get() & SHUTDOWN) != 0;
+    }
+
+    @Override
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    @Override
+    public int getActiveCount() {
+        return poolSize - permits.availablePermits();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return waitingTasks.get();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return queueSize;
+    }
+
+    @Override
+    public long getCompletedTaskCount() {
+        return completedTasks.sum();
+    }
+
+    @Override
+    public long getPinnedThreadCount() {
+        return pinningDiagnostic != null ? pinningDiagnostic.getPinnedCount() : 0L;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Access to JDK 21+ virtual threads and the JFR {@code jdk.VirtualThreadPinned} event. Every lookup is done
+ * reflectively so that this class loads and degrades gracefully on the Java 8 baseline.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+final class VirtualThreads {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreads.class);
+    private static final String EVENT_VIRTUAL_THREAD_PINNED = "jdk.VirtualThreadPinned";
+
+    private static final MethodHandle OF_VIRTUAL;
+    private static final MethodHandle NAME;
+    private static final MethodHandle FACTORY;
+
+    private static PinnedEventStream pinnedEvents;
+
+    static {
+        MethodHandle ofVirtual = null;
+        MethodHandle name = null;
+        MethodHandle factory = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Class<?> ofVirtualClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(ofVirtualClass));
+            name = lookup.findVirtual(ofVirtualClass, "name", MethodType.methodType(ofVirtualClass, String.class, long.class));
+            factory = lookup.findVirtual(builderClass, "factory", MethodType.methodType(ThreadFactory.class));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            ofVirtual = null;
+            name = null;
+            factory = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+    }
+
+    private VirtualThreads() {
+        // prevent instantiation
+    }
+
+    static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    @Nonnull
+    static ThreadFactory newThreadFactory(@Nonnull String prefix) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke();
+            builder = NAME.invoke(builder, prefix, 0L);
+            return (ThreadFactory) FACTORY.invoke(builder);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not create a virtual thread factory", t);
+        }
+    }
+
+    /**
+     * Listens to {@code jdk.VirtualThreadPinned} JFR events raised by threads whose name starts with the given prefix,
+     * i.e, callbacks that blocked inside a {@code synchronized} block (typically JDBC driver code) and pinned their
+     * carrier thread for longer than the threshold. All diagnostics share a single JFR stream, started with the first
+     * one and stopped when the last one is closed.
+     *
+     * @return a running diagnostic or {@code null} if JFR event streaming is not available
+     */
+    @Nullable
+    static synchronized PinningDiagnostic startPinningDiagnostic(@Nonnull String threadNamePrefix, long thresholdMillis) {
+        try {
+            if (pinnedEvents == null) {
+                pinnedEvents = new PinnedEventStream(thresholdMillis);
+            } else {
+                pinnedEvents.lowerThreshold(thresholdMillis);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.warn("Could not start JFR stream for {} events. Use -Djdk.tracePinnedThreads=full instead", EVENT_VIRTUAL_THREAD_PINNED, e);
+            return null;
+        }
+        PinningDiagnostic diagnostic = new PinningDiagnostic(threadNamePrefix, thresholdMillis);
+        pinnedEvents.diagnostics.add(diagnostic);
+        return diagnostic;
+    }
+
+    private static synchronized void stopPinningDiagnostic(@Nonnull PinningDiagnostic diagnostic) {
+        if (pinnedEvents != null && pinnedEvents.diagnostics.remove(diagnostic) && pinnedEvents.diagnostics.isEmpty()) {
+            pinnedEvents.close();
+            pinnedEvents = null;
+        }
+    }
+
+    static final class PinningDiagnostic implements Closeable {
+        private final String threadNamePrefix;
+        private final long thresholdMillis;
+        private final LongAdder pinnedCount = new LongAdder();
+
+        private PinningDiagnostic(@Nonnull String threadNamePrefix, long thresholdMillis) {
+            this.threadNamePrefix = threadNamePrefix;
+            this.thresholdMillis = thresholdMillis;
+        }
+
+        long getPinnedCount() {
+            return pinnedCount.sum();
+        }
+
+        @Override
+        public void close() {
+            stopPinningDiagnostic(this);
+        }
+    }
+
+    /**
+     * The process wide JFR stream. Its threshold is the lowest one asked for, diagnostics filter by their own.
+     */
+    private static final class PinnedEventStream {
+        private final List<PinningDiagnostic> diagnostics = new CopyOnWriteArrayList<>();
+        private final Object stream;
+        private final Method enable;
+        private final Method withThreshold;
+        private final Method closeMethod;
+        private final Method getThread;
+        private final Method getJavaName;
+        private final Method getDuration;
+        private long thresholdMillis;
+
+        private PinnedEventStream(long thresholdMillis) throws ReflectiveOperationException {
+            Class<?> recordingStreamClass = Class.forName("jdk.jfr.consumer.RecordingStream");
+            Class<?> eventSettingsClass = Class.forName("jdk.jfr.EventSettings");
+            Class<?> recordedEventClass = Class.forName("jdk.jfr.consumer.RecordedEvent");
+            Class<?> recordedThreadClass = Class.forName("jdk.jfr.consumer.RecordedThread");
+            getThread = recordedEventClass.getMethod("getThread");
+            getDuration = recordedEventClass.getMethod("getDuration");
+            getJavaName = recordedThreadClass.getMethod("getJavaName");
+            enable = recordingStreamClass.getMethod("enable", String.class);
+            withThreshold = eventSettingsClass.getMethod("withThreshold", Duration.class);
+            closeMethod = recordingStreamClass.getMethod("close");
+
+            stream = recordingStreamClass.getConstructor().newInstance();
+            this.thresholdMillis = thresholdMillis;
+            Object settings = enable.invoke(stream, EVENT_VIRTUAL_THREAD_PINNED);
+            withThreshold.invoke(settings, Duration.ofMillis(thresholdMillis));
+            eventSettingsClass.getMethod("withStackTrace").invoke(settings);
+            Consumer<Object> handler = new Consumer<Object>() {
+                @Override
+                public void accept(Object event) {
+                    handleEvent(event);
+                }
+            };
+            recordingStreamClass.getMethod("onEvent", String.class, Consumer.class).invoke(stream, EVENT_VIRTUAL_THREAD_PINNED, handler);
+            recordingStreamClass.getMethod("startAsync").invoke(stream);
+        }
+
+        private void lowerThreshold(long thresholdMillis) throws ReflectiveOperationException {
+            if (thresholdMillis < this.thresholdMillis) {
+                withThreshold.invoke(enable.invoke(stream, EVENT_VIRTUAL_THREAD_PINNED), Duration.ofMillis(thresholdMillis));
+                this.thresholdMillis = thresholdMillis;
+            }
+        }
+
+        private void handleEvent(@Nonnull Object event) {
+            try {
+                Object thread = getThread.invoke(event);
+                String threadName = thread != null ? (String) getJavaName.invoke(thread) : null;
+                if (threadName == null) {
+                    return;
+                }
+                Duration duration = (Duration) getDuration.invoke(event);
+                for (PinningDiagnostic diagnostic : diagnostics) {
+                    if (threadName.startsWith(diagnostic.threadNamePrefix) && duration.toMillis() >= diagnostic.thresholdMillis) {
+                        diagnostic.pinnedCount.increment();
+                        LOG.warn("Virtual thread {} pinned its carrier thread for {} ms. Avoid blocking inside synchronized code\n{}",
+                            threadName, duration.toMillis(), event);
+                    }
+                }
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                LOG.trace("Could not inspect {} event", EVENT_VIRTUAL_THREAD_PINNED, e);
+            }
+        }
+
+        private void close() {
+            try {
+                closeMethod.invoke(stream);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                LOG.trace("Could not close JFR stream", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite.monitor;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.env.Metadata;
+import org.codehaus.griffon.runtime.monitor.AbstractMBeanRegistration;
+import org.codehaus.griffon.runtime.ormlite.ConnectionLeakDetector;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class ConnectionLeakMonitor extends AbstractMBeanRegistration implements ConnectionLeakMXBean {
+    private ConnectionLeakDetector delegate;
+
+    public ConnectionLeakMonitor(@Nonnull Metadata metadata, @Nonnull ConnectionLeakDetector delegate) {
+        super(metadata);
+        this.delegate = requireNonNull(delegate, "Argument 'delegate' must not be null");
+    }
+
+    @Override
+    public ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
+        return new ObjectName("griffon.plugins.ormlite:type=ConnectionLeaks,application=" + metadata.getApplicationName() + ",name=" + delegate.getDatabaseName());
+    }
+
+    @Override
+    public void postDeregister() {
+        delegate = null;
+        super.postDeregister();
+    }
+
+    @Override
+    public long getThreshold() {
+        return delegate.getThreshold();
+    }
+
+    @Override
+    public long getReclaimAfter() {
+        return delegate.getReclaimAfter();
+    }
+
+    @Override
+    public double getSampleRate() {
+        return delegate.getSampleRate();
+    }
+
+    @Override
+    public int getTrackedConnectionCount() {
+        return delegate.getTrackedConnectionCount();
+    }
+
+    @Override
+    public long getSuspectCount() {
+        return delegate.getSuspectCount();
+    }
+
+    @Override
+    public long getReclaimedCount() {
+        return delegate.getReclaimedCount();
+    }
+
+    @Override
+    public List<LeakSuspect> listLeakSuspects() {
+        return delegate.getLeakSuspects();
+    }
+}
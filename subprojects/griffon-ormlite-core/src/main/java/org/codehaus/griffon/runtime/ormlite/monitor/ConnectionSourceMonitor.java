@@ -18,8 +18,10 @@
 package org.codehaus.griffon.runtime.ormlite.monitor;
 
 import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
 import griffon.core.env.Metadata;
 import org.codehaus.griffon.runtime.monitor.AbstractMBeanRegistration;
+import org.codehaus.griffon.runtime.ormlite.CircuitBreaker;
 import org.codehaus.griffon.runtime.ormlite.RecordingConnectionSource;
 
 import javax.management.MBeanServer;
@@ -31,12 +33,20 @@ import static java.util.Objects.requireNonNull;
  * @author Andres Almiray
  */
 public class ConnectionSourceMonitor extends AbstractMBeanRegistration implements ConnectionSourceMonitorMXBean {
+    private static final String CIRCUIT_BREAKER_DISABLED = "DISABLED";
+
     private RecordingConnectionSource delegate;
+    private CircuitBreaker circuitBreaker;
     private final String name;
 
     public ConnectionSourceMonitor(@Nonnull Metadata metadata, @Nonnull RecordingConnectionSource delegate, @Nonnull String name) {
+        this(metadata, delegate, null, name);
+    }
+
+    public ConnectionSourceMonitor(@Nonnull Metadata metadata, @Nonnull RecordingConnectionSource delegate, @Nullable CircuitBreaker circuitBreaker, @Nonnull String name) {
         super(metadata);
         this.delegate = requireNonNull(delegate, "Argument 'delegate' must not be null");
+        this.circuitBreaker = circuitBreaker;
         this.name = name;
     }
 
@@ -48,12 +58,109 @@ public class ConnectionSourceMonitor extends AbstractMBeanRegistration implement
     @Override
     public void postDeregister() {
         delegate = null;
+        circuitBreaker = null;
         super.postDeregister();
     }
 
-
     @Override
     public int getConnectionCount() {
         return delegate.getConnectionCount();
     }
+
+    @Override
+    public long getPeakConnectionCount() {
+        return delegate.getConnectionStatistics().getPeakConnectionCount();
+    }
+
+    @Override
+    public long getReadOnlyAcquisitions() {
+        return delegate.getConnectionStatistics().getReadOnlyAcquisitions();
+    }
+
+    @Override
+    public long getReadWriteAcquisitions() {
+        return delegate.getConnectionStatistics().getReadWriteAcquisitions();
+    }
+
+    @Override
+    public long getSpecialAcquisitions() {
+        return delegate.getConnectionStatistics().getSpecialAcquisitions();
+    }
+
+    @Override
+    public long getTotalAcquisitions() {
+        return delegate.getConnectionStatistics().getTotalAcquisitions();
+    }
+
+    @Override
+    public long getFailedAcquisitions() {
+        return delegate.getConnectionStatistics().getFailedAcquisitions();
+    }
+
+    @Override
+    public long getReleases() {
+        return delegate.getConnectionStatistics().getReleases();
+    }
+
+    @Override
+    public double getAcquisitionRate() {
+        return delegate.getConnectionStatistics().getAcquisitionRate();
+    }
+
+    @Override
+    public double getReleaseRate() {
+        return delegate.getConnectionStatistics().getReleaseRate();
+    }
+
+    @Override
+    public double getAcquireWaitTimeP50() {
+        return delegate.getConnectionStatistics().getAcquireWaitTime(50d);
+    }
+
+    @Override
+    public double getAcquireWaitTimeP99() {
+        return delegate.getConnectionStatistics().getAcquireWaitTime(99d);
+    }
+
+    @Override
+    public double getMaxAcquireWaitTime() {
+        return delegate.getConnectionStatistics().getMaxAcquireWaitTime();
+    }
+
+    @Override
+    public void resetStatistics() {
+        delegate.getConnectionStatistics().reset();
+    }
+
+    @Override
+    public String getCircuitBreakerState() {
+        return circuitBreaker != null ? circuitBreaker.getState().name() : CIRCUIT_BREAKER_DISABLED;
+    }
+
+    @Override
+    public double getCircuitBreakerFailureRate() {
+        return circuitBreaker != null ? circuitBreaker.getFailureRate() : 0d;
+    }
+
+    @Override
+    public double getCircuitBreakerSlowCallRate() {
+        return circuitBreaker != null ? circuitBreaker.getSlowCallRate() : 0d;
+    }
+
+    @Override
+    public long getCircuitBreakerRejectedCalls() {
+        return circuitBreaker != null ? circuitBreaker.getRejectedCalls() : 0L;
+    }
+
+    @Override
+    public long getCircuitBreakerFailedProbes() {
+        return circuitBreaker != null ? circuitBreaker.getFailedProbes() : 0L;
+    }
+
+    @Override
+    public void resetCircuitBreaker() {
+        if (circuitBreaker != null) {
+            circuitBreaker.reset();
+        }
+    }
 }
@@ -22,4 +22,45 @@ package org.codehaus.griffon.runtime.ormlite.monitor;
  */
 public interface ConnectionSourceMonitorMXBean {
     int getConnectionCount();
+
+    long getPeakConnectionCount();
+
+    long getReadOnlyAcquisitions();
+
+    long getReadWriteAcquisitions();
+
+    long getSpecialAcquisitions();
+
+    long getTotalAcquisitions();
+
+    long getFailedAcquisitions();
+
+    long getReleases();
+
+    double getAcquisitionRate();
+
+    double getReleaseRate();
+
+    double getAcquireWaitTimeP50();
+
+    double getAcquireWaitTimeP99();
+
+    double getMaxAcquireWaitTime();
+
+    void resetStatistics();
+
+    /**
+     * @return the state of the circuit breaker, {@code DISABLED} when there is none.
+     */
+    String getCircuitBreakerState();
+
+    double getCircuitBreakerFailureRate();
+
+    double getCircuitBreakerSlowCallRate();
+
+    long getCircuitBreakerRejectedCalls();
+
+    long getCircuitBreakerFailedProbes();
+
+    void resetCircuitBreaker();
 }
@@ -0,0 +1,79 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite.monitor;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.env.Metadata;
+import org.codehaus.griffon.runtime.monitor.AbstractMBeanRegistration;
+import org.codehaus.griffon.runtime.ormlite.ReplicaRoutingConnectionSource;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class ConnectionSourceRouteMonitor extends AbstractMBeanRegistration implements ConnectionSourceRouteMonitorMXBean {
+    private ReplicaRoutingConnectionSource.Route delegate;
+    private final String name;
+
+    public ConnectionSourceRouteMonitor(@Nonnull Metadata metadata, @Nonnull ReplicaRoutingConnectionSource.Route delegate, @Nonnull String name) {
+        super(metadata);
+        this.delegate = requireNonNull(delegate, "Argument 'delegate' must not be null");
+        this.name = name;
+    }
+
+    @Override
+    public ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
+        return new ObjectName("griffon.plugins.ormlite:type=ConnectionSourceRoute,application=" + metadata.getApplicationName() + ",name=" + this.name + ",target=" + delegate.getName());
+    }
+
+    @Override
+    public void postDeregister() {
+        delegate = null;
+        super.postDeregister();
+    }
+
+    @Override
+    public String getTarget() {
+        return delegate.getName();
+    }
+
+    @Override
+    public boolean isPrimary() {
+        return delegate.isPrimary();
+    }
+
+    @Override
+    public int getOutstandingConnections() {
+        return delegate.getOutstandingConnections();
+    }
+
+    @Override
+    public long getRoutedConnections() {
+        return delegate.getRoutedConnections();
+    }
+
+    @Override
+    public long getFailedConnections() {
+        return delegate.getFailedConnections();
+    }
+}
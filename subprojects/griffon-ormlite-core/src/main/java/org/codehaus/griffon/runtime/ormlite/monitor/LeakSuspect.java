@@ -0,0 +1,58 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite.monitor;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A connection held longer than the leak detection threshold. The stack trace is empty unless the acquisition was
+ * sampled.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class LeakSuspect {
+    private final long acquiredAt;
+    private final long age;
+    private final String threadName;
+    private final String stackTrace;
+
+    @ConstructorProperties({"acquiredAt", "age", "threadName", "stackTrace"})
+    public LeakSuspect(long acquiredAt, long age, String threadName, String stackTrace) {
+        this.acquiredAt = acquiredAt;
+        this.age = age;
+        this.threadName = threadName;
+        this.stackTrace = stackTrace;
+    }
+
+    public long getAcquiredAt() {
+        return acquiredAt;
+    }
+
+    public long getAge() {
+        return age;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    public String getStackTrace() {
+        return stackTrace;
+    }
+}
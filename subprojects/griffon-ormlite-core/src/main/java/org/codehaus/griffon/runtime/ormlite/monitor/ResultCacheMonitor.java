@@ -0,0 +1,112 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite.monitor;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.env.Metadata;
+import org.codehaus.griffon.runtime.monitor.AbstractMBeanRegistration;
+import org.codehaus.griffon.runtime.ormlite.QueryResultCache;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class ResultCacheMonitor extends AbstractMBeanRegistration implements ResultCacheMXBean {
+    private QueryResultCache delegate;
+
+    public ResultCacheMonitor(@Nonnull Metadata metadata, @Nonnull QueryResultCache delegate) {
+        super(metadata);
+        this.delegate = requireNonNull(delegate, "Argument 'delegate' must not be null");
+    }
+
+    @Override
+    public ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
+        return new ObjectName("griffon.plugins.ormlite:type=ResultCache,application=" + metadata.getApplicationName() + ",name=" + delegate.getDatabaseName());
+    }
+
+    @Override
+    public void postDeregister() {
+        delegate = null;
+        super.postDeregister();
+    }
+
+    @Override
+    public long getMaxMemory() {
+        return delegate.getMaxMemory();
+    }
+
+    @Override
+    public long getMemoryUsed() {
+        return delegate.getMemoryUsed();
+    }
+
+    @Override
+    public int getMaxRows() {
+        return delegate.getMaxRows();
+    }
+
+    @Override
+    public long getTtl() {
+        return delegate.getTtl();
+    }
+
+    @Override
+    public int getSize() {
+        return delegate.getSize();
+    }
+
+    @Override
+    public long getHits() {
+        return delegate.getHits();
+    }
+
+    @Override
+    public long getMisses() {
+        return delegate.getMisses();
+    }
+
+    @Override
+    public double getHitRatio() {
+        return delegate.getHitRatio();
+    }
+
+    @Override
+    public long getInvalidations() {
+        return delegate.getInvalidations();
+    }
+
+    @Override
+    public long getEvictions() {
+        return delegate.getEvictions();
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+
+    @Override
+    public void resetStatistics() {
+        delegate.resetStatistics();
+    }
+}
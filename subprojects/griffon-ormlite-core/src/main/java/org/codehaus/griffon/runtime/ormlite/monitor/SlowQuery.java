@@ -0,0 +1,69 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite.monitor;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A statement that exceeded the slow query threshold. The elapsed time is in milliseconds.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class SlowQuery {
+    private final long timestamp;
+    private final String databaseName;
+    private final String sql;
+    private final String args;
+    private final double elapsed;
+    private final String threadName;
+
+    @ConstructorProperties({"timestamp", "databaseName", "sql", "args", "elapsed", "threadName"})
+    public SlowQuery(long timestamp, String databaseName, String sql, String args, double elapsed, String threadName) {
+        this.timestamp = timestamp;
+        this.databaseName = databaseName;
+        this.sql = sql;
+        this.args = args;
+        this.elapsed = elapsed;
+        this.threadName = threadName;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public String getArgs() {
+        return args;
+    }
+
+    public double getElapsed() {
+        return elapsed;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+}
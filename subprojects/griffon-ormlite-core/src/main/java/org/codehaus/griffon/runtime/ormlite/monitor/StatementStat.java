@@ -0,0 +1,75 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.ormlite.monitor;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Latency figures of one SQL shape. Durations are in milliseconds.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class StatementStat {
+    private final String sql;
+    private final long calls;
+    private final double callsPerSecond;
+    private final double totalTime;
+    private final double p50;
+    private final double p99;
+    private final double max;
+
+    @ConstructorProperties({"sql", "calls", "callsPerSecond", "totalTime", "p50", "p99", "max"})
+    public StatementStat(String sql, long calls, double callsPerSecond, double totalTime, double p50, double p99, double max) {
+        this.sql = sql;
+        this.calls = calls;
+        this.callsPerSecond = callsPerSecond;
+        this.totalTime = totalTime;
+        this.p50 = p50;
+        this.p99 = p99;
+        this.max = max;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public double getCallsPerSecond() {
+        return callsPerSecond;
+    }
+
+    public double getTotalTime() {
+        return totalTime;
+    }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    public double getMax() {
+        return max;
+    }
+}
@@ -19,26 +19,70 @@ package griffon.plugins.ormlite
 
 import com.j256.ormlite.dao.Dao
 import com.j256.ormlite.dao.DaoManager
+import com.j256.ormlite.stmt.QueryBuilder
 import com.j256.ormlite.support.ConnectionSource
 import com.j256.ormlite.table.TableUtils
 import griffon.annotations.inject.BindTo
+import griffon.core.Configuration
 import griffon.core.GriffonApplication
+import griffon.core.events.StartupStartEvent
+import griffon.plugins.datasource.DataSourceStorage
 import griffon.plugins.datasource.events.DataSourceConnectEndEvent
 import griffon.plugins.datasource.events.DataSourceConnectStartEvent
 import griffon.plugins.datasource.events.DataSourceDisconnectEndEvent
 import griffon.plugins.datasource.events.DataSourceDisconnectStartEvent
+import griffon.plugins.ormlite.events.OrmliteCircuitBreakerStateChangeEvent
 import griffon.plugins.ormlite.events.OrmliteConnectEndEvent
 import griffon.plugins.ormlite.events.OrmliteConnectStartEvent
 import griffon.plugins.ormlite.events.OrmliteDisconnectEndEvent
 import griffon.plugins.ormlite.events.OrmliteDisconnectStartEvent
+import griffon.plugins.ormlite.events.OrmliteTransferEndEvent
+import griffon.plugins.ormlite.events.OrmliteTransferStartEvent
+import griffon.plugins.ormlite.exceptions.CircuitBreakerOpenException
 import griffon.plugins.ormlite.exceptions.RuntimeSQLException
 import griffon.test.core.GriffonUnitRule
+import org.codehaus.griffon.runtime.ormlite.CircuitBreaker
+import org.codehaus.griffon.runtime.ormlite.ConnectionLeakDetector
+import org.codehaus.griffon.runtime.ormlite.ConnectionSourceDecorator
+import org.codehaus.griffon.runtime.ormlite.ConnectionStatistics
+import org.codehaus.griffon.runtime.ormlite.DefaultMetricsRegistry
+import org.codehaus.griffon.runtime.ormlite.EntityObjectCache
+import org.codehaus.griffon.runtime.ormlite.GuardedConnectionSource
+import org.codehaus.griffon.runtime.ormlite.JsonLinesMetricsExporter
+import org.codehaus.griffon.runtime.ormlite.LinkedDatabaseConnection
+import org.codehaus.griffon.runtime.ormlite.OrmliteAddon
+import org.codehaus.griffon.runtime.ormlite.QueryResultCache
+import org.codehaus.griffon.runtime.ormlite.ReplicaRoutingConnectionSource
+import org.codehaus.griffon.runtime.ormlite.SlowQueryLog
+import org.codehaus.griffon.runtime.ormlite.StatementCacheStatistics
+import org.codehaus.griffon.runtime.ormlite.StatementStatistics
+import org.codehaus.griffon.runtime.ormlite.monitor.StatementStat
 import org.junit.Rule
+import org.reactivestreams.Subscriber
+import org.reactivestreams.Subscription
 import spock.lang.Specification
 import spock.lang.Unroll
+import spock.util.concurrent.PollingConditions
 
 import javax.application.event.EventHandler
 import javax.inject.Inject
+import java.nio.file.Files
+import java.nio.file.Path
+import java.sql.SQLException
+import java.sql.SQLTransactionRollbackException
+import java.sql.SQLTransientConnectionException
+import java.util.concurrent.Callable
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.IntBinaryOperator
+import java.util.stream.Collectors
+import java.util.stream.Stream
 
 @Unroll
 class OrmliteSpec extends Specification {
@@ -55,6 +99,18 @@ class OrmliteSpec extends Specification {
     @Inject
     private GriffonApplication application
 
+    @Inject
+    private DaoRegistry daoRegistry
+
+    @Inject
+    private MetricsRegistry metricsRegistry
+
+    @Inject
+    private DataTransfer dataTransfer
+
+    @Inject
+    private DataSourceStorage dataSourceStorage
+
     void 'Open and close default connectionSource'() {
         given:
         List eventNames = [
@@ -77,6 +133,8 @@ class OrmliteSpec extends Specification {
         then:
         testEventHandler.events.size() == 8
         testEventHandler.events == eventNames
+        testEventHandler.durations.size() == 1
+        testEventHandler.durations[0] >= 0
     }
 
     void 'Connect to default connectionSource'() {
@@ -178,12 +236,883 @@ class OrmliteSpec extends Specification {
         thrown(RuntimeSQLException)
     }
 
+    void 'Concurrent first access creates the connectionSource only once'() {
+        given:
+        int threads = 64
+        CountDownLatch start = new CountDownLatch(1)
+        ExecutorService executor = Executors.newFixedThreadPool(threads)
+
+        when:
+        List<Future<ConnectionSource>> futures = (1..threads).collect {
+            executor.submit({
+                start.await()
+                connectionSourceHandler.withConnectionSource('people') { String databaseName, ConnectionSource connectionSource ->
+                    connectionSource
+                }
+            } as Callable<ConnectionSource>)
+        }
+        start.countDown()
+        Set<ConnectionSource> connectionSources = futures.collect { it.get() } as Set
+        executor.shutdown()
+
+        then:
+        bootstrap.initCount.get() == 1
+        connectionSources.size() == 1
+    }
+
+    void 'Transaction commits all statements at once'() {
+        when:
+        connectionSourceHandler.withTransaction('people') { String databaseName, ConnectionSource connectionSource ->
+            TableUtils.createTableIfNotExists(connectionSource, Person)
+            Dao<Person, Integer> peopleDao = DaoManager.createDao(connectionSource, Person)
+            peopleDao.create(new Person(id: 101, name: 'Danno', lastname: 'Ferrin'))
+            peopleDao.create(new Person(id: 102, name: 'Andres', lastname: 'Almiray'))
+        }
+
+        List ids = connectionSourceHandler.withConnectionSource('people') { String databaseName, ConnectionSource connectionSource ->
+            Dao<Person, Integer> peopleDao = DaoManager.createDao(connectionSource, Person)
+            peopleDao.queryForAll()*.id.findAll { it > 100 }
+        }
+
+        then:
+        ids == [101, 102]
+    }
+
+    void 'Transaction is rolled back when the callback fails'() {
+        given:
+        connectionSourceHandler.withConnectionSource('people') { String databaseName, ConnectionSource connectionSource ->
+            TableUtils.createTableIfNotExists(connectionSource, Person)
+        }
+
+        when:
+        connectionSourceHandler.withTransaction('people') { String databaseName, ConnectionSource connectionSource ->
+            Dao<Person, Integer> peopleDao = DaoManager.createDao(connectionSource, Person)
+            peopleDao.create(new Person(id: 201, name: 'Danno', lastname: 'Ferrin'))
+            throw new SQLException('boom')
+        }
+
+        then:
+        thrown(RuntimeSQLException)
+        connectionSourceHandler.withConnectionSource('people') { String databaseName, ConnectionSource connectionSource ->
+            DaoManager.createDao(connectionSource, Person).queryForId(201)
+        } == null
+    }
+
+    void 'Nested transaction rolls back to its save point only'() {
+        when:
+        connectionSourceHandler.withTransaction('people') { String databaseName, ConnectionSource connectionSource ->
+            TableUtils.createTableIfNotExists(connectionSource, Person)
+            Dao<Person, Integer> peopleDao = DaoManager.createDao(connectionSource, Person)
+            peopleDao.create(new Person(id: 301, name: 'Danno', lastname: 'Ferrin'))
+            try {
+                connectionSourceHandler.withTransaction('people') { String n, ConnectionSource cs ->
+                    peopleDao.create(new Person(id: 302, name: 'Andres', lastname: 'Almiray'))
+                    throw new SQLException('boom')
+                }
+            } catch (RuntimeSQLException ignored) {
+                // expected
+            }
+        }
+
+        List ids = connectionSourceHandler.withConnectionSource('people') { String databaseName, ConnectionSource connectionSource ->
+            Dao<Person, Integer> peopleDao = DaoManager.createDao(connectionSource, Person)
+            peopleDao.queryForAll()*.id.findAll { it > 300 }
+        }
+
+        then:
+        ids == [301]
+    }
+
+    void 'Batch insert writes every entity in chunks'() {
+        given:
+        connectionSourceHandler.withConnectionSource('people') { String databaseName, ConnectionSource connectionSource ->
+            TableUtils.createTableIfNotExists(connectionSource, Person)
+        }
+        List<Person> people = (401..425).collect { new Person(id: it, name: 'name' + it, lastname: 'lastname' + it) }
+
+        when:
+        int count = connectionSourceHandler.withBatch('people', Person, people, 10)
+
+        List ids = connectionSourceHandler.withConnectionSource('people') { String databaseName, ConnectionSource connectionSource ->
+            Dao<Person, Integer> peopleDao = DaoManager.createDao(connectionSource, Person)
+            peopleDao.queryForAll()*.id.findAll { it > 400 }
+        }
+
+        then:
+        count == 25
+        ids == (401..425).toList()
+    }
+
+    void 'Batch inserts write generated keys back to the entities'() {
+        given:
+        connectionSourceHandler.withConnectionSource('people') { String databaseName, ConnectionSource connectionSource ->
+            TableUtils.createTableIfNotExists(connectionSource, Note)
+        }
+        List<Note> notes = (1..15).collect { new Note(text: 'note' + it) }
+
+        when:
+        int count = connectionSourceHandler.withBatch('people', Note, notes, 4)
+        Map stored = connectionSourceHandler.withConnectionSource('people') { String databaseName, ConnectionSource connectionSource ->
+            DaoManager.createDao(connectionSource, Note).queryForAll().collectEntries { [(it.id): it.text] }
+        }
+
+        then:
+        count == 15
+        notes*.id.every { it > 0 }
+        notes*.id.unique().size() == 15
+        notes.collectEntries { [(it.id): it.text] } == stored.subMap(notes*.id)
+    }
+
+    void 'Batch inserts invalidate cached query results of the table'() {
+        given:
+        Closure<Map> countPeople = {
+            connectionSourceHandler.withConnectionSource('cached') { String databaseName, ConnectionSource connectionSource ->
+                TableUtils.createTableIfNotExists(connectionSource, Person)
+                QueryResultCache cache = connectionSource.delegate.resultCache
+                long hits = cache.hits
+                long count = daoRegistry.getDao(databaseName, Person).countOf()
+                [count: count, hit: cache.hits > hits]
+            }
+        }
+        long before = countPeople().count
+        Map cached = countPeople()
+
+        when:
+        connectionSourceHandler.withBatch('cached', Person, (801..805).collect { new Person(id: it, name: 'Name' + it, lastname: 'Lastname' + it) }, 2)
+        Map after = countPeople()
+
+        then:
+        cached.hit
+        cached.count == before
+        !after.hit
+        after.count == before + 5
+    }
+
+    void 'Reads inside a transaction stay on the primary'() {
+        given:
+        connectionSourceHandler.withConnectionSource('routed') { String databaseName, ConnectionSource connectionSource ->
+            TableUtils.createTableIfNotExists(connectionSource, Person)
+        }
+
+        when:
+        Person person = connectionSourceHandler.withTransaction('routed') { String databaseName, ConnectionSource connectionSource ->
+            Dao<Person, Integer> peopleDao = DaoManager.createDao(connectionSource, Person)
+            peopleDao.create(new Person(id: 501, name: 'Danno', lastname: 'Ferrin'))
+            peopleDao.queryForId(501)
+        }
+
+        then:
+        person.name == 'Danno'
+    }
+
+    void 'Read-only connections are routed to replicas'() {
+        when:
+        Map routes = connectionSourceHandler.withConnectionSource('routed') { String databaseName, ConnectionSource connectionSource ->
+            ReplicaRoutingConnectionSource router = ConnectionSourceDecorator.find(connectionSource, ReplicaRoutingConnectionSource)
+            def connection = connectionSource.getReadOnlyConnection('people')
+            connectionSource.releaseConnection(connection)
+            router.routes.collectEntries { [(it.name): it.routedConnections] }
+        }
+
+        then:
+        routes.routed_replica > 0
+    }
+
+    void 'Closing a database keeps the DataSource of a replica that is a database of its own'() {
+        given:
+        connectionSourceHandler.withConnectionSource('routed') { String databaseName, ConnectionSource connectionSource ->
+            TableUtils.createTableIfNotExists(connectionSource, Person)
+        }
+
+        when:
+        connectionSourceHandler.closeConnectionSource('routed')
+        long count = connectionSourceHandler.withConnectionSource('routed_replica') { String databaseName, ConnectionSource connectionSource ->
+            DaoManager.createDao(connectionSource, Person).countOf()
+        }
+
+        then:
+        count >= 0
+    }
+
+    void 'Shard keys are routed consistently'() {
+        when:
+        List names = (1..20).collect { key ->
+            connectionSourceHandler.withShard(key) { String databaseName, ConnectionSource connectionSource -> databaseName }
+        }
+        List again = (1..20).collect { key ->
+            connectionSourceHandler.withShard(key) { String databaseName, ConnectionSource connectionSource -> databaseName }
+        }
+
+        then:
+        names == again
+        names.toSet() == ['internal', 'people'] as Set
+    }
+
+    void 'Callback runs on every shard'() {
+        when:
+        Map results = connectionSourceHandler.withEachShard { String databaseName, ConnectionSource connectionSource ->
+            databaseName.toUpperCase()
+        }
+
+        then:
+        results == [internal: 'INTERNAL', people: 'PEOPLE']
+    }
+
+    void 'Databases marked connect_on_startup are connected in parallel and the failure of one is rethrown'() {
+        given:
+        List<String> connected = Collections.synchronizedList([])
+        OrmliteAddon addon = startupAddon(5000L, [internal: true, people: true, cached: false, broken: true], connected)
+
+        when:
+        addon.handleStartupStartEvent(new StartupStartEvent())
+
+        then:
+        RuntimeSQLException e = thrown()
+        e.cause.SQLState == '08001'
+        connected.sort() == ['internal', 'people']
+    }
+
+    void 'Startup stops waiting for a slow database after startup_timeout'() {
+        given:
+        List<String> connected = Collections.synchronizedList([])
+        OrmliteAddon addon = startupAddon(100L, [internal: true, slow: true], connected)
+
+        when:
+        long start = System.nanoTime()
+        addon.handleStartupStartEvent(new StartupStartEvent())
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+
+        then:
+        elapsed < 1500
+        connected == ['internal']
+    }
+
+    private OrmliteAddon startupAddon(long startupTimeout, Map<String, Boolean> connectOnStartup, List<String> connected) {
+        OrmliteAddon addon = new OrmliteAddon()
+        addon.@configuration = Stub(Configuration) {
+            getAsLong('startup_timeout', _) >> startupTimeout
+        }
+        addon.@connectionSourceFactory = Stub(ConnectionSourceFactory) {
+            getConnectionSourceNames() >> new LinkedHashSet<String>(connectOnStartup.keySet())
+            getConfigurationFor(_ as String) >> { String databaseName -> [connect_on_startup: connectOnStartup[databaseName]] }
+        }
+        addon.@connectionSourceHandler = Stub(ConnectionSourceHandler) {
+            withConnectionSource(_ as String, _ as ConnectionSourceCallback) >> { String databaseName, ConnectionSourceCallback callback ->
+                if (databaseName == 'broken') {
+                    throw new RuntimeSQLException(databaseName, new SQLException('Connection refused', '08001'))
+                }
+                if (databaseName == 'slow') {
+                    Thread.sleep(2000)
+                    return null
+                }
+                // real databases check out a connection through the callback of the addon
+                connectionSourceHandler.withConnectionSource(databaseName, callback)
+                connected << databaseName
+                null
+            }
+        }
+        addon
+    }
+
+    void 'Configured entities are registered when connecting'() {
+        when:
+        boolean same = connectionSourceHandler.withConnectionSource('people') { String databaseName, ConnectionSource connectionSource ->
+            daoRegistry.getDao(databaseName, Person).is(DaoManager.lookupDao(connectionSource, Person))
+        }
+
+        then:
+        same
+    }
+
+    void 'A database that fails to connect gives back its DataSource'() {
+        when:
+        connectionSourceHandler.withConnectionSource('misconfigured') { String databaseName, ConnectionSource connectionSource -> true }
+
+        then:
+        thrown(IllegalArgumentException)
+        dataSourceStorage.get('misconfigured') == null
+
+        when: 'connecting again fails the same way, not on MBeans left behind'
+        connectionSourceHandler.withConnectionSource('misconfigured') { String databaseName, ConnectionSource connectionSource -> true }
+
+        then:
+        thrown(IllegalArgumentException)
+        dataSourceStorage.get('misconfigured') == null
+    }
+
+    void 'Callbacks passed to withDaos receive the registry'() {
+        when:
+        boolean same = connectionSourceHandler.withDaos('people') { String databaseName, ConnectionSource connectionSource, DaoRegistry daos ->
+            daos.getDao(databaseName, Person).is(daoRegistry.getDao(databaseName, Person))
+        }
+
+        then:
+        same
+    }
+
+    void 'Repeated queries reuse cached statements'() {
+        when:
+        StatementCacheStatistics statistics = connectionSourceHandler.withConnectionSource('people') { String databaseName, ConnectionSource connectionSource ->
+            TableUtils.createTableIfNotExists(connectionSource, Person)
+            Dao<Person, Integer> peopleDao = daoRegistry.getDao(databaseName, Person)
+            peopleDao.createIfNotExists(new Person(id: 601, name: 'Danno', lastname: 'Ferrin'))
+            10.times { assert peopleDao.queryForId(601).name == 'Danno' }
+            connectionSource.delegate.statementCacheStatistics
+        }
+
+        then:
+        statistics.hits >= 9
+    }
+
+    void 'Entities are served from the object cache until deleted'() {
+        when:
+        Map result = connectionSourceHandler.withConnectionSource('cached') { String databaseName, ConnectionSource connectionSource ->
+            TableUtils.createTableIfNotExists(connectionSource, Person)
+            Dao<Person, Integer> peopleDao = daoRegistry.getDao(databaseName, Person)
+            EntityObjectCache cache = (EntityObjectCache) peopleDao.objectCache
+            peopleDao.createIfNotExists(new Person(id: 701, name: 'Kim', lastname: 'Hall'))
+            cache.clearAll()
+            Person first = peopleDao.queryForId(701)
+            Person second = peopleDao.queryForId(701)
+            peopleDao.deleteById(701)
+            [same: first.is(second), hits: cache.hits, misses: cache.misses, size: cache.sizeAll(), deleted: peopleDao.queryForId(701)]
+        }
+
+        then:
+        result.same
+        result.hits == 1
+        result.misses == 1
+        result.size == 0
+        result.deleted == null
+    }
+
+    void 'Expired entities are dropped from the object cache as it is used'() {
+        given:
+        EntityObjectCache cache = new EntityObjectCache('cached', Person, 64, 50, EntityObjectCache.Eviction.LRU)
+        (1..10).each { cache.put(Person, it, new Person(id: it)) }
+
+        when:
+        Thread.sleep(100)
+        // each lookup sweeps a couple of slots, enough of them cover the whole table
+        200.times { cache.get(Person, 1000 + it) }
+
+        then:
+        cache.sizeAll() == 0
+    }
+
+    void 'Query results are cached until a table they read is written'() {
+        when:
+        Map result = connectionSourceHandler.withConnectionSource('cached') { String databaseName, ConnectionSource connectionSource ->
+            TableUtils.createTableIfNotExists(connectionSource, Person)
+            Dao<Person, Integer> peopleDao = daoRegistry.getDao(databaseName, Person)
+            QueryResultCache cache = connectionSource.delegate.resultCache
+            long before = peopleDao.countOf()
+            long hits = cache.hits
+            peopleDao.countOf()
+            long cachedHits = cache.hits - hits
+            peopleDao.create(new Person(id: 801, name: 'Ada', lastname: 'Byron'))
+            [before: before, cachedHits: cachedHits, after: peopleDao.countOf(), invalidations: cache.invalidations]
+        }
+
+        then:
+        result.cachedHits == 1
+        result.after == result.before + 1
+        result.invalidations >= 1
+    }
+
+    void 'Query results can be streamed'() {
+        given:
+        ConnectionSource connectionSource = connectionSourceHandler.withConnectionSource('people') { String databaseName, ConnectionSource connectionSource ->
+            TableUtils.createTableIfNotExists(connectionSource, Person)
+            Dao<Person, Integer> peopleDao = daoRegistry.getDao(databaseName, Person)
+            (901..950).each { peopleDao.createIfNotExists(new Person(id: it, name: 'Name' + it, lastname: 'Stream')) }
+            connectionSource
+        }
+        int before = connectionSource.delegate.connectionCount
+
+        when:
+        Stream<Person> stream = connectionSourceHandler.streamQuery('people', Person) { qb ->
+            qb.where().eq('lastname', 'Stream')
+            qb.orderBy('id', true)
+        }
+        int held = connectionSource.delegate.connectionCount
+        List<String> names = stream.map { it.name }.collect(Collectors.toList())
+        stream.close()
+
+        then:
+        names.size() == 50
+        names[0] == 'Name901'
+        held == before + 1
+        connectionSource.delegate.connectionCount == before
+        // the only statement with an ORDER BY, prepared with a fetch size below the decorators
+        connectionSource.delegate.statementStatistics.getTopStatements(100).any { it.sql.contains('ORDER BY') }
+    }
+
+    void 'Published query results follow the demand of the subscriber'() {
+        given:
+        ConnectionSource connectionSource = connectionSourceHandler.withConnectionSource('people') { String databaseName, ConnectionSource connectionSource ->
+            TableUtils.createTableIfNotExists(connectionSource, Person)
+            Dao<Person, Integer> peopleDao = daoRegistry.getDao(databaseName, Person)
+            (951..980).each { peopleDao.createIfNotExists(new Person(id: it, name: 'Name' + it, lastname: 'Publish')) }
+            connectionSource
+        }
+        int before = connectionSource.delegate.connectionCount
+        List<String> names = Collections.synchronizedList([])
+        CountDownLatch received = new CountDownLatch(10)
+        Subscription subscription = null
+
+        when:
+        connectionSourceHandler.publishQuery('people', Person) { qb ->
+            qb.where().eq('lastname', 'Publish')
+            qb.orderBy('id', true)
+        }.subscribe(new Subscriber<Person>() {
+            void onSubscribe(Subscription s) { subscription = s; s.request(10) }
+            void onNext(Person person) { names << person.name; received.countDown() }
+            void onError(Throwable t) {}
+            void onComplete() {}
+        })
+        received.await(5, TimeUnit.SECONDS)
+        Thread.sleep(100)
+        int held = connectionSource.delegate.connectionCount
+        subscription.cancel()
+
+        then:
+        names.size() == 10
+        names[0] == 'Name951'
+        held == before + 1
+        new PollingConditions(timeout: 5).eventually {
+            assert connectionSource.delegate.connectionCount == before
+        }
+    }
+
+    void 'A subscriber failing in onNext cancels its subscription without an error signal'() {
+        given:
+        ConnectionSource connectionSource = connectionSourceHandler.withConnectionSource('people') { String databaseName, ConnectionSource connectionSource ->
+            TableUtils.createTableIfNotExists(connectionSource, Person)
+            Dao<Person, Integer> peopleDao = daoRegistry.getDao(databaseName, Person)
+            (951..980).each { peopleDao.createIfNotExists(new Person(id: it, name: 'Name' + it, lastname: 'Publish')) }
+            connectionSource
+        }
+        int before = connectionSource.delegate.connectionCount
+        List<String> signals = Collections.synchronizedList([])
+
+        when:
+        connectionSourceHandler.publishQuery('people', Person) { qb ->
+            qb.where().eq('lastname', 'Publish')
+        }.subscribe(new Subscriber<Person>() {
+            void onSubscribe(Subscription s) { s.request(Long.MAX_VALUE) }
+            void onNext(Person person) { signals << 'next'; throw new IllegalStateException('boom') }
+            void onError(Throwable t) { signals << 'error' }
+            void onComplete() { signals << 'complete' }
+        })
+
+        then:
+        new PollingConditions(timeout: 5).eventually {
+            assert signals == ['next']
+            assert connectionSource.delegate.connectionCount == before
+        }
+    }
+
+    @Unroll
+    void 'Rows survive an export and import in #format format'() {
+        given:
+        Path file = Files.createTempFile('people', '.' + format.name().toLowerCase())
+        String lastname = 'Transfer' + format
+        Dao<Person, Integer> peopleDao = connectionSourceHandler.withConnectionSource('people') { String databaseName, ConnectionSource connectionSource ->
+            TableUtils.createTableIfNotExists(connectionSource, Person)
+            Dao<Person, Integer> peopleDao = daoRegistry.getDao(databaseName, Person)
+            ids.each { peopleDao.createIfNotExists(new Person(id: it, name: 'Name' + it, lastname: lastname)) }
+            peopleDao
+        }
+        QueryBuilder<Person, Integer> query = peopleDao.queryBuilder()
+        query.where().eq('lastname', lastname)
+        TestEventHandler testEventHandler = new TestEventHandler()
+        application.eventRouter.subscribe(testEventHandler)
+
+        when:
+        long exported = dataTransfer.exportQuery('people', query.prepareStatementString(), file, format)
+        peopleDao.deleteIds(ids)
+        long imported = dataTransfer.importTable('people', 'people', file, format)
+
+        then:
+        exported == ids.size()
+        imported == ids.size()
+        query.query()*.name.sort() == ids.collect { 'Name' + it }
+        testEventHandler.events == ['OrmliteTransferStartEvent', 'OrmliteTransferEndEvent'] * 2
+
+        cleanup:
+        Files.deleteIfExists(file)
+
+        where:
+        format                     | ids
+        DataTransfer.Format.CSV    | (981..985).toList()
+        DataTransfer.Format.BINARY | (986..990).toList()
+    }
+
+    void 'A failing import leaves the table untouched'() {
+        given:
+        Path file = Files.createTempFile('people', '.csv')
+        Dao<Person, Integer> peopleDao = connectionSourceHandler.withConnectionSource('people') { String databaseName, ConnectionSource connectionSource ->
+            TableUtils.createTableIfNotExists(connectionSource, Person)
+            Dao<Person, Integer> peopleDao = daoRegistry.getDao(databaseName, Person)
+            (991..995).each { peopleDao.createIfNotExists(new Person(id: it, name: 'Name' + it, lastname: 'Rollback')) }
+            peopleDao
+        }
+        QueryBuilder<Person, Integer> query = peopleDao.queryBuilder()
+        query.where().eq('lastname', 'Rollback')
+
+        when:
+        dataTransfer.exportQuery('people', query.prepareStatementString(), file, DataTransfer.Format.CSV)
+        // the last batch collides with the row that is kept
+        peopleDao.deleteIds((991..994).toList())
+        dataTransfer.importTable('people', 'people', file, DataTransfer.Format.CSV)
+
+        then:
+        thrown(RuntimeSQLException)
+        query.query()*.id == [995]
+
+        cleanup:
+        Files.deleteIfExists(file)
+    }
+
+    void 'Circuit breaker fails fast after connection failures and closes once a probe succeeds'() {
+        given:
+        TestEventHandler testEventHandler = new TestEventHandler()
+        application.eventRouter.subscribe(testEventHandler)
+        CircuitBreaker circuitBreaker = connectionSourceHandler.withConnectionSource('internal') { String databaseName, ConnectionSource connectionSource ->
+            ConnectionSourceDecorator.find(connectionSource, GuardedConnectionSource).circuitBreaker
+        }
+
+        when:
+        5.times {
+            try {
+                connectionSourceHandler.withConnectionSource('internal') { String databaseName, ConnectionSource connectionSource ->
+                    throw new SQLTransientConnectionException('Connection refused', '08001')
+                }
+            } catch (RuntimeSQLException ignored) {
+            }
+        }
+        CircuitBreakerState tripped = circuitBreaker.state
+        Throwable rejected = null
+        try {
+            connectionSourceHandler.withConnectionSource('internal') { String databaseName, ConnectionSource connectionSource -> 'unreachable' }
+        } catch (RuntimeSQLException e) {
+            rejected = e
+        }
+        Throwable streamRejected = null
+        try {
+            connectionSourceHandler.streamQuery('internal', Person) { qb -> }
+        } catch (RuntimeSQLException e) {
+            streamRejected = e
+        }
+        Thread.sleep(250)
+        String result = connectionSourceHandler.withConnectionSource('internal') { String databaseName, ConnectionSource connectionSource -> 'ok' }
+
+        then:
+        tripped == CircuitBreakerState.OPEN
+        rejected instanceof CircuitBreakerOpenException
+        streamRejected instanceof CircuitBreakerOpenException
+        result == 'ok'
+        circuitBreaker.state == CircuitBreakerState.CLOSED
+        circuitBreaker.rejectedCalls >= 3
+        testEventHandler.circuitBreakerStates == ['CLOSED>OPEN', 'OPEN>HALF_OPEN', 'HALF_OPEN>CLOSED']
+    }
+
+    void 'Transient errors are retried for idempotent callbacks until attempts run out'() {
+        given:
+        int idempotentCalls = 0
+        int plainCalls = 0
+        int exhaustedCalls = 0
+
+        when:
+        String result = connectionSourceHandler.withConnectionSource('routed', { String databaseName, ConnectionSource connectionSource ->
+            if (++idempotentCalls < 3) {
+                throw new SQLTransactionRollbackException('Deadlock found', '40001')
+            }
+            'ok'
+        } as IdempotentConnectionSourceCallback<String>)
+        try {
+            connectionSourceHandler.withConnectionSource('routed') { String databaseName, ConnectionSource connectionSource ->
+                plainCalls++
+                throw new SQLTransactionRollbackException('Deadlock found', '40001')
+            }
+        } catch (RuntimeSQLException ignored) {
+        }
+        try {
+            connectionSourceHandler.withTransaction('routed') { String databaseName, ConnectionSource connectionSource ->
+                exhaustedCalls++
+                throw new SQLTransactionRollbackException('Deadlock found', '40001')
+            }
+        } catch (RuntimeSQLException ignored) {
+        }
+        Map<String, DefaultMetricsRegistry.MetricValue> metrics = ((DefaultMetricsRegistry) metricsRegistry).snapshot()
+            .findAll { it.databaseName == 'routed' }
+            .collectEntries { [(it.name): it] }
+
+        then:
+        result == 'ok'
+        idempotentCalls == 3
+        plainCalls == 1
+        exhaustedCalls == 3
+        metrics['ormlite.retries'].values.count == 4
+        metrics['ormlite.retries.exhausted'].values.count == 1
+    }
+
+    void 'Only the outermost unit of work is retried'() {
+        given:
+        int transactionCalls = 0
+        int nestedCalls = 0
+
+        when:
+        connectionSourceHandler.withTransaction('routed') { String databaseName, ConnectionSource connectionSource ->
+            transactionCalls++
+            connectionSourceHandler.withConnectionSource('routed', { String nestedName, ConnectionSource nestedSource ->
+                nestedCalls++
+                throw new SQLTransactionRollbackException('Deadlock found', '40001')
+            } as IdempotentConnectionSourceCallback<String>)
+        }
+
+        then:
+        thrown(RuntimeSQLException)
+        transactionCalls == 3
+        nestedCalls == 3
+    }
+
+    void 'Statement statistics group queries by shape'() {
+        when:
+        StatementStatistics statistics = connectionSourceHandler.withConnectionSource('people') { String databaseName, ConnectionSource connectionSource ->
+            TableUtils.createTableIfNotExists(connectionSource, Person)
+            Dao<Person, Integer> peopleDao = daoRegistry.getDao(databaseName, Person)
+            peopleDao.createIfNotExists(new Person(id: 602, name: 'Jim', lastname: 'Moore'))
+            5.times { peopleDao.queryForId(602) }
+            connectionSource.delegate.statementStatistics
+        }
+        List<StatementStat> top = statistics.getTopStatements(10)
+
+        then:
+        !top.empty
+        top.any { it.calls >= 5 }
+        top.every { it.p99 >= it.p50 }
+    }
+
+    void 'Connections are tracked until they are released'() {
+        when:
+        Map result = connectionSourceHandler.withConnectionSource('people') { String databaseName, ConnectionSource connectionSource ->
+            ConnectionLeakDetector leakDetector = connectionSource.delegate.leakDetector
+            int before = leakDetector.trackedConnectionCount
+            LinkedDatabaseConnection connection = connectionSource.getReadWriteConnection(null)
+            int held = leakDetector.trackedConnectionCount
+            connectionSource.releaseConnection(connection)
+            [before: before, held: held, after: leakDetector.trackedConnectionCount, trace: connection.acquisitionTrace, thread: connection.acquiringThread]
+        }
+
+        then:
+        result.held == result.before + 1
+        result.after == result.before
+        result.trace != null
+        result.thread == Thread.currentThread().name
+    }
+
+    void 'Connection acquisitions and releases are counted'() {
+        when:
+        Map result = connectionSourceHandler.withConnectionSource('people') { String databaseName, ConnectionSource connectionSource ->
+            ConnectionStatistics statistics = connectionSource.delegate.connectionStatistics
+            long acquisitions = statistics.readWriteAcquisitions
+            long releases = statistics.releases
+            connectionSource.releaseConnection(connectionSource.getReadWriteConnection(null))
+            [acquired: statistics.readWriteAcquisitions - acquisitions, released: statistics.releases - releases, peak: statistics.peakConnectionCount, wait: statistics.maxAcquireWaitTime]
+        }
+
+        then:
+        result.acquired == 1
+        result.released == 1
+        result.peak >= 1
+        result.wait >= 0
+    }
+
+    void 'Connections are handed out unwrapped when no connection feature is enabled'() {
+        when:
+        Map result = connectionSourceHandler.withConnectionSource('routed_replica') { String databaseName, ConnectionSource connectionSource ->
+            ConnectionStatistics statistics = connectionSource.delegate.connectionStatistics
+            long releases = statistics.releases
+            int before = statistics.connectionCount
+            def connection = connectionSource.getReadWriteConnection(null)
+            int held = statistics.connectionCount
+            connectionSource.releaseConnection(connection)
+            [linked: connection instanceof LinkedDatabaseConnection, held: held - before, released: statistics.releases - releases, after: statistics.connectionCount - before]
+        }
+
+        then:
+        !result.linked
+        result.held == 1
+        result.released == 1
+        result.after == 0
+    }
+
+    void 'Connections handed out inside a transaction share one wrapper'() {
+        when:
+        Map result = connectionSourceHandler.withTransaction('people') { String databaseName, ConnectionSource connectionSource ->
+            int before = connectionSource.delegate.connectionCount
+            def first = connectionSource.getReadWriteConnection(null)
+            def second = connectionSource.getReadWriteConnection(null)
+            int held = connectionSource.delegate.connectionCount
+            connectionSource.releaseConnection(second)
+            connectionSource.releaseConnection(first)
+            [same: first.is(second), held: held - before, released: connectionSource.delegate.connectionCount - before]
+        }
+
+        then:
+        result.same
+        result.held == 2
+        result.released == 0
+    }
+
+    void 'Connection and statement metrics are published to the registry'() {
+        when:
+        connectionSourceHandler.withConnectionSource('people') { String databaseName, ConnectionSource connectionSource ->
+            TableUtils.createTableIfNotExists(connectionSource, Person)
+            daoRegistry.getDao(databaseName, Person).queryForAll()
+        }
+        Map<String, DefaultMetricsRegistry.MetricValue> metrics = ((DefaultMetricsRegistry) metricsRegistry).snapshot()
+            .findAll { it.databaseName == 'people' }
+            .collectEntries { [(it.name): it] }
+
+        then:
+        metrics['ormlite.connections.acquisitions'].type == 'counter'
+        metrics['ormlite.connections.acquisitions'].values.count > 0
+        metrics['ormlite.connections.active'].type == 'gauge'
+        metrics['ormlite.statements'].type == 'timer'
+        metrics['ormlite.statements'].values.count > 0
+    }
+
+    void 'A metric cannot be fetched as another type than it was registered with'() {
+        given:
+        DefaultMetricsRegistry registry = new DefaultMetricsRegistry()
+        registry.gauge('ormlite.connections.active', 'people', { 1d } as MetricsRegistry.Gauge)
+        registry.counter('ormlite.retries', 'people')
+
+        when:
+        registry.counter('ormlite.connections.active', 'people')
+
+        then:
+        IllegalArgumentException e = thrown()
+        e.message == "Metric 'ormlite.connections.active' of database 'people' is a gauge"
+
+        when:
+        registry.timer('ormlite.retries', 'people')
+
+        then:
+        e = thrown()
+        e.message == "Metric 'ormlite.retries' of database 'people' is a counter"
+    }
+
+    void 'Metrics snapshots are appended as JSON lines and rolled over'() {
+        given:
+        File dir = File.createTempDir()
+        DefaultMetricsRegistry registry = new DefaultMetricsRegistry()
+        registry.counter('calls', 'sample').add(3)
+        JsonLinesMetricsExporter exporter = new JsonLinesMetricsExporter(registry, new File(dir, 'metrics.jsonl').toPath(), 1000, 150, 2)
+
+        when:
+        exporter.export()
+        exporter.export()
+
+        then:
+        new File(dir, 'metrics.jsonl').readLines().size() == 1
+        new File(dir, 'metrics.jsonl.1').readLines().size() == 1
+        new File(dir, 'metrics.jsonl').text.contains('{"name":"calls","database":"sample","type":"counter","count":3}')
+
+        cleanup:
+        dir.deleteDir()
+    }
+
+    void 'Slow query log keeps the most recent slow statements'() {
+        given:
+        SlowQueryLog slowQueryLog = new SlowQueryLog('people', 10, 1d, 2)
+        long slow = TimeUnit.MILLISECONDS.toNanos(20)
+
+        when:
+        slowQueryLog.record('SELECT 1', null, TimeUnit.MILLISECONDS.toNanos(5))
+        slowQueryLog.record('SELECT 2', [1] as Object[], slow)
+        slowQueryLog.record('SELECT 3', [2] as Object[], slow)
+        slowQueryLog.record('SELECT 4', ['x' * 100] as Object[], slow)
+
+        then:
+        slowQueryLog.slowQueryCount == 3
+        slowQueryLog.slowQueries*.sql == ['SELECT 4', 'SELECT 3']
+        slowQueryLog.slowQueries[0].args == '[' + 'x' * 64 + '...]'
+        slowQueryLog.slowQueries[0].databaseName == 'people'
+    }
+
+    void 'Execute statements asynchronously on #name connectionSource'() {
+        when:
+        CompletableFuture<String> future = connectionSourceHandler.withConnectionSourceAsync(name) { String databaseName, ConnectionSource connectionSource ->
+            databaseName + ':' + Thread.currentThread().name
+        }
+
+        then:
+        future.get().startsWith(name + ':ormlite-' + name + '-')
+
+        where:
+        name      | _
+        'default' | _
+        'people'  | _
+    }
+
+    void 'Virtual executors fall back to platform threads when the JVM lacks them'() {
+        given:
+        boolean virtualThreads = Thread.methods.any { it.name == 'ofVirtual' }
+
+        when:
+        String threadName = connectionSourceHandler.withConnectionSourceAsync('routed_replica') { String databaseName, ConnectionSource connectionSource ->
+            Thread.currentThread().name
+        }.get()
+
+        then:
+        threadName.startsWith(virtualThreads ? 'ormlite-routed_replica-vt-' : 'ormlite-routed_replica-')
+        virtualThreads || !threadName.startsWith('ormlite-routed_replica-vt-')
+    }
+
+    void 'Virtual executors run no more callbacks at once than their pool size'() {
+        given:
+        AtomicInteger running = new AtomicInteger()
+        AtomicInteger peak = new AtomicInteger()
+
+        when:
+        List<CompletableFuture<Object>> futures = (1..6).collect {
+            connectionSourceHandler.withConnectionSourceAsync('routed_replica') { String databaseName, ConnectionSource connectionSource ->
+                int current = running.incrementAndGet()
+                peak.accumulateAndGet(current, { a, b -> Math.max(a, b) } as IntBinaryOperator)
+                Thread.sleep(100)
+                running.decrementAndGet()
+            }
+        }
+        futures*.get()
+
+        then:
+        peak.get() == 2
+    }
+
+    void 'A runtime SQLException completes the future exceptionally'() {
+        when:
+        connectionSourceHandler.withConnectionSourceAsync('people') { String databaseName, ConnectionSource connectionSource ->
+            Dao<Person, Integer> peopleDao = DaoManager.createDao(connectionSource, Person)
+            peopleDao.create(new Person())
+        }.get()
+
+        then:
+        ExecutionException e = thrown(ExecutionException)
+        e.cause instanceof RuntimeSQLException
+    }
+
     @BindTo(OrmliteBootstrap)
     private TestOrmliteBootstrap bootstrap = new TestOrmliteBootstrap()
 
 
     private class TestEventHandler {
         List<String> events = []
+        List<Long> durations = []
+        List<String> circuitBreakerStates = []
 
         @EventHandler
         void handleDataSourceConnectStartEvent(DataSourceConnectStartEvent event) {
@@ -213,6 +1142,7 @@ class OrmliteSpec extends Specification {
         @EventHandler
         void handleOrmliteConnectEndEvent(OrmliteConnectEndEvent event) {
             events << event.class.simpleName
+            durations << event.duration
         }
 
         @EventHandler
@@ -224,5 +1154,20 @@ class OrmliteSpec extends Specification {
         void handleOrmliteDisconnectEndEvent(OrmliteDisconnectEndEvent event) {
             events << event.class.simpleName
         }
+
+        @EventHandler
+        void handleOrmliteTransferStartEvent(OrmliteTransferStartEvent event) {
+            events << event.class.simpleName
+        }
+
+        @EventHandler
+        void handleOrmliteTransferEndEvent(OrmliteTransferEndEvent event) {
+            events << event.class.simpleName
+        }
+
+        @EventHandler
+        void handleOrmliteCircuitBreakerStateChangeEvent(OrmliteCircuitBreakerStateChangeEvent event) {
+            circuitBreakerStates << event.previousState.name() + '>' + event.state.name()
+        }
     }
 }
@@ -20,13 +20,17 @@ package griffon.plugins.ormlite
 import com.j256.ormlite.support.ConnectionSource
 import griffon.annotations.core.Nonnull
 
+import java.util.concurrent.atomic.AtomicInteger
+
 class TestOrmliteBootstrap implements OrmliteBootstrap {
     boolean initWitness
     boolean destroyWitness
+    final AtomicInteger initCount = new AtomicInteger()
 
     @Override
     void init(@Nonnull String sessionFactoryName, @Nonnull ConnectionSource connectionSource) {
         initWitness = true
+        initCount.incrementAndGet()
     }
 
     @Override
@@ -62,4 +62,28 @@ dataSources {
         dbCreate = 'create'
         url = 'jdbc:h2:mem:${application_name}-people'
     }
-}
\ No newline at end of file
+    routed {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-routed;DB_CLOSE_DELAY=-1'
+    }
+    routed_replica {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-routed;DB_CLOSE_DELAY=-1'
+    }
+    cached {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-cached'
+    }
+    misconfigured {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        url = 'jdbc:h2:mem:${application_name}-misconfigured'
+    }
+}
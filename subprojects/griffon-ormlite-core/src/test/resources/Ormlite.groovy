@@ -37,8 +37,42 @@ environments {
 databases {
     internal {
         jmx = true
+        shard = true
+        circuit_breaker = true
+        circuit_breaker_minimum_calls = 5
+        circuit_breaker_open_duration = 200
     }
     people {
         jmx = true
+        shard = true
+        entities = ['griffon.plugins.ormlite.Person']
+        statement_cache_size = 16
+        statement_stats = true
+        slow_query_threshold = 1000
+        leak_detection_threshold = 60000
+        leak_detection_sample_rate = 1.0
+        transfer_batch_size = 2
+    }
+    routed {
+        jmx = true
+        replicas = ['routed_replica']
+        retry_attempts = 3
+        retry_backoff = 10
+    }
+    routed_replica {
+        jmx = true
+        executor = 'virtual'
+        executor_pool_size = 2
+    }
+    cached {
+        jmx = true
+        entities = ['griffon.plugins.ormlite.Person']
+        cache_size = 100
+        caches = ['griffon.plugins.ormlite.Person': [ttl: 60000, eviction: 'lru']]
+        result_cache = true
+    }
+    misconfigured {
+        jmx = true
+        entities = ['griffon.plugins.ormlite.Missing']
     }
 }
\ No newline at end of file
@@ -37,11 +37,29 @@ public interface ConnectionSourceAwareConstants extends BaseConstants {
     String CONNECTION_SOURCE_TYPE = "java.sql.ConnectionSource";
     String CONNECTION_SOURCE_HANDLER_TYPE = "griffon.plugins.ormlite.ConnectionSourceHandler";
     String CONNECTION_SOURCE_CALLBACK_TYPE = "griffon.plugins.ormlite.ConnectionSourceCallback";
+    String DAO_CALLBACK_TYPE = "griffon.plugins.ormlite.DaoCallback";
+    String QUERY_BUILDER_CALLBACK_TYPE = "griffon.plugins.ormlite.QueryBuilderCallback";
     String RUNTIME_SQL_EXCEPTION_TYPE = "griffon.plugins.ormlite.exceptions.RuntimeSQLException";
+    String COMPLETABLE_FUTURE_TYPE = "java.util.concurrent.CompletableFuture";
+    String CLASS_TYPE = "java.lang.Class";
+    String ITERABLE_TYPE = "java.lang.Iterable";
+    String INT_TYPE = "int";
+    String MAP_TYPE = "java.util.Map";
+    String STREAM_TYPE = "java.util.stream.Stream";
+    String PUBLISHER_TYPE = "org.reactivestreams.Publisher";
+    String T = "T";
     String CONNECTION_SOURCE_HANDLER_PROPERTY = "connectionSourceHandler";
     String CONNECTION_SOURCE_HANDLER_FIELD_NAME = "this$" + CONNECTION_SOURCE_HANDLER_PROPERTY;
 
     String METHOD_WITH_CONNECTION_SOURCE = "withConnectionSource";
+    String METHOD_WITH_CONNECTION_SOURCE_ASYNC = "withConnectionSourceAsync";
+    String METHOD_WITH_TRANSACTION = "withTransaction";
+    String METHOD_WITH_BATCH = "withBatch";
+    String METHOD_WITH_DAOS = "withDaos";
+    String METHOD_WITH_SHARD = "withShard";
+    String METHOD_WITH_EACH_SHARD = "withEachShard";
+    String METHOD_STREAM_QUERY = "streamQuery";
+    String METHOD_PUBLISH_QUERY = "publishQuery";
     String METHOD_CLOSE_CONNECTION_SOURCE = "closeConnectionSource";
     String DATABASE_NAME = "databaseName";
     String CALLBACK = "callback";
@@ -75,6 +93,145 @@ public interface ConnectionSourceAwareConstants extends BaseConstants {
                 annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
                 annotatedType(annotations(ANNOTATION_NONNULL), CONNECTION_SOURCE_CALLBACK_TYPE, R)),
             throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_TRANSACTION,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), CONNECTION_SOURCE_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_TRANSACTION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), CONNECTION_SOURCE_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_DAOS,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), DAO_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_DAOS,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), DAO_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_SHARD,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_OBJECT),
+                annotatedType(annotations(ANNOTATION_NONNULL), CONNECTION_SOURCE_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(MAP_TYPE, JAVA_LANG_STRING, R),
+            typeParams(R),
+            METHOD_WITH_EACH_SHARD,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), CONNECTION_SOURCE_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+
+        method(
+            type(INT_TYPE),
+            typeParams(T),
+            METHOD_WITH_BATCH,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), CLASS_TYPE, T),
+                annotatedType(annotations(ANNOTATION_NONNULL), ITERABLE_TYPE, T),
+                type(INT_TYPE)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+        method(
+            type(INT_TYPE),
+            typeParams(T),
+            METHOD_WITH_BATCH,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), CLASS_TYPE, T),
+                annotatedType(annotations(ANNOTATION_NONNULL), ITERABLE_TYPE, T),
+                type(INT_TYPE)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(STREAM_TYPE, T),
+            typeParams(T),
+            METHOD_STREAM_QUERY,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), CLASS_TYPE, T),
+                annotatedType(annotations(ANNOTATION_NONNULL), QUERY_BUILDER_CALLBACK_TYPE, T)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(STREAM_TYPE, T),
+            typeParams(T),
+            METHOD_STREAM_QUERY,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), CLASS_TYPE, T),
+                annotatedType(annotations(ANNOTATION_NONNULL), QUERY_BUILDER_CALLBACK_TYPE, T)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(PUBLISHER_TYPE, T),
+            typeParams(T),
+            METHOD_PUBLISH_QUERY,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), CLASS_TYPE, T),
+                annotatedType(annotations(ANNOTATION_NONNULL), QUERY_BUILDER_CALLBACK_TYPE, T)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(PUBLISHER_TYPE, T),
+            typeParams(T),
+            METHOD_PUBLISH_QUERY,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), CLASS_TYPE, T),
+                annotatedType(annotations(ANNOTATION_NONNULL), QUERY_BUILDER_CALLBACK_TYPE, T)),
+            throwing(type(RUNTIME_SQL_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(COMPLETABLE_FUTURE_TYPE, R),
+            typeParams(R),
+            METHOD_WITH_CONNECTION_SOURCE_ASYNC,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), CONNECTION_SOURCE_CALLBACK_TYPE, R))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(COMPLETABLE_FUTURE_TYPE, R),
+            typeParams(R),
+            METHOD_WITH_CONNECTION_SOURCE_ASYNC,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), CONNECTION_SOURCE_CALLBACK_TYPE, R))
         )
     };
 }
@@ -0,0 +1,231 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.compile.ormlite.processor;
+
+import com.j256.ormlite.field.DataType;
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.field.ForeignCollectionField;
+import com.j256.ormlite.table.DatabaseTable;
+import org.codehaus.griffon.runtime.ormlite.TableConfigLoader;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.MirroredTypeException;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Writes the {@code DatabaseTableConfig} of every entity annotated with {@code @DatabaseTable} or
+ * {@code @DatabaseField} to {@value TableConfigLoader#RESOURCE}, using the text format read by
+ * {@code DatabaseTableConfigLoader}. Entities that rely on JPA annotations, foreign collections or custom
+ * persisters are skipped and keep being configured by reflection.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@SupportedAnnotationTypes({
+    "com.j256.ormlite.table.DatabaseTable",
+    "com.j256.ormlite.field.DatabaseField"
+})
+public class DatabaseTableConfigProcessor extends AbstractProcessor {
+    private final Map<String, String> configs = new TreeMap<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(DatabaseTable.class)) {
+            if (element.getKind() == ElementKind.CLASS) {
+                collect((TypeElement) element);
+            }
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(DatabaseField.class)) {
+            Element enclosing = element.getEnclosingElement();
+            if (enclosing.getKind() == ElementKind.CLASS) {
+                collect((TypeElement) enclosing);
+            }
+        }
+
+        if (roundEnv.processingOver() && !configs.isEmpty()) {
+            write();
+        }
+        return false;
+    }
+
+    private void collect(TypeElement type) {
+        String className = processingEnv.getElementUtils().getBinaryName(type).toString();
+        if (configs.containsKey(className) || type.getModifiers().contains(Modifier.ABSTRACT)) {
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("# --table-start--\n");
+        sb.append("dataClass=").append(className).append('\n');
+        sb.append("tableName=").append(tableName(type)).append('\n');
+        sb.append("# --table-fields-start--\n");
+
+        // same order as DatabaseTableConfig.extractFieldTypes: subclass first, then its superclasses
+        for (TypeElement walk = type; walk != null; walk = superclassOf(walk)) {
+            for (Element member : walk.getEnclosedElements()) {
+                if (member.getKind() != ElementKind.FIELD) {
+                    continue;
+                }
+                if (member.getAnnotation(ForeignCollectionField.class) != null || hasJpaAnnotation(member)) {
+                    skip(type, "field " + member.getSimpleName() + " needs reflection");
+                    return;
+                }
+                DatabaseField field = member.getAnnotation(DatabaseField.class);
+                if (field == null || !field.persisted()) {
+                    continue;
+                }
+                if (hasPersisterClass(field)) {
+                    skip(type, "field " + member.getSimpleName() + " declares a persisterClass");
+                    return;
+                }
+                appendField(sb, (VariableElement) member, field);
+            }
+        }
+
+        sb.append("# --table-fields-end--\n");
+        sb.append("# --table-end--\n");
+        configs.put(className, sb.toString());
+    }
+
+    private void appendField(StringBuilder sb, VariableElement member, DatabaseField field) {
+        sb.append("# --field-start--\n");
+        sb.append("fieldName=").append(member.getSimpleName()).append('\n');
+        appendIf(sb, "columnName", field.columnName(), !field.columnName().isEmpty());
+        appendIf(sb, "dataPersister", field.dataType().name(), field.dataType() != DataType.UNKNOWN);
+        appendIf(sb, "defaultValue", field.defaultValue(), !DatabaseField.DEFAULT_STRING.equals(field.defaultValue()));
+        appendIf(sb, "width", field.width(), field.width() != 0);
+        appendIf(sb, "canBeNull", false, !field.canBeNull());
+        appendIf(sb, "id", true, field.id());
+        appendIf(sb, "generatedId", true, field.generatedId());
+        appendIf(sb, "generatedIdSequence", field.generatedIdSequence(), !field.generatedIdSequence().isEmpty());
+        appendIf(sb, "foreign", true, field.foreign());
+        appendIf(sb, "useGetSet", true, field.useGetSet());
+        appendIf(sb, "unknownEnumValue", enumValue(member, field.unknownEnumName()), !field.unknownEnumName().isEmpty());
+        appendIf(sb, "throwIfNull", true, field.throwIfNull());
+        appendIf(sb, "format", field.format(), !field.format().isEmpty());
+        appendIf(sb, "unique", true, field.unique());
+        appendIf(sb, "uniqueCombo", true, field.uniqueCombo());
+        appendIf(sb, "index", true, field.index());
+        appendIf(sb, "indexName", field.indexName(), !field.indexName().isEmpty());
+        appendIf(sb, "uniqueIndex", true, field.uniqueIndex());
+        appendIf(sb, "uniqueIndexName", field.uniqueIndexName(), !field.uniqueIndexName().isEmpty());
+        appendIf(sb, "foreignAutoRefresh", true, field.foreignAutoRefresh());
+        appendIf(sb, "maxForeignAutoRefreshLevel", field.maxForeignAutoRefreshLevel(),
+            field.foreignAutoRefresh() && field.maxForeignAutoRefreshLevel() != DatabaseField.DEFAULT_MAX_FOREIGN_AUTO_REFRESH_LEVEL);
+        appendIf(sb, "allowGeneratedIdInsert", true, field.allowGeneratedIdInsert());
+        appendIf(sb, "columnDefinition", field.columnDefinition(), !field.columnDefinition().isEmpty());
+        appendIf(sb, "foreignAutoCreate", true, field.foreignAutoCreate());
+        appendIf(sb, "version", true, field.version());
+        appendIf(sb, "foreignColumnName", field.foreignColumnName(), !field.foreignColumnName().isEmpty());
+        appendIf(sb, "readOnly", true, field.readOnly());
+        sb.append("# --field-end--\n");
+    }
+
+    private static void appendIf(StringBuilder sb, String key, Object value, boolean condition) {
+        if (condition) {
+            sb.append(key).append('=').append(value).append('\n');
+        }
+    }
+
+    private String enumValue(VariableElement member, String enumName) {
+        // DatabaseFieldConfigLoader expects <enum class>#<constant>
+        TypeMirror type = member.asType();
+        if (type.getKind() == TypeKind.DECLARED) {
+            TypeElement enumType = (TypeElement) ((DeclaredType) type).asElement();
+            return processingEnv.getElementUtils().getBinaryName(enumType) + "#" + enumName;
+        }
+        return enumName;
+    }
+
+    private String tableName(TypeElement type) {
+        DatabaseTable table = type.getAnnotation(DatabaseTable.class);
+        if (table != null && !table.tableName().isEmpty()) {
+            return table.tableName();
+        }
+        return type.getSimpleName().toString().toLowerCase(Locale.ENGLISH);
+    }
+
+    private static boolean hasPersisterClass(DatabaseField field) {
+        try {
+            return field.persisterClass() != Void.class;
+        } catch (MirroredTypeException e) {
+            return !Void.class.getName().equals(e.getTypeMirror().toString());
+        }
+    }
+
+    private static boolean hasJpaAnnotation(Element element) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            if (annotation.getAnnotationType().toString().startsWith("javax.persistence.")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private TypeElement superclassOf(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        TypeElement element = (TypeElement) ((DeclaredType) superclass).asElement();
+        return Object.class.getName().equals(element.getQualifiedName().toString()) ? null : element;
+    }
+
+    private void skip(TypeElement type, String reason) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+            "Skipping table config for " + type.getQualifiedName() + ": " + reason, type);
+    }
+
+    private void write() {
+        try {
+            FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", TableConfigLoader.RESOURCE);
+            try (Writer writer = resource.openWriter()) {
+                for (String config : configs.values()) {
+                    writer.write(config);
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not write " + TableConfigLoader.RESOURCE + ": " + e.getMessage());
+        }
+    }
+}
@@ -57,8 +57,15 @@ class ConnectionSourceAwareASTTransformationSpec extends Specification {
         def bean = shell.evaluate('''import griffon.plugins.ormlite.ConnectionSourceCallback
         import griffon.plugins.ormlite.exceptions.RuntimeSQLException
         import griffon.plugins.ormlite.ConnectionSourceHandler
+        import griffon.plugins.ormlite.DaoCallback
+        import griffon.plugins.ormlite.QueryBuilderCallback
 
         import griffon.annotations.core.Nonnull
+        import org.reactivestreams.Publisher
+
+        import java.util.concurrent.CompletableFuture
+        import java.util.stream.Stream
+
         @griffon.transform.ormlite.ConnectionSourceAware
         class ConnectionSourceHandlerBean implements ConnectionSourceHandler {
             @Override
@@ -69,6 +76,62 @@ class ConnectionSourceAwareASTTransformationSpec extends Specification {
              <R> R withConnectionSource(@Nonnull String databaseName, @Nonnull ConnectionSourceCallback<R> callback) throws RuntimeSQLException {
                  return null
             }
+            @Override
+             <R> R withTransaction(@Nonnull ConnectionSourceCallback<R> callback) throws RuntimeSQLException {
+                return null
+            }
+            @Override
+             <R> R withTransaction(@Nonnull String databaseName, @Nonnull ConnectionSourceCallback<R> callback) throws RuntimeSQLException {
+                return null
+            }
+            @Override
+             <R> R withDaos(@Nonnull DaoCallback<R> callback) throws RuntimeSQLException {
+                return null
+            }
+            @Override
+             <R> R withDaos(@Nonnull String databaseName, @Nonnull DaoCallback<R> callback) throws RuntimeSQLException {
+                return null
+            }
+            @Override
+             <R> R withShard(@Nonnull Object shardKey, @Nonnull ConnectionSourceCallback<R> callback) throws RuntimeSQLException {
+                return null
+            }
+            @Override
+             <R> Map<String, R> withEachShard(@Nonnull ConnectionSourceCallback<R> callback) throws RuntimeSQLException {
+                return [:]
+            }
+            @Override
+             <T> int withBatch(@Nonnull Class<T> entityClass, @Nonnull Iterable<T> entities, int batchSize) throws RuntimeSQLException {
+                return 0
+            }
+            @Override
+             <T> int withBatch(@Nonnull String databaseName, @Nonnull Class<T> entityClass, @Nonnull Iterable<T> entities, int batchSize) throws RuntimeSQLException {
+                return 0
+            }
+            @Override
+             <T> Stream<T> streamQuery(@Nonnull Class<T> entityClass, @Nonnull QueryBuilderCallback<T> callback) throws RuntimeSQLException {
+                return null
+            }
+            @Override
+             <T> Stream<T> streamQuery(@Nonnull String databaseName, @Nonnull Class<T> entityClass, @Nonnull QueryBuilderCallback<T> callback) throws RuntimeSQLException {
+                return null
+            }
+            @Override
+             <T> Publisher<T> publishQuery(@Nonnull Class<T> entityClass, @Nonnull QueryBuilderCallback<T> callback) throws RuntimeSQLException {
+                return null
+            }
+            @Override
+             <T> Publisher<T> publishQuery(@Nonnull String databaseName, @Nonnull Class<T> entityClass, @Nonnull QueryBuilderCallback<T> callback) throws RuntimeSQLException {
+                return null
+            }
+            @Override
+             <R> CompletableFuture<R> withConnectionSourceAsync(@Nonnull ConnectionSourceCallback<R> callback) {
+                return null
+            }
+            @Override
+             <R> CompletableFuture<R> withConnectionSourceAsync(@Nonnull String databaseName, @Nonnull ConnectionSourceCallback<R> callback) {
+                return null
+            }
             @Override
             void closeConnectionSource(){}
             @Override
@@ -0,0 +1,123 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.compile.ormlite.processor
+
+import com.j256.ormlite.dao.BaseDaoImpl
+import com.j256.ormlite.dao.Dao
+import com.j256.ormlite.dao.DaoManager
+import com.j256.ormlite.jdbc.JdbcConnectionSource
+import com.j256.ormlite.support.ConnectionSource
+import com.j256.ormlite.table.TableUtils
+import org.codehaus.griffon.runtime.ormlite.TableConfigLoader
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+import javax.tools.JavaCompiler
+import javax.tools.ToolProvider
+
+/**
+ * @author Andres Almiray
+ */
+class DatabaseTableConfigProcessorSpec extends Specification {
+    @Rule
+    TemporaryFolder folder = new TemporaryFolder()
+
+    def 'Table configs are generated for annotated entities'() {
+        given:
+        File sources = folder.newFolder('src')
+        File classes = folder.newFolder('classes')
+        File entity = new File(sources, 'Person.java')
+        entity.text = '''
+        import com.j256.ormlite.field.DatabaseField;
+        import com.j256.ormlite.table.DatabaseTable;
+
+        @DatabaseTable(tableName = "people")
+        public class Person {
+            @DatabaseField(id = true)
+            int id;
+            @DatabaseField(canBeNull = false)
+            String name;
+        }
+        '''
+        JavaCompiler compiler = ToolProvider.systemJavaCompiler
+
+        when:
+        int status = compiler.run(null, null, null,
+            '-classpath', System.getProperty('java.class.path'),
+            '-processor', DatabaseTableConfigProcessor.name,
+            '-d', classes.absolutePath,
+            entity.absolutePath)
+        String config = new File(classes, TableConfigLoader.RESOURCE).text
+
+        then:
+        status == 0
+        config.contains('dataClass=Person\ntableName=people\n')
+        config.contains('fieldName=id\nid=true\n')
+        config.contains('fieldName=name\ncanBeNull=false\n')
+    }
+
+    def 'Generated table configs are loaded by DaoManager'() {
+        given:
+        File sources = folder.newFolder('src')
+        File classes = folder.newFolder('classes')
+        File entity = new File(sources, 'Note.java')
+        entity.text = '''
+        import com.j256.ormlite.field.DatabaseField;
+        import com.j256.ormlite.table.DatabaseTable;
+
+        @DatabaseTable(tableName = "notes")
+        public class Note {
+            @DatabaseField(generatedId = true)
+            public int id;
+            @DatabaseField(defaultValue = "untitled")
+            public String text;
+            @DatabaseField(persisted = false)
+            public String draft;
+        }
+        '''
+        ToolProvider.systemJavaCompiler.run(null, null, null,
+            '-classpath', System.getProperty('java.class.path'),
+            '-processor', DatabaseTableConfigProcessor.name,
+            '-d', classes.absolutePath,
+            entity.absolutePath)
+        URLClassLoader classLoader = new URLClassLoader([classes.toURI().toURL()] as URL[], getClass().classLoader)
+        ConnectionSource connectionSource = new JdbcConnectionSource('jdbc:h2:mem:table-configs')
+
+        when:
+        int loaded = TableConfigLoader.load(classLoader)
+        Class<?> noteClass = classLoader.loadClass('Note')
+        Dao<Object, Integer> dao = DaoManager.createDao(connectionSource, noteClass)
+        TableUtils.createTable(connectionSource, noteClass)
+        def note = noteClass.newInstance()
+        note.text = 'hello'
+        note.draft = 'discarded'
+        dao.create(note)
+        def stored = dao.queryForId(note.id)
+
+        then:
+        loaded == 1
+        !new File(classes, TableConfigLoader.RESOURCE).text.contains('fieldName=draft')
+        ((BaseDaoImpl) dao).tableInfo.fieldTypes*.columnName == ['id', 'text']
+        stored.text == 'hello'
+        stored.draft == null
+
+        cleanup:
+        connectionSource?.close()
+    }
+}